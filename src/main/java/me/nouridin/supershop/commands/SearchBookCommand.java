@@ -19,7 +19,6 @@ package me.nouridin.supershop.commands;
 import me.nouridin.supershop.gui.SearchBookGUI;
 import me.nouridin.supershop.util.SearchResult;
 import me.nouridin.supershop.supershop;
-import org.bukkit.Material;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -83,7 +82,9 @@ public class SearchBookCommand implements CommandExecutor, TabCompleter {
     private void handleDirectSearch(Player player, String searchQuery) {
         plugin.getMessageUtils().sendMessage(player, "searchbook-searching-for", searchQuery);
         
-        List<SearchResult> results = plugin.getSearchManager().searchByItemName(searchQuery, player);
+        // One more than shown tells whether there were more
+        int maxResults = plugin.getConfigManager().getMaxSearchResults();
+        List<SearchResult> results = plugin.getSearchManager().searchByItemName(searchQuery, player.getLocation(), null, null, maxResults + 1);
         
         if (results.isEmpty()) {
             plugin.getMessageUtils().sendMessage(player, "searchbook-no-results");
@@ -94,7 +95,6 @@ public class SearchBookCommand implements CommandExecutor, TabCompleter {
             return;
         }
         
-        int maxResults = plugin.getConfigManager().getMaxSearchResults();
         if (results.size() > maxResults) {
             results = results.subList(0, maxResults);
             plugin.getMessageUtils().sendMessage(player, "searchbook-showing-first-results", String.valueOf(maxResults));
@@ -176,16 +176,8 @@ public class SearchBookCommand implements CommandExecutor, TabCompleter {
         List<String> completions = new ArrayList<>();
         
         if (args.length == 1) {
-            List<String> suggestions = plugin.getSearchManager().getSearchSuggestions(args[0]);
-            completions.addAll(suggestions);
-            
-            List<Material> popularItems = plugin.getSearchManager().getPopularItems();
-            for (Material material : popularItems) {
-                String materialName = material.name().toLowerCase().replace("_", " ");
-                if (materialName.startsWith(args[0].toLowerCase())) {
-                    completions.add(materialName);
-                }
-            }
+            // Material names are suggested too, weighted by how many listings carry them
+            completions.addAll(plugin.getSearchManager().getSearchSuggestions(args[0]));
         }
         
         return completions;
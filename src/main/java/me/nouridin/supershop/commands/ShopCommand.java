@@ -17,6 +17,13 @@
 package me.nouridin.supershop.commands;
 
 import me.nouridin.supershop.*;
+import me.nouridin.supershop.database.BlobInterner;
+import me.nouridin.supershop.database.CircuitBreaker;
+import me.nouridin.supershop.database.ConnectionPool;
+import me.nouridin.supershop.database.PersistenceExecutor;
+import me.nouridin.supershop.database.ResilientShopRepository;
+import me.nouridin.supershop.database.SqlShopRepository;
+import me.nouridin.supershop.database.WriteBehindFlusher;
 import me.nouridin.supershop.gui.ShopManagementGUI;
 import me.nouridin.supershop.gui.ShopSelectionGUI;
 import me.nouridin.supershop.managers.LocaleManager;
@@ -99,6 +106,9 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
             case "reload":
                 handleReload(player);
                 break;
+            case "db":
+                handleDatabase(player, args);
+                break;
             case "help":
             default:
                 sendHelpMessage(player);
@@ -126,9 +136,8 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
-        List<Shop> playerShops = plugin.getShopManager().getShopsByOwner(player.getUniqueId());
         int maxShops = plugin.getConfigManager().getMaxShopsPerPlayer();
-        if (playerShops.size() >= maxShops && !player.hasPermission("supershop.unlimited")) {
+        if (plugin.getShopManager().getShopCount(player.getUniqueId()) >= maxShops && !player.hasPermission("supershop.unlimited")) {
             messageUtils.sendMessage(player, "shop.create.max-shops-reached", String.valueOf(maxShops));
             return;
         }
@@ -150,15 +159,16 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
-        Shop shop = plugin.getShopManager().getShopAtLocation(targetBlock.getLocation());
-        if (shop == null) {
-            messageUtils.sendMessage(player, "shop.not-found-at-location");
-            return;
-        }
+        plugin.getShopManager().getShopAtLocation(targetBlock.getLocation(), shop -> {
+            if (shop == null) {
+                messageUtils.sendMessage(player, "shop.not-found-at-location");
+                return;
+            }
 
-        if (plugin.getShopManager().removeShop(shop.getShopId(), player, targetBlock)) {
-            messageUtils.sendMessage(player, "shop.removed.success");
-        }
+            if (plugin.getShopManager().removeShop(shop.getShopId(), player, targetBlock)) {
+                messageUtils.sendMessage(player, "shop.removed.success");
+            }
+        });
     }
 
     private void handleForceRemoveShop(Player player) {
@@ -173,20 +183,24 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
-        Shop shop = plugin.getShopManager().getShopAtLocation(targetBlock.getLocation());
-        if (shop == null) {
-            messageUtils.sendMessage(player, "shop.not-found-at-location");
-            return;
-        }
+        plugin.getShopManager().getShopAtLocation(targetBlock.getLocation(), shop -> {
+            if (shop == null) {
+                messageUtils.sendMessage(player, "shop.not-found-at-location");
+                return;
+            }
 
-        if (plugin.getShopManager().forceRemoveShop(shop.getShopId(), player)) {
-            messageUtils.sendMessage(player, "shop.force-removed.success");
-            messageUtils.sendMessage(player, "shop.force-removed.owner", shop.getOwnerName());
-        }
+            if (plugin.getShopManager().forceRemoveShop(shop.getShopId(), player)) {
+                messageUtils.sendMessage(player, "shop.force-removed.success");
+                messageUtils.sendMessage(player, "shop.force-removed.owner", shop.getOwnerName());
+            }
+        });
     }
 
     private void handleListShops(Player player) {
-        List<Shop> shops = plugin.getShopManager().getShopsByOwner(player.getUniqueId());
+        plugin.getShopManager().getShopsByOwner(player.getUniqueId(), shops -> listShops(player, shops));
+    }
+
+    private void listShops(Player player, List<Shop> shops) {
         UUID playerUUID = player.getUniqueId();
 
         if (shops.isEmpty()) {
@@ -210,8 +224,10 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
     }
 
     private void handleManageShop(Player player, String[] args) {
-        List<Shop> shops = plugin.getShopManager().getShopsByOwner(player.getUniqueId());
+        plugin.getShopManager().getShopsByOwner(player.getUniqueId(), shops -> manageShop(player, shops, args));
+    }
 
+    private void manageShop(Player player, List<Shop> shops, String[] args) {
         if (shops.isEmpty()) {
             messageUtils.sendMessage(player, "shop.list.no-shops");
             messageUtils.sendMessage(player, "shop.list.create-tip");
@@ -248,18 +264,22 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
 
     private void handleShopInfo(Player player) {
         Block targetBlock = player.getTargetBlockExact(5);
-        UUID playerUUID = player.getUniqueId();
         if (targetBlock == null || targetBlock.getType() != Material.CHEST) {
             messageUtils.sendMessage(player, "shop.info.not-looking-at-chest");
             return;
         }
 
-        Shop shop = plugin.getShopManager().getShopAtLocation(targetBlock.getLocation());
-        if (shop == null) {
-            messageUtils.sendMessage(player, "shop.not-found-at-location");
-            return;
-        }
+        plugin.getShopManager().getShopAtLocation(targetBlock.getLocation(), shop -> {
+            if (shop == null) {
+                messageUtils.sendMessage(player, "shop.not-found-at-location");
+                return;
+            }
+            showShopInfo(player, shop);
+        });
+    }
 
+    private void showShopInfo(Player player, Shop shop) {
+        UUID playerUUID = player.getUniqueId();
         messageUtils.sendMessage(player, messageUtils.createHeader(localeManager.getMessage(playerUUID, "shop.info.header")));
         messageUtils.sendMessage(player, "shop.info.owner", shop.getOwnerName());
         messageUtils.sendMessage(player, "shop.info.location", shop.getCoordinatesString());
@@ -307,8 +327,83 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
 
         messageUtils.sendMessage(player, messageUtils.createHeader(localeManager.getMessage(playerUUID, "shop.stats.header")));
         messageUtils.sendMessage(player, "shop.stats.total-shops", messageUtils.formatNumber(stats.get("total_shops")));
-        messageUtils.sendMessage(player, "shop.stats.active-shops", messageUtils.formatNumber(stats.get("active_shops")));
+        messageUtils.sendMessage(player, "shop.stats.active-shops", messageUtils.formatNumber(stats.get("active_shops")),
+            messageUtils.formatNumber(stats.get("loaded_shops")));
         messageUtils.sendMessage(player, "shop.stats.total-items", messageUtils.formatNumber(stats.get("total_items")));
+
+        PersistenceExecutor persistence = plugin.getDatabaseManager().getPersistence();
+        messageUtils.sendMessage(player, "shop.stats.db-queue",
+            messageUtils.formatNumber(persistence.getQueueDepth()),
+            messageUtils.formatNumber(persistence.getQueueCapacity()),
+            messageUtils.formatNumber(persistence.getOverflowedTasks()));
+        messageUtils.sendMessage(player, "shop.stats.db-latency",
+            String.format("%.2f", persistence.getAverageLatencyMillis()),
+            String.format("%.2f", persistence.getMaxLatencyMillis()),
+            messageUtils.formatNumber(persistence.getFailedTasks()),
+            messageUtils.formatNumber(persistence.getCompletedTasks()));
+
+        WriteBehindFlusher writeBehind = plugin.getShopManager().getWriteBehind();
+        messageUtils.sendMessage(player, "shop.stats.write-behind",
+            messageUtils.formatNumber(writeBehind.getPendingCount()),
+            messageUtils.formatNumber(writeBehind.getCoalescedChanges()),
+            messageUtils.formatNumber(writeBehind.getFlushedEntities()));
+
+        BlobInterner interner = plugin.getDatabaseManager().getInterner();
+        messageUtils.sendMessage(player, "shop.stats.shared-data",
+            messageUtils.formatNumber(interner.getDistinctCount()),
+            messageUtils.formatNumber(interner.getHits()));
+        messageUtils.sendMessage(player, messageUtils.createFooter());
+    }
+
+    private void handleDatabase(Player player, String[] args) {
+        if (!player.hasPermission("supershop.admin")) {
+            messageUtils.sendMessage(player, "shop.db.no-permission");
+            return;
+        }
+
+        if (args.length >= 2 && args[1].equalsIgnoreCase("retry")) {
+            plugin.getDatabaseManager().checkHealth();
+            messageUtils.sendMessage(player, "shop.db.retry");
+            return;
+        }
+
+        if (args.length >= 2 && args[1].equalsIgnoreCase("backup")) {
+            if (plugin.getDatabaseManager().getBackups() == null) {
+                messageUtils.sendMessage(player, "shop.db.backup-unavailable");
+            } else if (plugin.getDatabaseManager().backupNow()) {
+                messageUtils.sendMessage(player, "shop.db.backup-started");
+            } else {
+                messageUtils.sendMessage(player, "shop.db.backup-running");
+            }
+            return;
+        }
+
+        ResilientShopRepository repository = plugin.getDatabaseManager().getRepository();
+        CircuitBreaker breaker = repository.getBreaker();
+        UUID playerUUID = player.getUniqueId();
+
+        messageUtils.sendMessage(player, messageUtils.createHeader(localeManager.getMessage(playerUUID, "shop.db.header")));
+        messageUtils.sendMessage(player, "shop.db.backend", repository.getName());
+        messageUtils.sendMessage(player, "shop.db.state." + breaker.getState().name().toLowerCase(),
+            messageUtils.formatNumber(breaker.getConsecutiveFailures()));
+        if (breaker.getState() != CircuitBreaker.State.CLOSED && breaker.getLastError() != null) {
+            messageUtils.sendMessage(player, "shop.db.last-error", breaker.getLastError());
+        }
+        messageUtils.sendMessage(player, "shop.db.backlog",
+            messageUtils.formatNumber(repository.getBacklog().size()),
+            messageUtils.formatNumber(breaker.getTrips()));
+
+        if (repository.getDelegate() instanceof SqlShopRepository) {
+            ConnectionPool pool = ((SqlShopRepository) repository.getDelegate()).getPool();
+            if (pool != null) {
+                messageUtils.sendMessage(player, "shop.db.pool",
+                    messageUtils.formatNumber(pool.getTotal()),
+                    messageUtils.formatNumber(pool.getMaxSize()),
+                    messageUtils.formatNumber(pool.getIdle()),
+                    messageUtils.formatNumber(pool.getCreated()),
+                    messageUtils.formatNumber(pool.getDiscarded()));
+            }
+        }
         messageUtils.sendMessage(player, messageUtils.createFooter());
     }
 
@@ -366,6 +461,10 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
             messageUtils.sendMessage(player, "shop.help.reload");
         }
 
+        if (player.hasPermission("supershop.admin")) {
+            messageUtils.sendMessage(player, "shop.help.db");
+        }
+
         messageUtils.sendMessage(player, messageUtils.createFooter());
     }
 
@@ -392,6 +491,10 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
                 subCommands.add("reload");
             }
 
+            if (sender.hasPermission("supershop.admin")) {
+                subCommands.add("db");
+            }
+
             for (String subCommand : subCommands) {
                 if (subCommand.toLowerCase().startsWith(args[0].toLowerCase())) {
                     completions.add(subCommand);
@@ -401,11 +504,20 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
             if (sender.isOp()) {
                 completions.add("remove");
             }
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("db")) {
+            if (sender.hasPermission("supershop.admin")) {
+                for (String option : Arrays.asList("retry", "backup")) {
+                    if (option.startsWith(args[1].toLowerCase())) {
+                        completions.add(option);
+                    }
+                }
+            }
         } else if (args.length == 2 && args[0].equalsIgnoreCase("manage")) {
             if (sender instanceof Player) {
                 Player player = (Player) sender;
-                List<Shop> shops = plugin.getShopManager().getShopsByOwner(player.getUniqueId());
-                for (int i = 1; i <= shops.size(); i++) {
+                // Counted from the index, completing must not wait for unloaded shops
+                int shopCount = plugin.getShopManager().getShopCount(player.getUniqueId());
+                for (int i = 1; i <= shopCount; i++) {
                     completions.add(String.valueOf(i));
                 }
             }
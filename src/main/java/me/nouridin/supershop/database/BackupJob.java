@@ -0,0 +1,165 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Takes scheduled snapshots of the database into backups/ and keeps the newest few.
+ * The copy runs on its own thread, next to the database thread, and the repository
+ * decides how to read a consistent copy without making writes wait, see
+ * {@link ShopRepository#backup}. A snapshot only gets its final name once it is complete.
+ */
+public class BackupJob {
+
+    private static final String PREFIX = "shops-";
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final supershop plugin;
+    private final ShopRepository repository;
+    private final File folder;
+    private final String extension;
+    private final ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private BukkitTask timer;
+
+    /**
+     * @param extension file extension of the snapshots, they are sorted and rotated by name
+     */
+    public BackupJob(supershop plugin, ShopRepository repository, String extension) {
+        this.plugin = plugin;
+        this.repository = repository;
+        this.folder = new File(plugin.getDataFolder(), "backups");
+        this.extension = extension;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SuperShop-Backup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        if (!plugin.getConfigManager().isBackupEnabled()) {
+            return;
+        }
+        long intervalTicks = Math.max(1, plugin.getConfigManager().getBackupIntervalHours()) * 60L * 60L * 20L;
+        timer = plugin.getServer().getScheduler().runTaskTimer(plugin, this::run, intervalTicks, intervalTicks);
+    }
+
+    /**
+     * @return false if a backup is already running
+     */
+    public boolean run() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.execute(() -> {
+            try {
+                backup();
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private void backup() {
+        long start = System.currentTimeMillis();
+        String name = PREFIX + TIMESTAMP.format(LocalDateTime.now()) + extension;
+        File target = new File(folder, name);
+        File partial = new File(folder, name + ".partial");
+
+        try {
+            Files.createDirectories(folder.toPath());
+            if (!repository.backup(partial, plugin.getConfigManager().getBackupStepSize())) {
+                Files.deleteIfExists(partial.toPath());
+                return;
+            }
+            Files.move(partial.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            int removed = rotate();
+
+            plugin.getMessageUtils().sendConsoleMessage(String.format("&aBackup written to backups/%s (%d KB) in %d ms, %d old backups removed.",
+                name, target.length() / 1024, System.currentTimeMillis() - start, removed));
+
+        } catch (SQLException | IOException e) {
+            partial.delete();
+            plugin.getMessageUtils().sendConsoleMessage("&cBackup failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes all but the newest snapshots, names sort by the time they were taken.
+     *
+     * @return number of snapshots deleted
+     */
+    private int rotate() {
+        File[] snapshots = folder.listFiles((dir, file) -> file.startsWith(PREFIX) && file.endsWith(extension));
+        if (snapshots == null) {
+            return 0;
+        }
+
+        Arrays.sort(snapshots, Comparator.comparing(File::getName).reversed());
+        int keep = Math.max(1, plugin.getConfigManager().getBackupKeep());
+        int removed = 0;
+        for (int i = keep; i < snapshots.length; i++) {
+            if (snapshots[i].delete()) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Stops the timer and lets a running backup finish before the connections are closed.
+     */
+    public void shutdown(long timeoutSeconds) {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+                plugin.getMessageUtils().sendConsoleMessage("&cTimed out waiting for the running backup.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+/**
+ * Outcome of a batched save, used to report throughput.
+ */
+public final class BatchResult {
+
+    private final int shopRows;
+    private final int itemRows;
+    private final long elapsedNanos;
+
+    public BatchResult(int shopRows, int itemRows, long elapsedNanos) {
+        this.shopRows = shopRows;
+        this.itemRows = itemRows;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getShopRows() { return shopRows; }
+    public int getItemRows() { return itemRows; }
+    public int getTotalRows() { return shopRows + itemRows; }
+    public long getElapsedMillis() { return elapsedNanos / 1_000_000L; }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : getTotalRows() / (elapsedNanos / 1_000_000_000.0);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.util.ItemCodec;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out one shared instance per distinct encoded item and price list, keyed by the
+ * fingerprint of their bytes. Listings that sell the same item for the same price then point
+ * at one copy instead of holding their own. Shared price lists are unmodifiable, changing a
+ * price always sets a new list. Entries are weak, an instance goes away once no loaded
+ * listing uses it. Safe to use from the decoder threads.
+ */
+public class BlobInterner {
+
+    // Cleared references are swept every this many lookups
+    private static final long SWEEP_INTERVAL = 4096;
+
+    @FunctionalInterface
+    private interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    private final ConcurrentHashMap<String, WeakReference<byte[]>> items = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, WeakReference<List<ItemStack>>> prices = new ConcurrentHashMap<>();
+
+    // Metrics
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * @return the shared copy of the encoded item, the given array if it is the first of its kind
+     */
+    public byte[] internItem(byte[] data) {
+        if (data == null || data.length == 0) {
+            return data;
+        }
+        try {
+            return intern(items, ItemCodec.fingerprint(data), () -> data);
+        } catch (IOException e) {
+            // The loader hands back the array as is
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes the price list unless an identical one is already loaded.
+     */
+    public List<ItemStack> internPrices(byte[] data) throws IOException {
+        return intern(prices, ItemCodec.fingerprint(data), () -> Collections.unmodifiableList(ItemCodec.decodeList(data)));
+    }
+
+    private <T> T intern(ConcurrentHashMap<String, WeakReference<T>> cache, String fingerprint, Loader<T> loader) throws IOException {
+        if (lookups.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            sweep();
+        }
+
+        WeakReference<T> reference = cache.get(fingerprint);
+        T value = reference == null ? null : reference.get();
+        if (value != null) {
+            hits.incrementAndGet();
+            return value;
+        }
+
+        T loaded = loader.load();
+        WeakReference<T> candidate = new WeakReference<>(loaded);
+        while (true) {
+            // Another decoder may have loaded the same blob meanwhile, the first one in wins
+            WeakReference<T> existing = cache.putIfAbsent(fingerprint, candidate);
+            if (existing == null) {
+                return loaded;
+            }
+            T current = existing.get();
+            if (current != null) {
+                hits.incrementAndGet();
+                return current;
+            }
+            if (cache.replace(fingerprint, existing, candidate)) {
+                return loaded;
+            }
+        }
+    }
+
+    private void sweep() {
+        items.values().removeIf(reference -> reference.get() == null);
+        prices.values().removeIf(reference -> reference.get() == null);
+    }
+
+    public int getDistinctCount() {
+        return items.size() + prices.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+import me.nouridin.supershop.util.ItemCodec;
+import me.nouridin.supershop.util.ItemSerializer;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Rewrites rows still stored in the old Base64 format into the binary blob columns, moves
+ * the item and price bytes of every row into the item_blobs dictionary and finally rewrites
+ * blobs written by an older Minecraft version in upgraded form, so the server's upgrade path
+ * runs once per blob instead of on every load. Runs in small chunks on the database thread while the server is up, so normal saves
+ * queue in between chunks instead of waiting for the whole table. Rows that fail to
+ * decode keep their old data and are skipped, they are retried on the next start.
+ */
+public class BlobMigration {
+
+    private final supershop plugin;
+    private final PersistenceExecutor persistence;
+    private final SqlShopRepository repository;
+    private final int batchSize;
+
+    // Only touched on the database thread, chunks never run concurrently
+    private UUID lastShopId;
+    private UUID lastItemId;
+    private UUID lastMovedItemId;
+    private String lastBlobFingerprint;
+    private boolean shopsDone;
+    private boolean itemsDone;
+    private boolean movesDone;
+    private long migratedShops;
+    private long migratedItems;
+    private long movedItems;
+    private long storedBlobs;
+    private long upgradedBlobs;
+    private long skippedBlobs;
+    private long skippedRows;
+    private long legacyBytes;
+    private long binaryBytes;
+    private long startedAt;
+
+    public BlobMigration(supershop plugin, PersistenceExecutor persistence, SqlShopRepository repository) {
+        this.plugin = plugin;
+        this.persistence = persistence;
+        this.repository = repository;
+        this.batchSize = Math.max(1, plugin.getConfigManager().getDatabaseBatchSize());
+    }
+
+    public void start() {
+        startedAt = System.currentTimeMillis();
+        runChunk();
+    }
+
+    private void runChunk() {
+        persistence.submit("migrate item blobs", this::migrateChunk).thenAccept(more -> {
+            if (!more) {
+                finish();
+            } else if (plugin.isEnabled()) {
+                // Yield a tick between chunks
+                plugin.getServer().getScheduler().runTaskLater(plugin, this::runChunk, 1L);
+            }
+        });
+    }
+
+    private boolean migrateChunk() throws SQLException {
+        return repository.withConnection((connection, statements) -> {
+            if (!shopsDone) {
+                shopsDone = migrateShops(connection) < batchSize;
+                return true;
+            }
+            if (!itemsDone) {
+                itemsDone = migrateItems(connection) < batchSize;
+                return true;
+            }
+            if (!movesDone) {
+                movesDone = moveItemsToDictionary(connection) < batchSize;
+                return true;
+            }
+            return upgradeBlobs(connection) >= batchSize;
+        });
+    }
+
+    private int migrateShops(Connection connection) throws SQLException {
+        KeyFormat keys = repository.getKeyFormat();
+        String select = "SELECT shop_id, revenue_data FROM shops WHERE revenue_blob IS NULL" +
+            (lastShopId != null ? " AND shop_id > ?" : "") + " ORDER BY shop_id LIMIT ?";
+        String update = "UPDATE shops SET revenue_blob = ?, revenue_data = '' WHERE shop_id = ? AND revenue_blob IS NULL";
+
+        int rows = 0;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try (PreparedStatement query = connection.prepareStatement(select);
+             PreparedStatement stmt = connection.prepareStatement(update)) {
+            int index = 1;
+            if (lastShopId != null) {
+                keys.bind(query, index++, lastShopId);
+            }
+            query.setInt(index, batchSize);
+
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                    lastShopId = keys.read(rs, "shop_id");
+                    String revenueData = rs.getString("revenue_data");
+
+                    byte[] revenueBlob;
+                    try {
+                        revenueBlob = ItemCodec.encodeList(ItemSerializer.deserializeItemList(revenueData));
+                    } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                        plugin.getMessageUtils().sendConsoleMessage("&cFailed to migrate revenue for shop " + lastShopId + ": " + e.getMessage());
+                        skippedRows++;
+                        continue;
+                    }
+
+                    stmt.setBytes(1, revenueBlob);
+                    keys.bind(stmt, 2, lastShopId);
+                    stmt.addBatch();
+                    legacyBytes += revenueData == null ? 0 : revenueData.length();
+                    binaryBytes += revenueBlob.length;
+                    migratedShops++;
+                }
+            }
+
+            stmt.executeBatch();
+            connection.commit();
+
+        } catch (SQLException e) {
+            connection.rollback();
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to migrate shops to the binary format: " + e.getMessage());
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        return rows;
+    }
+
+    private int migrateItems(Connection connection) throws SQLException {
+        KeyFormat keys = repository.getKeyFormat();
+        String select = "SELECT item_id, item_data, price_data FROM shop_items WHERE item_blob IS NULL AND item_ref IS NULL" +
+            (lastItemId != null ? " AND item_id > ?" : "") + " ORDER BY item_id LIMIT ?";
+        String update = "UPDATE shop_items SET item_blob = ?, price_blob = ?, material = ?, item_amount = ?, display_name = ?, item_data = '', price_data = '' WHERE item_id = ? AND item_blob IS NULL AND item_ref IS NULL";
+
+        int rows = 0;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try (PreparedStatement query = connection.prepareStatement(select);
+             PreparedStatement stmt = connection.prepareStatement(update)) {
+            int index = 1;
+            if (lastItemId != null) {
+                keys.bind(query, index++, lastItemId);
+            }
+            query.setInt(index, batchSize);
+
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                    lastItemId = keys.read(rs, "item_id");
+                    String itemData = rs.getString("item_data");
+                    String priceData = rs.getString("price_data");
+
+                    ItemStack itemStack;
+                    byte[] itemBlob;
+                    byte[] priceBlob;
+                    try {
+                        itemStack = ItemSerializer.deserialize(itemData);
+                        itemBlob = ItemCodec.encode(itemStack);
+                        priceBlob = ItemCodec.encodeList(ItemSerializer.deserializeItemList(priceData));
+                    } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                        plugin.getMessageUtils().sendConsoleMessage("&cFailed to migrate shop item " + lastItemId + ": " + e.getMessage());
+                        skippedRows++;
+                        continue;
+                    }
+
+                    stmt.setBytes(1, itemBlob);
+                    stmt.setBytes(2, priceBlob);
+                    if (itemStack != null) {
+                        stmt.setString(3, itemStack.getType().name());
+                        stmt.setInt(4, itemStack.getAmount());
+                        stmt.setString(5, itemStack.hasItemMeta() && itemStack.getItemMeta().hasDisplayName() ?
+                            itemStack.getItemMeta().getDisplayName() : null);
+                    } else {
+                        stmt.setNull(3, Types.VARCHAR);
+                        stmt.setInt(4, 0);
+                        stmt.setNull(5, Types.VARCHAR);
+                    }
+                    keys.bind(stmt, 6, lastItemId);
+                    stmt.addBatch();
+                    legacyBytes += (itemData == null ? 0 : itemData.length()) + (priceData == null ? 0 : priceData.length());
+                    binaryBytes += itemBlob.length + priceBlob.length;
+                    migratedItems++;
+                }
+            }
+
+            stmt.executeBatch();
+            connection.commit();
+
+        } catch (SQLException e) {
+            connection.rollback();
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to migrate shop items to the binary format: " + e.getMessage());
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Rows saved before the dictionary existed keep their bytes inline until they are moved here,
+     * a save in between already writes the references and is left alone.
+     */
+    private int moveItemsToDictionary(Connection connection) throws SQLException {
+        KeyFormat keys = repository.getKeyFormat();
+        String select = "SELECT item_id, item_blob, price_blob FROM shop_items WHERE item_ref IS NULL AND item_blob IS NOT NULL" +
+            (lastMovedItemId != null ? " AND item_id > ?" : "") + " ORDER BY item_id LIMIT ?";
+        String update = "UPDATE shop_items SET item_ref = ?, price_ref = ?, item_blob = NULL, price_blob = NULL WHERE item_id = ? AND item_ref IS NULL";
+
+        int rows = 0;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try (PreparedStatement query = connection.prepareStatement(select);
+             PreparedStatement blobStmt = connection.prepareStatement(repository.getBlobInsertSql());
+             PreparedStatement stmt = connection.prepareStatement(update)) {
+            int index = 1;
+            if (lastMovedItemId != null) {
+                keys.bind(query, index++, lastMovedItemId);
+            }
+            query.setInt(index, batchSize);
+
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                    lastMovedItemId = keys.read(rs, "item_id");
+                    byte[] itemBlob = rs.getBytes("item_blob");
+                    byte[] priceBlob = rs.getBytes("price_blob");
+
+                    String itemRef = ItemCodec.fingerprint(itemBlob);
+                    SqlShopRepository.bindBlob(blobStmt, itemRef, itemBlob);
+                    blobStmt.addBatch();
+
+                    String priceRef = null;
+                    if (priceBlob != null) {
+                        priceRef = ItemCodec.fingerprint(priceBlob);
+                        SqlShopRepository.bindBlob(blobStmt, priceRef, priceBlob);
+                        blobStmt.addBatch();
+                    }
+
+                    stmt.setString(1, itemRef);
+                    stmt.setString(2, priceRef);
+                    keys.bind(stmt, 3, lastMovedItemId);
+                    stmt.addBatch();
+                    movedItems++;
+                }
+            }
+
+            // Ignored inserts report 0, so this only counts blobs that were new
+            for (int count : blobStmt.executeBatch()) {
+                if (count > 0) {
+                    storedBlobs += count;
+                }
+            }
+            stmt.executeBatch();
+            connection.commit();
+
+        } catch (SQLException e) {
+            connection.rollback();
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to move shop items to the blob dictionary: " + e.getMessage());
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Decodes each outdated blob, which runs the upgrade, and stores the result under its new
+     * fingerprint. Every reference moves over and the old blob is deleted. Whether a blob is a
+     * price list or a single item follows from what refers to it.
+     */
+    private int upgradeBlobs(Connection connection) throws SQLException {
+        int currentVersion = ItemCodec.currentDataVersion();
+        String select = "SELECT b.fingerprint, b.data, " +
+            "CASE WHEN EXISTS (SELECT 1 FROM shop_items i WHERE i.price_ref = b.fingerprint) THEN 1 ELSE 0 END AS is_list " +
+            "FROM item_blobs b WHERE (b.data_version IS NULL OR b.data_version < ?)" +
+            (lastBlobFingerprint != null ? " AND b.fingerprint > ?" : "") + " ORDER BY b.fingerprint LIMIT ?";
+
+        int rows = 0;
+        Map<String, byte[]> upgrades = new HashMap<>();
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try (PreparedStatement query = connection.prepareStatement(select);
+             PreparedStatement stampStmt = connection.prepareStatement("UPDATE item_blobs SET data_version = ? WHERE fingerprint = ?");
+             PreparedStatement blobStmt = connection.prepareStatement(repository.getBlobInsertSql());
+             PreparedStatement itemStmt = connection.prepareStatement("UPDATE shop_items SET item_ref = ? WHERE item_ref = ?");
+             PreparedStatement priceStmt = connection.prepareStatement("UPDATE shop_items SET price_ref = ? WHERE price_ref = ?");
+             PreparedStatement ledgerStmt = connection.prepareStatement("UPDATE revenue_ledger SET fingerprint = ? WHERE fingerprint = ?");
+             PreparedStatement deleteStmt = connection.prepareStatement("DELETE FROM item_blobs WHERE fingerprint = ?")) {
+            query.setInt(1, currentVersion);
+            int index = 2;
+            if (lastBlobFingerprint != null) {
+                query.setString(index++, lastBlobFingerprint);
+            }
+            query.setInt(index, batchSize);
+
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                    lastBlobFingerprint = rs.getString("fingerprint");
+                    byte[] data = rs.getBytes("data");
+
+                    // Blobs from before the version column only need it filled in
+                    if (!ItemCodec.isOutdated(data)) {
+                        stampStmt.setInt(1, ItemCodec.getDataVersion(data));
+                        stampStmt.setString(2, lastBlobFingerprint);
+                        stampStmt.addBatch();
+                        continue;
+                    }
+
+                    byte[] upgraded;
+                    try {
+                        upgraded = rs.getInt("is_list") == 1 ?
+                            ItemCodec.encodeList(ItemCodec.decodeList(data)) :
+                            ItemCodec.encode(ItemCodec.decode(data));
+                    } catch (IOException | RuntimeException e) {
+                        plugin.getMessageUtils().sendConsoleMessage("&cFailed to upgrade item blob " + lastBlobFingerprint + ": " + e.getMessage());
+                        skippedBlobs++;
+                        continue;
+                    }
+
+                    String fingerprint = ItemCodec.fingerprint(upgraded);
+                    SqlShopRepository.bindBlob(blobStmt, fingerprint, upgraded);
+                    blobStmt.addBatch();
+                    for (PreparedStatement stmt : new PreparedStatement[] {itemStmt, priceStmt, ledgerStmt}) {
+                        stmt.setString(1, fingerprint);
+                        stmt.setString(2, lastBlobFingerprint);
+                        stmt.addBatch();
+                    }
+                    deleteStmt.setString(1, lastBlobFingerprint);
+                    deleteStmt.addBatch();
+                    upgrades.put(lastBlobFingerprint, upgraded);
+                }
+            }
+
+            // New blobs first, the old ones go once nothing refers to them
+            stampStmt.executeBatch();
+            blobStmt.executeBatch();
+            itemStmt.executeBatch();
+            priceStmt.executeBatch();
+            ledgerStmt.executeBatch();
+            deleteStmt.executeBatch();
+            connection.commit();
+
+        } catch (SQLException e) {
+            connection.rollback();
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to upgrade item blobs: " + e.getMessage());
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        repository.rememberUpgrades(upgrades);
+        upgradedBlobs += upgrades.size();
+        return rows;
+    }
+
+    private void finish() {
+        if (migratedShops > 0 || migratedItems > 0 || skippedRows > 0) {
+            plugin.getMessageUtils().sendConsoleMessage(String.format(
+                "&aMigrated %d shops and %d items to the binary item format in %d ms (%d KB -> %d KB, %d rows skipped).",
+                migratedShops, migratedItems, System.currentTimeMillis() - startedAt,
+                legacyBytes / 1024, binaryBytes / 1024, skippedRows));
+        }
+
+        if (movedItems > 0) {
+            plugin.getMessageUtils().sendConsoleMessage(String.format(
+                "&aMoved %d shop items to the blob dictionary, %d new blobs stored.",
+                movedItems, storedBlobs));
+        }
+
+        if (upgradedBlobs > 0 || skippedBlobs > 0) {
+            plugin.getMessageUtils().sendConsoleMessage(String.format(
+                "&aUpgraded %d item blobs to data version %d (%d skipped).", upgradedBlobs, ItemCodec.currentDataVersion(), skippedBlobs));
+        }
+    }
+}
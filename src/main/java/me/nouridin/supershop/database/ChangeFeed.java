@@ -0,0 +1,129 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps servers that share one database in step. Every write also appends the shop to
+ * shop_changes, and each server polls that table for entries other servers wrote and hands
+ * them to the {@link me.nouridin.supershop.managers.ShopManager}. Reading happens on the
+ * database thread, applying on the server thread.
+ * <p>
+ * Sequence numbers are handed out when a transaction inserts, not when it commits, so a
+ * number can show up after a higher one. The feed stops at such a gap until the entries
+ * after it are a few seconds old, a number that is still missing by then was rolled back.
+ */
+public class ChangeFeed {
+
+    private static final long GAP_WAIT_MILLIS = 10_000L;
+    private static final long PURGE_INTERVAL_MILLIS = 5L * 60L * 1000L;
+
+    private final supershop plugin;
+    private final PersistenceExecutor persistence;
+    private final ResilientShopRepository repository;
+    private final int batchSize;
+    private BukkitTask timer;
+    private volatile boolean polling;
+
+    // Only touched on the database thread
+    private long lastSequence;
+    private long lastPurge;
+
+    public ChangeFeed(supershop plugin, PersistenceExecutor persistence, ResilientShopRepository repository) {
+        this.plugin = plugin;
+        this.persistence = persistence;
+        this.repository = repository;
+        this.batchSize = Math.max(1, plugin.getConfigManager().getDatabaseBatchSize());
+    }
+
+    /**
+     * Starts at the current end of the feed. Called before the shops are indexed, which
+     * then reads everything written up to here.
+     */
+    public void start() {
+        if (!plugin.getConfigManager().isChangeFeedEnabled()) {
+            return;
+        }
+
+        persistence.execute("read change feed position", () -> {
+            lastSequence = repository.getLatestChange();
+            lastPurge = System.currentTimeMillis();
+            return null;
+        });
+
+        long intervalTicks = Math.max(1, plugin.getConfigManager().getChangeFeedPollIntervalSeconds()) * 20L;
+        timer = plugin.getServer().getScheduler().runTaskTimer(plugin, this::poll, intervalTicks, intervalTicks);
+    }
+
+    public void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    private void poll() {
+        // Polls while the breaker is open would only fill the log
+        if (polling || repository.getBreaker().getState() == CircuitBreaker.State.OPEN) {
+            return;
+        }
+
+        polling = true;
+        persistence.submit("poll change feed", () -> readChanges(System.currentTimeMillis())).whenComplete((changes, error) -> {
+            polling = false;
+            if (error == null && !changes.isEmpty() && plugin.isEnabled()) {
+                plugin.getServer().getScheduler().runTask(plugin, () -> plugin.getShopManager().applyRemoteChanges(changes));
+            }
+        });
+    }
+
+    /**
+     * @return the shops other servers changed, with their current summary or null if they were
+     * removed, in feed order
+     */
+    Map<UUID, ShopSummary> readChanges(long now) throws SQLException {
+        Map<UUID, ShopSummary> changed = new LinkedHashMap<>();
+
+        List<ShopChange> changes = repository.readChanges(lastSequence, batchSize);
+        for (ShopChange change : changes) {
+            if (change.getSequence() != lastSequence + 1 && now - change.getCreatedAt() < GAP_WAIT_MILLIS) {
+                break;
+            }
+            lastSequence = change.getSequence();
+            if (!change.isLocal()) {
+                // Only the latest state matters, several changes to one shop apply once
+                changed.remove(change.getShopId());
+                changed.put(change.getShopId(), change.getSummary());
+            }
+        }
+
+        if (now - lastPurge >= PURGE_INTERVAL_MILLIS) {
+            lastPurge = now;
+            long retentionMillis = Math.max(1, plugin.getConfigManager().getChangeFeedRetentionMinutes()) * 60L * 1000L;
+            repository.purgeChanges(now - retentionMillis);
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+/**
+ * Stops sending work to a database that keeps failing. After enough consecutive
+ * connection failures the breaker opens and calls fail fast; once the retry delay
+ * has passed one trial call is let through, and its outcome closes or reopens it.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long retryMillis;
+    private volatile State state = State.CLOSED;
+    private volatile int consecutiveFailures;
+    private volatile long openedAt;
+    private volatile String lastError;
+    private volatile long trips;
+
+    public CircuitBreaker(int failureThreshold, long retryMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.retryMillis = retryMillis;
+    }
+
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= retryMillis) {
+            state = State.HALF_OPEN;
+        }
+        return state != State.OPEN;
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * @return true if this failure opened the breaker
+     */
+    public synchronized boolean recordFailure(Throwable error) {
+        consecutiveFailures++;
+        lastError = error.getMessage();
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            boolean opened = state == State.CLOSED;
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            if (opened) {
+                trips++;
+            }
+            return opened;
+        }
+        return false;
+    }
+
+    public State getState() { return state; }
+    public int getConsecutiveFailures() { return consecutiveFailures; }
+    public long getOpenedAt() { return openedAt; }
+    public String getLastError() { return lastError; }
+    public long getTrips() { return trips; }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.sql.SQLException;
+
+/**
+ * Deletes removed shops and delisted items for good once they are older than the retention
+ * window, then the item blobs nothing refers to anymore. Removing only flips a flag, so
+ * without this the tables keep every row ever written.
+ * Works in small batches on the database thread and yields a tick between batches, like
+ * {@link BlobMigration}.
+ */
+public class CompactionJob {
+
+    // First run shortly after startup, servers that restart often would never reach the interval
+    private static final long FIRST_RUN_DELAY_TICKS = 10L * 60L * 20L;
+
+    private final supershop plugin;
+    private final PersistenceExecutor persistence;
+    private final ResilientShopRepository repository;
+    private final int batchSize;
+    private BukkitTask timer;
+    private volatile boolean running;
+
+    // Only touched on the database thread while a run is in progress
+    private long removedBefore;
+    private long startedAt;
+    private boolean shopsDone;
+    private boolean itemsDone;
+    private long shopRows;
+    private long itemRows;
+    private long blobRows;
+
+    public CompactionJob(supershop plugin, PersistenceExecutor persistence, ResilientShopRepository repository) {
+        this.plugin = plugin;
+        this.persistence = persistence;
+        this.repository = repository;
+        this.batchSize = Math.max(1, plugin.getConfigManager().getCompactionBatchSize());
+    }
+
+    public void start() {
+        if (plugin.getConfigManager().getCompactionRetentionDays() <= 0) {
+            return;
+        }
+        long intervalTicks = Math.max(1, plugin.getConfigManager().getCompactionIntervalMinutes()) * 60L * 20L;
+        timer = plugin.getServer().getScheduler().runTaskTimer(plugin, this::run, FIRST_RUN_DELAY_TICKS, intervalTicks);
+    }
+
+    public void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    /**
+     * Starts a run unless one is in progress. Skipped while writes wait in the backlog,
+     * they could still refer to the rows this would delete.
+     */
+    public void run() {
+        if (running || !repository.getBacklog().isEmpty()) {
+            return;
+        }
+
+        running = true;
+        long now = System.currentTimeMillis();
+        long retentionMillis = plugin.getConfigManager().getCompactionRetentionDays() * 24L * 60L * 60L * 1000L;
+        persistence.execute("start compaction", () -> {
+            removedBefore = now - retentionMillis;
+            startedAt = now;
+            shopsDone = false;
+            itemsDone = false;
+            shopRows = 0;
+            itemRows = 0;
+            blobRows = 0;
+            return null;
+        });
+        runBatch();
+    }
+
+    private void runBatch() {
+        persistence.submit("compact removed rows", this::compactBatch).whenComplete((more, error) -> {
+            if (error != null) {
+                // Already reported by the persistence executor, the next run starts over
+                running = false;
+            } else if (!more) {
+                finish();
+            } else if (plugin.isEnabled()) {
+                // Yield a tick between batches
+                plugin.getServer().getScheduler().runTaskLater(plugin, this::runBatch, 1L);
+            } else {
+                running = false;
+            }
+        });
+    }
+
+    private boolean compactBatch() throws SQLException {
+        if (!shopsDone) {
+            int rows = repository.purgeRemovedShops(removedBefore, batchSize);
+            shopRows += rows;
+            shopsDone = rows == 0;
+            return true;
+        }
+
+        if (!itemsDone) {
+            int rows = repository.purgeDelistedItems(removedBefore, batchSize);
+            itemRows += rows;
+            itemsDone = rows == 0;
+            return true;
+        }
+
+        // Last, the rows deleted above were the ones still referring to these
+        int rows = repository.purgeUnusedBlobs(batchSize);
+        blobRows += rows;
+        return rows > 0;
+    }
+
+    private void finish() {
+        persistence.execute("finish compaction", () -> {
+            try {
+                if (shopRows == 0 && itemRows == 0 && blobRows == 0) {
+                    return null;
+                }
+
+                long reclaimedBytes = 0;
+                if (plugin.getConfigManager().isCompactionIncrementalVacuum()) {
+                    try {
+                        reclaimedBytes = repository.reclaimSpace();
+                    } catch (SQLException e) {
+                        plugin.getMessageUtils().sendConsoleMessage("&cFailed to reclaim space after compaction: " + e.getMessage());
+                    }
+                }
+
+                plugin.getMessageUtils().sendConsoleMessage(String.format(
+                    "&aCompaction deleted %d rows of removed shops, %d delisted items and %d unused blobs in %d ms, %d KB returned to disk.",
+                    shopRows, itemRows, blobRows, System.currentTimeMillis() - startedAt, reclaimedBytes / 1024));
+                return null;
+            } finally {
+                running = false;
+            }
+        });
+    }
+}
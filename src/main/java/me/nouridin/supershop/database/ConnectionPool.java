@@ -0,0 +1,250 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.sql.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Small pool of JDBC connections. Idle connections are validated before they are handed
+ * out again and closed once they sat unused past the idle timeout, so a database restart
+ * costs one failed validation instead of a socket timeout on every statement.
+ * Each connection keeps its own {@link StatementCache}.
+ */
+public class ConnectionPool {
+
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    // Connections used within the last second are trusted without a round trip
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 1000L;
+
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final int validationTimeoutSeconds;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private int total;
+    private boolean closed;
+
+    // Metrics
+    private long created;
+    private long discarded;
+
+    public ConnectionPool(ConnectionFactory factory, int maxSize, int validationTimeoutSeconds,
+                          long idleTimeoutMillis, long borrowTimeoutMillis) {
+        this.factory = factory;
+        this.maxSize = Math.max(1, maxSize);
+        this.validationTimeoutSeconds = Math.max(1, validationTimeoutSeconds);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    public final class PooledConnection implements AutoCloseable {
+
+        private final Connection connection;
+        private final StatementCache statements;
+        private long lastUsed;
+        private boolean broken;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = new StatementCache(connection);
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        public StatementCache getStatements() {
+            return statements;
+        }
+
+        /**
+         * Closes the connection instead of returning it to the pool.
+         */
+        public void invalidate() {
+            broken = true;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+
+        private void destroy() {
+            statements.close();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // Already gone
+            }
+        }
+    }
+
+    /**
+     * @throws SQLTransientConnectionException if no connection frees up within the borrow timeout
+     */
+    public PooledConnection borrow() throws SQLException {
+        long deadline = System.currentTimeMillis() + borrowTimeoutMillis;
+
+        while (true) {
+            PooledConnection pooled;
+            synchronized (this) {
+                if (closed) {
+                    throw new SQLNonTransientConnectionException("Connection pool is closed");
+                }
+                pooled = idle.pollFirst();
+                if (pooled == null) {
+                    if (total < maxSize) {
+                        total++;
+                    } else {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            throw new SQLTransientConnectionException("Timed out waiting for a database connection");
+                        }
+                        try {
+                            wait(remaining);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new SQLTransientConnectionException("Interrupted waiting for a database connection", e);
+                        }
+                        continue;
+                    }
+                }
+            }
+
+            if (pooled == null) {
+                return open();
+            }
+            if (isUsable(pooled)) {
+                return pooled;
+            }
+            discard(pooled);
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        try {
+            PooledConnection pooled = new PooledConnection(factory.open());
+            synchronized (this) {
+                created++;
+            }
+            return pooled;
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this) {
+                total--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        long idleFor = System.currentTimeMillis() - pooled.lastUsed;
+        if (idleFor > idleTimeoutMillis) {
+            return false;
+        }
+        if (idleFor < VALIDATE_AFTER_IDLE_MILLIS) {
+            return true;
+        }
+        try {
+            // JDBC 4 validation, Connector/J answers it with a protocol level ping
+            return pooled.connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        boolean keep;
+        synchronized (this) {
+            keep = !closed && !pooled.broken;
+            if (keep) {
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.addFirst(pooled);
+                notifyAll();
+            }
+        }
+        if (!keep) {
+            discard(pooled);
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        pooled.destroy();
+        synchronized (this) {
+            total--;
+            discarded++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Closes connections that have been idle longer than the idle timeout.
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        Deque<PooledConnection> expired = new ArrayDeque<>();
+        synchronized (this) {
+            // Most recently used connections are at the front
+            while (!idle.isEmpty() && now - idle.peekLast().lastUsed > idleTimeoutMillis) {
+                expired.add(idle.pollLast());
+            }
+        }
+        for (PooledConnection pooled : expired) {
+            discard(pooled);
+        }
+    }
+
+    public void close() {
+        Deque<PooledConnection> remaining;
+        synchronized (this) {
+            closed = true;
+            remaining = new ArrayDeque<>(idle);
+            idle.clear();
+            notifyAll();
+        }
+        for (PooledConnection pooled : remaining) {
+            discard(pooled);
+        }
+    }
+
+    /**
+     * True for errors that mean the connection or the server is gone, as opposed to a bad statement.
+     */
+    public static boolean isConnectionFailure(SQLException e) {
+        if (e instanceof SQLTransientConnectionException || e instanceof SQLNonTransientConnectionException
+            || e instanceof SQLRecoverableException || e instanceof SQLTimeoutException) {
+            return true;
+        }
+        // SQL state class 08 is "connection exception"
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+
+    public synchronized int getTotal() { return total; }
+    public synchronized int getIdle() { return idle.size(); }
+    public int getMaxSize() { return maxSize; }
+    public synchronized long getCreated() { return created; }
+    public synchronized long getDiscarded() { return discarded; }
+}
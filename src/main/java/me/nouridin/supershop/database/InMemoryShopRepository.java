@@ -0,0 +1,277 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.io.File;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Keeps every row in memory and forgets them on shutdown. Meant for test servers
+ * and for measuring the plugin without a database in the way.
+ */
+public class InMemoryShopRepository implements ShopRepository {
+
+    private final Map<UUID, ShopRow> shops = new LinkedHashMap<>();
+    private final Map<UUID, ShopItemRow> items = new LinkedHashMap<>();
+    private final Map<UUID, List<RevenueEntry>> pendingRevenue = new HashMap<>();
+    private final Map<UUID, Long> removedAt = new HashMap<>();
+    private final Map<UUID, String> playerLocales = new HashMap<>();
+    private final Set<UUID> firstLogins = new HashSet<>();
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String getName() {
+        return "memory";
+    }
+
+    @Override
+    public void validate() {
+    }
+
+    @Override
+    public void saveShop(ShopRow row) {
+        shops.put(row.getShopId(), row);
+        List<RevenueEntry> entries = pendingRevenue.get(row.getShopId());
+        if (entries != null) {
+            // Only the entries the row was read with, see ShopRow#getFoldedRevenue
+            if (row.getFoldedRevenue() == null) {
+                entries.clear();
+            } else {
+                Set<UUID> folded = new HashSet<>(row.getFoldedRevenue());
+                entries.removeIf(entry -> folded.contains(entry.getEntryId()));
+            }
+            if (entries.isEmpty()) {
+                pendingRevenue.remove(row.getShopId());
+            }
+        }
+    }
+
+    @Override
+    public void saveShopItem(ShopItemRow row) {
+        items.put(row.getItemId(), row);
+    }
+
+    @Override
+    public void saveBatch(List<ShopRow> shopRows, List<ShopItemRow> itemRows) {
+        for (ShopRow row : shopRows) {
+            saveShop(row);
+        }
+        for (ShopItemRow row : itemRows) {
+            saveShopItem(row);
+        }
+    }
+
+    @Override
+    public boolean saveShopIfVersion(ShopRow row, long expectedVersion) {
+        ShopRow stored = shops.get(row.getShopId());
+        if (stored == null || stored.getVersion() != expectedVersion) {
+            return false;
+        }
+        saveShop(row);
+        return true;
+    }
+
+    @Override
+    public boolean saveShopItemIfVersion(ShopItemRow row, long expectedVersion) {
+        ShopItemRow stored = items.get(row.getItemId());
+        if (stored == null || stored.getVersion() != expectedVersion) {
+            return false;
+        }
+        saveShopItem(row);
+        if (row.getQuantity() <= 0) {
+            // Sold out, delisted the same way as deleteShopItem
+            deleteShopItem(row.getShopId(), row.getItemId());
+        }
+        return true;
+    }
+
+    @Override
+    public void readShopSummaries(Consumer<ShopSummary> summarySink) {
+        for (ShopRow row : shops.values()) {
+            if (row.isActive()) {
+                summarySink.accept(new ShopSummary(row.getShopId(), row.getOwnerId(), row.getWorldName(), row.getX(), row.getY(), row.getZ()));
+            }
+        }
+    }
+
+    @Override
+    public void readShops(Collection<UUID> requested, Consumer<ShopRow> shopSink, Consumer<ShopItemRow> itemSink) {
+        Set<UUID> shopIds = new HashSet<>();
+        for (UUID shopId : requested) {
+            ShopRow row = shops.get(shopId);
+            if (row != null && row.isActive()) {
+                shopIds.add(shopId);
+                shopSink.accept(row);
+            }
+        }
+        for (ShopItemRow row : items.values()) {
+            if (row.isAvailable() && row.getQuantity() > 0 && shopIds.contains(row.getShopId())) {
+                itemSink.accept(row);
+            }
+        }
+    }
+
+    @Override
+    public void deleteShop(UUID shopId) {
+        ShopRow row = shops.get(shopId);
+        if (row != null) {
+            shops.put(shopId, new ShopRow(row.getShopId(), row.getOwnerId(), row.getOwnerName(), row.getWorldName(),
+                row.getX(), row.getY(), row.getZ(), false, row.getCreatedAt(), row.getLastUpdated(),
+                row.getRevenueData(), row.getRevenueBlob(), row.getVersion() + 1));
+            removedAt.put(shopId, System.currentTimeMillis());
+        }
+        pendingRevenue.remove(shopId);
+    }
+
+    @Override
+    public void deleteShopItem(UUID shopId, UUID itemId) {
+        ShopItemRow row = items.get(itemId);
+        if (row != null && row.getShopId().equals(shopId)) {
+            items.put(itemId, new ShopItemRow(row.getItemId(), row.getShopId(), row.getItemData(), row.getQuantity(),
+                row.getDescription(), row.getPriceData(), false, row.getItemBlob(), row.getPriceBlob(),
+                row.getMaterial(), row.getItemAmount(), row.getDisplayName(), row.getVersion() + 1));
+            removedAt.put(itemId, System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public void appendRevenue(UUID shopId, List<RevenueEntry> entries, long createdAt) {
+        pendingRevenue.computeIfAbsent(shopId, k -> new ArrayList<>()).addAll(entries);
+    }
+
+    @Override
+    public Map<UUID, List<RevenueEntry>> loadPendingRevenue(Collection<UUID> shopIds) {
+        Map<UUID, List<RevenueEntry>> revenue = new HashMap<>();
+        for (UUID shopId : shopIds) {
+            List<RevenueEntry> entries = pendingRevenue.get(shopId);
+            if (entries != null) {
+                revenue.put(shopId, new ArrayList<>(entries));
+            }
+        }
+        return revenue;
+    }
+
+    @Override
+    public int purgeFoldedRevenue(long createdBefore) {
+        // Folded entries are dropped right away, nothing outlives the server here
+        return 0;
+    }
+
+    @Override
+    public int purgeRemovedShops(long removedBefore, int limit) {
+        Set<UUID> purged = new HashSet<>();
+        for (ShopRow row : shops.values()) {
+            Long removed = removedAt.get(row.getShopId());
+            if (!row.isActive() && removed != null && removed < removedBefore) {
+                purged.add(row.getShopId());
+                if (purged.size() >= limit) {
+                    break;
+                }
+            }
+        }
+
+        int rows = purged.size();
+        shops.keySet().removeAll(purged);
+        removedAt.keySet().removeAll(purged);
+        Iterator<ShopItemRow> items = this.items.values().iterator();
+        while (items.hasNext()) {
+            ShopItemRow row = items.next();
+            if (purged.contains(row.getShopId())) {
+                items.remove();
+                removedAt.remove(row.getItemId());
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public int purgeDelistedItems(long delistedBefore, int limit) {
+        int rows = 0;
+        Iterator<ShopItemRow> items = this.items.values().iterator();
+        while (items.hasNext() && rows < limit) {
+            ShopItemRow row = items.next();
+            Long removed = removedAt.get(row.getItemId());
+            if (!row.isAvailable() && removed != null && removed < delistedBefore) {
+                items.remove();
+                removedAt.remove(row.getItemId());
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public int purgeUnusedBlobs(int limit) {
+        // Rows keep their own bytes here
+        return 0;
+    }
+
+    @Override
+    public long reclaimSpace() {
+        return 0;
+    }
+
+    @Override
+    public boolean backup(File target, int stepSize) {
+        return false;
+    }
+
+    @Override
+    public long getLatestChange() {
+        // Nobody else can see this database
+        return 0;
+    }
+
+    @Override
+    public List<ShopChange> readChanges(long afterSequence, int limit) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int purgeChanges(long createdBefore) {
+        return 0;
+    }
+
+    @Override
+    public void savePlayerLocale(UUID playerId, String locale) {
+        playerLocales.put(playerId, locale);
+    }
+
+    @Override
+    public Map<UUID, String> loadPlayerLocales() {
+        return new HashMap<>(playerLocales);
+    }
+
+    @Override
+    public boolean hasReceivedFirstLoginMessage(UUID playerId) {
+        return firstLogins.contains(playerId);
+    }
+
+    @Override
+    public void recordFirstLoginMessage(UUID playerId) {
+        firstLogins.add(playerId);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiFunction;
+
+/**
+ * Rewrites tables from one {@link KeyFormat} to the other. Each table is copied into a
+ * new table with the converted key columns and then swapped in under the original name.
+ * Runs once at startup when database.compact-keys no longer matches what is on disk.
+ */
+public class KeyConverter {
+
+    private final supershop plugin;
+    private final Connection connection;
+    private final SqlDialect dialect;
+    private final int batchSize;
+
+    public KeyConverter(supershop plugin, Connection connection, SqlDialect dialect, int batchSize) {
+        this.plugin = plugin;
+        this.connection = connection;
+        this.dialect = dialect;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * @return the key format of an existing table, or null if the table does not exist yet
+     */
+    public KeyFormat detect(String table, String keyColumn) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet rs = metaData.getColumns(connection.getCatalog(), null, table, null)) {
+            while (rs.next()) {
+                if (rs.getString("COLUMN_NAME").equalsIgnoreCase(keyColumn)) {
+                    String type = rs.getString("TYPE_NAME").toUpperCase();
+                    return type.contains("CHAR") || type.contains("TEXT") ? KeyFormat.TEXT : KeyFormat.BINARY;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param createSql builds the CREATE TABLE statement for a table name in the target format
+     * @return number of rows copied
+     */
+    public int convert(String table, Set<String> keyColumns, KeyFormat from, KeyFormat to,
+                       BiFunction<String, KeyFormat, String> createSql) throws SQLException {
+        String target = table + "_rekey";
+        int rows = 0;
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + target);
+            stmt.execute(createSql.apply(target, to));
+
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + table)) {
+                ResultSetMetaData columns = rs.getMetaData();
+                List<String> names = new ArrayList<>();
+                for (int i = 1; i <= columns.getColumnCount(); i++) {
+                    names.add(columns.getColumnName(i));
+                }
+
+                String insert = "INSERT INTO " + target + " (" + String.join(", ", names) + ") VALUES (" +
+                    String.join(", ", Collections.nCopies(names.size(), "?")) + ")";
+
+                try (PreparedStatement insertStmt = connection.prepareStatement(insert)) {
+                    int pending = 0;
+                    while (rs.next()) {
+                        for (int i = 1; i <= names.size(); i++) {
+                            if (containsIgnoreCase(keyColumns, names.get(i - 1))) {
+                                UUID key = from.read(rs, names.get(i - 1));
+                                if (key == null) {
+                                    insertStmt.setNull(i, Types.NULL);
+                                } else {
+                                    to.bind(insertStmt, i, key);
+                                }
+                            } else {
+                                insertStmt.setObject(i, rs.getObject(i));
+                            }
+                        }
+                        insertStmt.addBatch();
+                        rows++;
+                        if (++pending >= batchSize) {
+                            insertStmt.executeBatch();
+                            pending = 0;
+                        }
+                    }
+                    if (pending > 0) {
+                        insertStmt.executeBatch();
+                    }
+                }
+            }
+
+            if (dialect.hasTransactionalDdl()) {
+                // DDL is transactional on SQLite, the swap commits together with the copy
+                stmt.execute("DROP TABLE " + table);
+                stmt.execute("ALTER TABLE " + target + " RENAME TO " + table);
+                connection.commit();
+            } else {
+                // MySQL commits DDL implicitly, RENAME TABLE swaps both names atomically
+                connection.commit();
+                stmt.execute("RENAME TABLE " + table + " TO " + table + "_old, " + target + " TO " + table);
+                stmt.execute("DROP TABLE " + table + "_old");
+            }
+
+        } catch (SQLException e) {
+            connection.rollback();
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to convert keys of table " + table + ": " + e.getMessage());
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        return rows;
+    }
+
+    private static boolean containsIgnoreCase(Set<String> values, String value) {
+        for (String candidate : values) {
+            if (candidate.equalsIgnoreCase(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * How UUID key columns are stored. TEXT is the original 36 character form,
+ * BINARY packs the same UUID into 16 bytes.
+ */
+public enum KeyFormat {
+
+    TEXT {
+        @Override
+        public String columnType(SqlDialect dialect) {
+            return "VARCHAR(36)";
+        }
+
+        @Override
+        public void bind(PreparedStatement stmt, int index, UUID uuid) throws SQLException {
+            stmt.setString(index, uuid.toString());
+        }
+
+        @Override
+        public UUID read(ResultSet rs, String column) throws SQLException {
+            String value = rs.getString(column);
+            return value == null ? null : UUID.fromString(value);
+        }
+    },
+
+    BINARY {
+        @Override
+        public String columnType(SqlDialect dialect) {
+            return dialect.binaryKeyType();
+        }
+
+        @Override
+        public void bind(PreparedStatement stmt, int index, UUID uuid) throws SQLException {
+            stmt.setBytes(index, toBytes(uuid));
+        }
+
+        @Override
+        public UUID read(ResultSet rs, String column) throws SQLException {
+            byte[] value = rs.getBytes(column);
+            return value == null ? null : fromBytes(value);
+        }
+    };
+
+    public abstract String columnType(SqlDialect dialect);
+
+    public abstract void bind(PreparedStatement stmt, int index, UUID uuid) throws SQLException;
+
+    public abstract UUID read(ResultSet rs, String column) throws SQLException;
+
+    public static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+            .putLong(uuid.getMostSignificantBits())
+            .putLong(uuid.getLeastSignificantBits())
+            .array();
+    }
+
+    public static UUID fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes MySQL tables as a gzipped script of CREATE TABLE and INSERT statements that the
+ * mysql client can load back, without needing mysqldump next to the server. Every table
+ * is read from one consistent snapshot, which InnoDB serves without taking locks.
+ */
+public class LogicalExport {
+
+    private final Connection connection;
+    private final int rowsPerStatement;
+    private final int fetchSize;
+
+    public LogicalExport(Connection connection, int rowsPerStatement, int fetchSize) {
+        this.connection = connection;
+        this.rowsPerStatement = Math.max(1, rowsPerStatement);
+        this.fetchSize = fetchSize;
+    }
+
+    public void write(File target, List<String> tables) throws SQLException, IOException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+            stmt.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY");
+        }
+
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(target)), StandardCharsets.UTF_8))) {
+            out.write("-- SuperShop backup taken " + Instant.now() + "\n");
+            out.write("SET NAMES utf8mb4;\nSET FOREIGN_KEY_CHECKS = 0;\n\n");
+            for (String table : tables) {
+                writeTable(out, table);
+            }
+            out.write("SET FOREIGN_KEY_CHECKS = 1;\n");
+        } finally {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("COMMIT");
+            }
+        }
+    }
+
+    private void writeTable(Writer out, String table) throws SQLException, IOException {
+        out.write("DROP TABLE IF EXISTS `" + table + "`;\n");
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SHOW CREATE TABLE `" + table + "`")) {
+            if (rs.next()) {
+                out.write(rs.getString(2) + ";\n\n");
+            }
+        }
+
+        try (Statement stmt = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(fetchSize);
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM `" + table + "`")) {
+                ResultSetMetaData meta = rs.getMetaData();
+                StringBuilder insert = new StringBuilder("INSERT INTO `").append(table).append("` (");
+                for (int column = 1; column <= meta.getColumnCount(); column++) {
+                    insert.append(column > 1 ? ", `" : "`").append(meta.getColumnName(column)).append('`');
+                }
+                insert.append(") VALUES\n");
+
+                int rows = 0;
+                while (rs.next()) {
+                    out.write(rows == 0 ? insert.toString() : ",\n");
+                    out.write('(');
+                    for (int column = 1; column <= meta.getColumnCount(); column++) {
+                        if (column > 1) {
+                            out.write(", ");
+                        }
+                        out.write(literal(rs, column, meta.getColumnType(column)));
+                    }
+                    out.write(')');
+                    if (++rows >= rowsPerStatement) {
+                        out.write(";\n");
+                        rows = 0;
+                    }
+                }
+                if (rows > 0) {
+                    out.write(";\n");
+                }
+            }
+        }
+        out.write("\n");
+    }
+
+    private static String literal(ResultSet rs, int column, int type) throws SQLException {
+        switch (type) {
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB: {
+                byte[] bytes = rs.getBytes(column);
+                return bytes == null ? "NULL" : "X'" + HexFormat.of().formatHex(bytes) + "'";
+            }
+            case Types.BIT:
+            case Types.BOOLEAN: {
+                boolean value = rs.getBoolean(column);
+                return rs.wasNull() ? "NULL" : value ? "1" : "0";
+            }
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE: {
+                String value = rs.getString(column);
+                return value == null ? "NULL" : value;
+            }
+            default: {
+                String value = rs.getString(column);
+                return value == null ? "NULL" : quote(value);
+            }
+        }
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('\'');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\'': quoted.append("''"); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\0': quoted.append("\\0"); break;
+                default: quoted.append(c);
+            }
+        }
+        return quoted.append('\'').toString();
+    }
+}
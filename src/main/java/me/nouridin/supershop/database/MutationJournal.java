@@ -0,0 +1,380 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal for shop mutations. Every purchase, restock and revenue change is
+ * appended here on the server thread before its database write is queued, so a crash
+ * between the two loses nothing: the records after the last checkpoint are replayed on
+ * the next start.
+ * <p>
+ * Appends only copy the record into a buffer. A writer thread drains the buffer and
+ * syncs it to disk once per sync interval, so many clicks share one fsync. The journal
+ * is split into segment files; once a checkpoint covers every record of a segment the
+ * file is deleted.
+ * <p>
+ * Record layout: long sequence, byte write type, int payload length, payload, int CRC32
+ * of everything before it.
+ */
+public class MutationJournal {
+
+    public static final class Record {
+        private final long sequence;
+        private final WriteCodec.Type type;
+        private final byte[] payload;
+
+        private Record(long sequence, WriteCodec.Type type, byte[] payload) {
+            this.sequence = sequence;
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public long getSequence() { return sequence; }
+        public WriteCodec.Type getType() { return type; }
+
+        public DataInput open() {
+            return new DataInputStream(new ByteArrayInputStream(payload));
+        }
+    }
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final supershop plugin;
+    private final File directory;
+    private final File checkpointFile;
+    private final long syncIntervalMillis;
+    private final long segmentBytes;
+
+    // Guarded by this
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long lastSequence;
+    private long pendingRecords;
+    private boolean closed;
+
+    private volatile long checkpointSequence;
+    private volatile long durableSequence;
+
+    // Only touched by the writer thread once it runs
+    private final TreeMap<Long, File> segments = new TreeMap<>();
+    private FileChannel segment;
+    private long segmentSize;
+    private long writtenCheckpoint;
+    private Thread writer;
+
+    // Metrics
+    private volatile long appendedRecords;
+    private volatile long syncs;
+
+    public MutationJournal(supershop plugin, File directory, long syncIntervalMillis, long segmentBytes) {
+        this.plugin = plugin;
+        this.directory = directory;
+        this.checkpointFile = new File(directory, "checkpoint");
+        this.syncIntervalMillis = Math.max(1, syncIntervalMillis);
+        this.segmentBytes = Math.max(64 * 1024, segmentBytes);
+    }
+
+    /**
+     * Reads the records that were not covered by a checkpoint. Called once before {@link #start()}.
+     */
+    public List<Record> recover() throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        long checkpoint = readCheckpoint();
+        List<Record> records = new ArrayList<>();
+        long maxSequence = checkpoint;
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                String number = file.getName().substring(SEGMENT_PREFIX.length(), file.getName().length() - SEGMENT_SUFFIX.length());
+                segments.put(Long.parseLong(number, 16), file);
+                maxSequence = Math.max(maxSequence, readSegment(file, checkpoint, records));
+            }
+        }
+
+        synchronized (this) {
+            lastSequence = maxSequence;
+        }
+        checkpointSequence = checkpoint;
+        durableSequence = maxSequence;
+        writtenCheckpoint = checkpoint;
+        return records;
+    }
+
+    private long readSegment(File file, long checkpoint, List<Record> records) throws IOException {
+        long maxSequence = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                long sequence;
+                try {
+                    sequence = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                try {
+                    int typeOrdinal = in.readUnsignedByte();
+                    int length = in.readInt();
+                    if (typeOrdinal >= WriteCodec.Type.values().length || length < 0) {
+                        throw new IOException("corrupt header");
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    int storedCrc = in.readInt();
+                    if (storedCrc != checksum(sequence, typeOrdinal, payload)) {
+                        throw new IOException("checksum mismatch");
+                    }
+
+                    maxSequence = Math.max(maxSequence, sequence);
+                    if (sequence > checkpoint) {
+                        records.add(new Record(sequence, WriteCodec.Type.values()[typeOrdinal], payload));
+                    }
+                } catch (IOException e) {
+                    // A torn write from the crash, nothing after it was acknowledged as durable
+                    plugin.getMessageUtils().sendConsoleMessage("&cJournal segment " + file.getName() + " ends in a damaged record (" + e.getMessage() + "), ignoring the rest of it.");
+                    break;
+                }
+            }
+        }
+        return maxSequence;
+    }
+
+    public void start() throws IOException {
+        openSegment();
+        writer = new Thread(this::writeLoop, "SuperShop-Journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Buffers one record. Returns right away, the record reaches the disk with the next group sync.
+     *
+     * @return sequence number of the record
+     */
+    public long append(WriteCodec.Type type, WriteCodec.Payload payload) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            payload.write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to journal " + type + ": " + e.getMessage());
+            return -1;
+        }
+        byte[] body = bytes.toByteArray();
+
+        synchronized (this) {
+            long sequence = ++lastSequence;
+            DataOutputStream out = new DataOutputStream(pending);
+            try {
+                out.writeLong(sequence);
+                out.writeByte(type.ordinal());
+                out.writeInt(body.length);
+                out.write(body);
+                out.writeInt(checksum(sequence, type.ordinal(), body));
+            } catch (IOException e) {
+                // ByteArrayOutputStream does not throw
+                throw new UncheckedIOException(e);
+            }
+            pendingRecords++;
+            appendedRecords++;
+            return sequence;
+        }
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Records that everything up to the sequence is in the database (or its backlog).
+     * Segments that only hold covered records are deleted by the writer thread.
+     */
+    public void checkpoint(long sequence) {
+        if (sequence > checkpointSequence) {
+            checkpointSequence = sequence;
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            boolean stop;
+            synchronized (this) {
+                if (!closed) {
+                    try {
+                        wait(syncIntervalMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                stop = closed || Thread.currentThread().isInterrupted();
+            }
+
+            try {
+                syncPending();
+                applyCheckpoint();
+            } catch (IOException e) {
+                plugin.getMessageUtils().sendConsoleMessage("&cFailed to write the journal: " + e.getMessage());
+            }
+
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    private void syncPending() throws IOException {
+        byte[] bytes;
+        long upTo;
+        synchronized (this) {
+            if (pendingRecords == 0) {
+                return;
+            }
+            bytes = pending.toByteArray();
+            pending = new ByteArrayOutputStream();
+            pendingRecords = 0;
+            upTo = lastSequence;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+        segment.force(false);
+        segmentSize += bytes.length;
+        durableSequence = upTo;
+        syncs++;
+
+        if (segmentSize >= segmentBytes) {
+            openSegment();
+        }
+    }
+
+    private void applyCheckpoint() throws IOException {
+        long checkpoint = checkpointSequence;
+        if (checkpoint == writtenCheckpoint) {
+            return;
+        }
+
+        writeCheckpoint(checkpoint);
+        writtenCheckpoint = checkpoint;
+
+        // The open segment is only closed early once everything in it is covered
+        if (segmentSize > 0 && checkpoint >= durableSequence) {
+            openSegment();
+        }
+
+        // A segment is covered when the next one starts at or before the checkpoint + 1
+        Long current = segments.isEmpty() ? null : segments.lastKey();
+        while (!segments.isEmpty()) {
+            Long first = segments.firstKey();
+            Long next = segments.higherKey(first);
+            if (first.equals(current) || next == null || next - 1 > checkpoint) {
+                break;
+            }
+            Files.deleteIfExists(segments.remove(first).toPath());
+        }
+    }
+
+    private void openSegment() throws IOException {
+        if (segment != null) {
+            segment.close();
+        }
+        long firstSequence;
+        synchronized (this) {
+            firstSequence = lastSequence + 1;
+        }
+        // Records appended later may still land here, the name is a lower bound
+        File file = new File(directory, String.format("%s%016x%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        segment = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentSize = segment.size();
+        segments.put(firstSequence, file);
+    }
+
+    private long readCheckpoint() throws IOException {
+        if (!checkpointFile.exists()) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(checkpointFile))) {
+            return in.readLong();
+        } catch (EOFException e) {
+            return 0;
+        }
+    }
+
+    private void writeCheckpoint(long sequence) throws IOException {
+        File temp = new File(directory, "checkpoint.tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            new DataOutputStream(out).writeLong(sequence);
+            out.getChannel().force(false);
+        }
+        Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int checksum(long sequence, int type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(13).putLong(sequence).put((byte) type).putInt(payload.length).array());
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Syncs what is still buffered and stops the writer thread, called from onDisable.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (writer != null) {
+            try {
+                writer.join(10_000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (segment != null) {
+                segment.close();
+            }
+        } catch (IOException e) {
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to close the journal: " + e.getMessage());
+        }
+    }
+
+    public long getPendingRecords() {
+        return getLastSequence() - checkpointSequence;
+    }
+
+    public long getAppendedRecords() { return appendedRecords; }
+    public long getSyncs() { return syncs; }
+}
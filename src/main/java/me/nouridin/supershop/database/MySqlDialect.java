@@ -0,0 +1,92 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
+public class MySqlDialect extends SqlDialect {
+
+    @Override
+    public String getName() {
+        return "MySQL";
+    }
+
+    @Override
+    public String blobType() {
+        // Plain BLOB caps out at 64 KB on MySQL, a shulker box full of books does not fit
+        return "MEDIUMBLOB";
+    }
+
+    @Override
+    public String binaryKeyType() {
+        return "BINARY(16)";
+    }
+
+    @Override
+    public String autoIncrementKey() {
+        return "BIGINT AUTO_INCREMENT PRIMARY KEY";
+    }
+
+    @Override
+    public String upsert(String table, List<String> columns, String keyColumn) {
+        return "INSERT INTO " + table + " (" + columnList(columns) + ") VALUES (" + placeholders(columns.size()) + ")" +
+            " ON DUPLICATE KEY UPDATE " + assignments(columns, keyColumn, "%s = VALUES(%s)");
+    }
+
+    @Override
+    public String versionedUpsert(String table, List<String> columns, String keyColumn, String versionColumn) {
+        return "INSERT INTO " + table + " (" + columnList(columns) + ") VALUES (" + placeholders(columns.size()) + ")" +
+            " ON DUPLICATE KEY UPDATE " + assignments(without(columns, versionColumn), keyColumn, "%s = VALUES(%s)") +
+            ", " + versionColumn + " = " + versionColumn + " + 1";
+    }
+
+    @Override
+    public String insertIgnore(String table, List<String> columns) {
+        return "INSERT IGNORE INTO " + table + " (" + columnList(columns) + ") VALUES (" + placeholders(columns.size()) + ")";
+    }
+
+    @Override
+    public int streamingFetchSize() {
+        // Connector/J only streams with this magic value
+        return Integer.MIN_VALUE;
+    }
+
+    @Override
+    public boolean hasTransactionalDdl() {
+        return false;
+    }
+
+    @Override
+    public long measureStorageBytes(Connection connection, Collection<String> tables) throws SQLException {
+        String sql = "SELECT COALESCE(SUM(data_length + index_length), 0) FROM information_schema.tables " +
+            "WHERE table_schema = DATABASE() AND table_name IN (" + placeholders(tables.size()) + ")";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            int index = 1;
+            for (String table : tables) {
+                stmt.setString(index++, table);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+public class MySqlShopRepository extends SqlShopRepository {
+
+    private static final List<String> BACKUP_TABLES = Arrays.asList(
+        "schema_version", "shops", "shop_items", "player_locales", "first_login_tracking",
+        "revenue_ledger", "item_blobs", "shop_changes");
+
+    public MySqlShopRepository(supershop plugin) {
+        super(plugin, new MySqlDialect());
+    }
+
+    @Override
+    protected Connection openConnection() throws SQLException {
+        String host = plugin.getConfigManager().getDatabaseHost();
+        int port = plugin.getConfigManager().getDatabasePort();
+        String database = plugin.getConfigManager().getDatabaseName();
+        String username = plugin.getConfigManager().getDatabaseUsername();
+        String password = plugin.getConfigManager().getDatabasePassword();
+        
+        // No autoReconnect, the pool notices dead connections and replaces them
+        String url = String.format("jdbc:mysql://%s:%d/%s?useSSL=false&connectTimeout=%d&socketTimeout=%d", 
+            host, port, database,
+            plugin.getConfigManager().getDatabasePoolConnectionTimeoutMillis(),
+            plugin.getConfigManager().getDatabasePoolSocketTimeoutSeconds() * 1000);
+        
+        return DriverManager.getConnection(url, username, password);
+    }
+
+    /**
+     * Logical export of every table, see {@link LogicalExport}. Holds one pooled connection
+     * for the duration, the database thread keeps the others.
+     */
+    @Override
+    public boolean backup(File target, int stepSize) throws SQLException {
+        return withConnection((connection, statements) -> {
+            try {
+                new LogicalExport(connection, stepSize, dialect.streamingFetchSize()).write(target, BACKUP_TABLES);
+            } catch (IOException e) {
+                throw new SQLException("Failed to write backup " + target.getName(), e);
+            }
+            return true;
+        });
+    }
+}
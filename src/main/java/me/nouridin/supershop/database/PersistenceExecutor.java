@@ -0,0 +1,239 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+import org.bukkit.Bukkit;
+
+import java.sql.SQLException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Single database thread that owns every JDBC call made by the plugin.
+ * Callers submit work and get a {@link CompletableFuture} back, so the server
+ * thread never waits on a database round trip. Tasks run one at a time in
+ * submission order, which keeps the shared connection safe and means a save
+ * followed by a delete always reaches the database in that order.
+ * <p>
+ * Only the database thread ever runs a task. Once the queue capacity is used up,
+ * other threads wait a bounded time for room before queueing anyway. The server
+ * thread never waits, it queues past the capacity and the overflow is reported.
+ */
+public class PersistenceExecutor {
+
+    @FunctionalInterface
+    public interface DatabaseTask<T> {
+        T run() throws SQLException;
+    }
+
+    private static final long CAPACITY_WAIT_SECONDS = 5;
+
+    private final supershop plugin;
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    // One permit per queued task, released when the task has run
+    private final Semaphore capacity;
+    private final AtomicBoolean overflowing = new AtomicBoolean();
+    private volatile Thread workerThread;
+
+    // Metrics
+    private final AtomicLong completedTasks = new AtomicLong();
+    private final AtomicLong failedTasks = new AtomicLong();
+    private final AtomicLong overflowedTasks = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public PersistenceExecutor(supershop plugin, int queueCapacity) {
+        this.plugin = plugin;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.capacity = new Semaphore(this.queueCapacity);
+        // The queue itself is unbounded, the capacity is enforced by the semaphore so that
+        // a full queue never makes a caller run the task on its own thread
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "SuperShop-Persistence");
+                thread.setDaemon(true);
+                workerThread = thread;
+                return thread;
+            });
+    }
+
+    /**
+     * Queues the task. A failed task is logged here once, callers only decide what happens next.
+     */
+    public <T> CompletableFuture<T> submit(String taskName, DatabaseTask<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        // Nested submissions from the database thread would deadlock on join(), run them inline
+        if (isPersistenceThread()) {
+            run(taskName, task, future, System.nanoTime(), false);
+            return future;
+        }
+
+        boolean permit = acquireCapacity(taskName);
+        long submittedAt = System.nanoTime();
+        try {
+            executor.execute(() -> run(taskName, task, future, submittedAt, permit));
+        } catch (RejectedExecutionException e) {
+            // Shut down, nothing runs database tasks anymore
+            if (permit) {
+                capacity.release();
+            }
+            failedTasks.incrementAndGet();
+            plugin.getMessageUtils().sendConsoleMessage("&cDatabase task '" + taskName + "' was rejected, the database is closed.");
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private <T> void run(String taskName, DatabaseTask<T> task, CompletableFuture<T> future, long submittedAt, boolean permit) {
+        try {
+            future.complete(task.run());
+        } catch (Throwable t) {
+            failedTasks.incrementAndGet();
+            plugin.getMessageUtils().sendConsoleMessage("&cDatabase task '" + taskName + "' failed: " + t.getMessage());
+            future.completeExceptionally(t);
+        } finally {
+            if (permit) {
+                capacity.release();
+            }
+            recordLatency(System.nanoTime() - submittedAt);
+        }
+    }
+
+    /**
+     * Takes a slot in the queue. Threads other than the server thread wait a bounded time
+     * for one, the server thread never waits.
+     *
+     * @return false if the task is queued past the capacity
+     */
+    private boolean acquireCapacity(String taskName) {
+        if (capacity.tryAcquire()) {
+            overflowing.set(false);
+            return true;
+        }
+
+        if (!Bukkit.isPrimaryThread()) {
+            try {
+                if (capacity.tryAcquire(CAPACITY_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        overflowedTasks.incrementAndGet();
+        if (overflowing.compareAndSet(false, true)) {
+            plugin.getMessageUtils().sendConsoleMessage("&cDatabase queue is full (" + queueCapacity +
+                " tasks), queueing '" + taskName + "' past the capacity. The database is falling behind.");
+        }
+        return false;
+    }
+
+    public CompletableFuture<Void> execute(String taskName, DatabaseTask<?> task) {
+        return submit(taskName, task).thenApply(result -> null);
+    }
+
+    /**
+     * Runs the callback on the server thread once the future completes successfully.
+     * A failure was already logged by the task, use the overload to act on it.
+     */
+    public <T> void thenSync(CompletableFuture<T> future, Consumer<T> callback) {
+        thenSync(future, callback, error -> {});
+    }
+
+    /**
+     * Runs the callback on the server thread once the future completes successfully,
+     * or {@code onFailure} with the cause if it failed.
+     */
+    public <T> void thenSync(CompletableFuture<T> future, Consumer<T> callback, Consumer<Throwable> onFailure) {
+        future.whenComplete((result, error) -> {
+            if (plugin.isEnabled()) {
+                plugin.getServer().getScheduler().runTask(plugin, () -> {
+                    if (error == null) {
+                        callback.accept(result);
+                    } else {
+                        onFailure.accept(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                    }
+                });
+            }
+        });
+    }
+
+    private void recordLatency(long latencyNanos) {
+        completedTasks.incrementAndGet();
+        totalLatencyNanos.addAndGet(latencyNanos);
+        maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    public boolean isPersistenceThread() {
+        return Thread.currentThread() == workerThread;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks.get();
+    }
+
+    public long getFailedTasks() {
+        return failedTasks.get();
+    }
+
+    /**
+     * Tasks the server thread queued past the capacity instead of waiting.
+     */
+    public long getOverflowedTasks() {
+        return overflowedTasks.get();
+    }
+
+    public double getAverageLatencyMillis() {
+        long completed = completedTasks.get();
+        return completed == 0 ? 0.0 : totalLatencyNanos.get() / (double) completed / 1_000_000.0;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Stops accepting new work and waits for everything already queued to reach the database.
+     */
+    public void shutdown(long timeoutSeconds) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+                plugin.getMessageUtils().sendConsoleMessage("&cTimed out waiting for " + getQueueDepth() + " pending database tasks.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Wraps the configured repository with a {@link CircuitBreaker} and a {@link WriteBacklog}.
+ * While the database is unreachable, reads fail fast and writes go to the backlog file
+ * instead of failing. {@link #recover()} replays the backlog once the database answers again.
+ * Writes keep their order: as long as the backlog is not empty, new writes are appended to it.
+ */
+public class ResilientShopRepository implements ShopRepository {
+
+    @FunctionalInterface
+    private interface Write {
+        void apply(ShopRepository repository) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface Read<T> {
+        T apply(ShopRepository repository) throws SQLException;
+    }
+
+    private final supershop plugin;
+    private final ShopRepository delegate;
+    private final CircuitBreaker breaker;
+    private final WriteBacklog backlog;
+    private boolean opened;
+
+    public ResilientShopRepository(supershop plugin, ShopRepository delegate) {
+        this.plugin = plugin;
+        this.delegate = delegate;
+        this.breaker = new CircuitBreaker(plugin.getConfigManager().getDatabaseBreakerFailureThreshold(),
+            plugin.getConfigManager().getDatabaseBreakerRetrySeconds() * 1000L);
+        this.backlog = new WriteBacklog(plugin, new File(plugin.getDataFolder(), "write-backlog.dat"));
+    }
+
+    public ShopRepository getDelegate() {
+        return delegate;
+    }
+
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    public WriteBacklog getBacklog() {
+        return backlog;
+    }
+
+    @Override
+    public void open() throws SQLException {
+        try {
+            backlog.load();
+        } catch (IOException e) {
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to read the write backlog: " + e.getMessage());
+        }
+
+        try {
+            delegate.open();
+            opened = true;
+        } catch (SQLException e) {
+            breaker.recordFailure(e);
+            plugin.getMessageUtils().sendConsoleMessage("&cDatabase is unavailable, writes are kept in the backlog until it is back.");
+            throw e;
+        }
+
+        // Writes from the last outage come before anything is loaded
+        if (!backlog.isEmpty()) {
+            replayBacklog();
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void validate() throws SQLException {
+        delegate.validate();
+    }
+
+    /**
+     * Runs on the database thread from the periodic health check. Reopens the database if it was
+     * never reached, validates it and replays the backlog.
+     */
+    public void recover() {
+        if (breaker.getState() == CircuitBreaker.State.CLOSED && backlog.isEmpty()) {
+            return;
+        }
+        if (!breaker.allowRequest()) {
+            return;
+        }
+
+        try {
+            if (!opened) {
+                delegate.open();
+                opened = true;
+            } else {
+                delegate.validate();
+            }
+        } catch (SQLException e) {
+            breaker.recordFailure(e);
+            return;
+        }
+
+        if (replayBacklog()) {
+            plugin.getMessageUtils().sendConsoleMessage("&aDatabase is reachable again.");
+        }
+    }
+
+    /**
+     * @return true if the backlog is empty afterwards
+     */
+    private boolean replayBacklog() {
+        int pending = backlog.size();
+        try {
+            int applied = backlog.replay((type, in) -> WriteCodec.apply(type, in, delegate));
+            breaker.recordSuccess();
+            plugin.getMessageUtils().sendConsoleMessage("&aReplayed " + applied + "/" + pending + " writes from the backlog.");
+            return true;
+        } catch (SQLException e) {
+            if (ConnectionPool.isConnectionFailure(e)) {
+                breaker.recordFailure(e);
+            } else {
+                plugin.getMessageUtils().sendConsoleMessage("&cFailed to replay the write backlog: " + e.getMessage());
+            }
+        } catch (IOException e) {
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to update the write backlog: " + e.getMessage());
+        }
+        return false;
+    }
+
+    private void write(WriteCodec.Type type, WriteCodec.Payload payload, Write write) throws SQLException {
+        if (backlog.isEmpty() && breaker.allowRequest()) {
+            try {
+                write.apply(delegate);
+                breaker.recordSuccess();
+                return;
+            } catch (SQLException e) {
+                if (!ConnectionPool.isConnectionFailure(e)) {
+                    throw e;
+                }
+                if (breaker.recordFailure(e)) {
+                    plugin.getMessageUtils().sendConsoleMessage("&cLost the database connection, writes are kept in the backlog until it is back: " + e.getMessage());
+                }
+            }
+        }
+
+        try {
+            backlog.append(type, payload);
+        } catch (IOException e) {
+            throw new SQLException("Database is unavailable and the write backlog could not be written", e);
+        }
+    }
+
+    /**
+     * Conditional writes need their answer right away, so they are never parked in the backlog.
+     * They also must not overtake the writes that already wait there.
+     */
+    private boolean compareAndWrite(Read<Boolean> write) throws SQLException {
+        if (!backlog.isEmpty()) {
+            throw new SQLTransientConnectionException("Database is unavailable");
+        }
+        return read(write);
+    }
+
+    private <T> T read(Read<T> read) throws SQLException {
+        if (!breaker.allowRequest()) {
+            throw new SQLTransientConnectionException("Database is unavailable");
+        }
+        try {
+            T result = read.apply(delegate);
+            breaker.recordSuccess();
+            return result;
+        } catch (SQLException e) {
+            if (ConnectionPool.isConnectionFailure(e)) {
+                breaker.recordFailure(e);
+            }
+            throw e;
+        }
+    }
+
+    // Writes
+
+    @Override
+    public void saveShop(ShopRow row) throws SQLException {
+        write(WriteCodec.Type.SAVE_SHOP_FOLDING, WriteCodec.saveShop(row), repository -> repository.saveShop(row));
+    }
+
+    @Override
+    public void saveShopItem(ShopItemRow row) throws SQLException {
+        write(WriteCodec.Type.SAVE_SHOP_ITEM, WriteCodec.saveShopItem(row), repository -> repository.saveShopItem(row));
+    }
+
+    @Override
+    public void saveBatch(List<ShopRow> shops, List<ShopItemRow> items) throws SQLException {
+        write(WriteCodec.Type.SAVE_BATCH_FOLDING, WriteCodec.saveBatch(shops, items), repository -> repository.saveBatch(shops, items));
+    }
+
+    @Override
+    public boolean saveShopIfVersion(ShopRow row, long expectedVersion) throws SQLException {
+        return compareAndWrite(repository -> repository.saveShopIfVersion(row, expectedVersion));
+    }
+
+    @Override
+    public boolean saveShopItemIfVersion(ShopItemRow row, long expectedVersion) throws SQLException {
+        return compareAndWrite(repository -> repository.saveShopItemIfVersion(row, expectedVersion));
+    }
+
+    @Override
+    public void deleteShop(UUID shopId) throws SQLException {
+        write(WriteCodec.Type.DELETE_SHOP, WriteCodec.deleteShop(shopId), repository -> repository.deleteShop(shopId));
+    }
+
+    @Override
+    public void deleteShopItem(UUID shopId, UUID itemId) throws SQLException {
+        write(WriteCodec.Type.DELETE_SHOP_ITEM, WriteCodec.deleteShopItem(shopId, itemId), repository -> repository.deleteShopItem(shopId, itemId));
+    }
+
+    @Override
+    public void appendRevenue(UUID shopId, List<RevenueEntry> entries, long createdAt) throws SQLException {
+        write(WriteCodec.Type.APPEND_REVENUE, WriteCodec.appendRevenue(shopId, entries, createdAt), repository -> repository.appendRevenue(shopId, entries, createdAt));
+    }
+
+    @Override
+    public void savePlayerLocale(UUID playerId, String locale) throws SQLException {
+        write(WriteCodec.Type.SAVE_PLAYER_LOCALE, WriteCodec.savePlayerLocale(playerId, locale), repository -> repository.savePlayerLocale(playerId, locale));
+    }
+
+    @Override
+    public void recordFirstLoginMessage(UUID playerId) throws SQLException {
+        write(WriteCodec.Type.RECORD_FIRST_LOGIN, WriteCodec.recordFirstLogin(playerId),
+            repository -> repository.recordFirstLoginMessage(playerId));
+    }
+
+    // Reads
+
+    @Override
+    public void readShopSummaries(Consumer<ShopSummary> summaries) throws SQLException {
+        read(repository -> {
+            repository.readShopSummaries(summaries);
+            return null;
+        });
+    }
+
+    @Override
+    public void readShops(Collection<UUID> shopIds, Consumer<ShopRow> shops, Consumer<ShopItemRow> items) throws SQLException {
+        read(repository -> {
+            repository.readShops(shopIds, shops, items);
+            return null;
+        });
+    }
+
+    @Override
+    public Map<UUID, List<RevenueEntry>> loadPendingRevenue(Collection<UUID> shopIds) throws SQLException {
+        return read(repository -> repository.loadPendingRevenue(shopIds));
+    }
+
+    @Override
+    public int purgeFoldedRevenue(long createdBefore) throws SQLException {
+        return read(repository -> repository.purgeFoldedRevenue(createdBefore));
+    }
+
+    @Override
+    public int purgeRemovedShops(long removedBefore, int limit) throws SQLException {
+        return read(repository -> repository.purgeRemovedShops(removedBefore, limit));
+    }
+
+    @Override
+    public int purgeDelistedItems(long delistedBefore, int limit) throws SQLException {
+        return read(repository -> repository.purgeDelistedItems(delistedBefore, limit));
+    }
+
+    @Override
+    public int purgeUnusedBlobs(int limit) throws SQLException {
+        return read(repository -> repository.purgeUnusedBlobs(limit));
+    }
+
+    @Override
+    public long reclaimSpace() throws SQLException {
+        return read(ShopRepository::reclaimSpace);
+    }
+
+    /**
+     * Goes straight to the delegate, the breaker is only driven from the database thread.
+     */
+    @Override
+    public boolean backup(File target, int stepSize) throws SQLException {
+        if (breaker.getState() == CircuitBreaker.State.OPEN) {
+            throw new SQLTransientConnectionException("Database is unavailable");
+        }
+        return delegate.backup(target, stepSize);
+    }
+
+    @Override
+    public long getLatestChange() throws SQLException {
+        return read(ShopRepository::getLatestChange);
+    }
+
+    @Override
+    public List<ShopChange> readChanges(long afterSequence, int limit) throws SQLException {
+        return read(repository -> repository.readChanges(afterSequence, limit));
+    }
+
+    @Override
+    public int purgeChanges(long createdBefore) throws SQLException {
+        return read(repository -> repository.purgeChanges(createdBefore));
+    }
+
+    @Override
+    public Map<UUID, String> loadPlayerLocales() throws SQLException {
+        return read(ShopRepository::loadPlayerLocales);
+    }
+
+    @Override
+    public boolean hasReceivedFirstLoginMessage(UUID playerId) throws SQLException {
+        return read(repository -> repository.hasReceivedFirstLoginMessage(playerId));
+    }
+}
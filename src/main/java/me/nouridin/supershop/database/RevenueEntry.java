@@ -0,0 +1,44 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.util.UUID;
+
+/**
+ * One sale's worth of a payment item in the revenue ledger. The prototype is the
+ * encoded item with an amount of 1, the fingerprint is the hash of those bytes.
+ * The entry id is chosen when the sale happens, so writing the same entry twice is a no-op.
+ */
+public final class RevenueEntry {
+
+    private final UUID entryId;
+    private final String fingerprint;
+    private final byte[] prototype;
+    private final int amount;
+
+    public RevenueEntry(UUID entryId, String fingerprint, byte[] prototype, int amount) {
+        this.entryId = entryId;
+        this.fingerprint = fingerprint;
+        this.prototype = prototype;
+        this.amount = amount;
+    }
+
+    public UUID getEntryId() { return entryId; }
+    public String getFingerprint() { return fingerprint; }
+    public byte[] getPrototype() { return prototype; }
+    public int getAmount() { return amount; }
+}
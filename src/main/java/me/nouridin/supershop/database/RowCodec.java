@@ -0,0 +1,153 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Binary form of the row snapshots, for files that hold writes the database has not seen yet.
+ */
+public final class RowCodec {
+
+    private RowCodec() {
+    }
+
+    public static void writeShopRow(DataOutput out, ShopRow row) throws IOException {
+        writeUuid(out, row.getShopId());
+        writeUuid(out, row.getOwnerId());
+        out.writeUTF(row.getOwnerName());
+        out.writeUTF(row.getWorldName());
+        out.writeInt(row.getX());
+        out.writeInt(row.getY());
+        out.writeInt(row.getZ());
+        out.writeBoolean(row.isActive());
+        out.writeLong(row.getCreatedAt());
+        out.writeLong(row.getLastUpdated());
+        writeString(out, row.getRevenueData());
+        writeBytes(out, row.getRevenueBlob());
+    }
+
+    public static ShopRow readShopRow(DataInput in) throws IOException {
+        return new ShopRow(readUuid(in), readUuid(in), in.readUTF(), in.readUTF(),
+            in.readInt(), in.readInt(), in.readInt(), in.readBoolean(), in.readLong(), in.readLong(),
+            readString(in), readBytes(in));
+    }
+
+    /**
+     * Written after a shop row by the record types that carry the ledger entries it folds.
+     */
+    public static void writeFoldedRevenue(DataOutput out, ShopRow row) throws IOException {
+        List<UUID> folded = row.getFoldedRevenue();
+        if (folded == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(folded.size());
+        for (UUID entryId : folded) {
+            writeUuid(out, entryId);
+        }
+    }
+
+    public static ShopRow readFoldedRevenue(DataInput in, ShopRow row) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return row;
+        }
+        List<UUID> folded = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            folded.add(readUuid(in));
+        }
+        return row.withFoldedRevenue(folded);
+    }
+
+    public static void writeShopItemRow(DataOutput out, ShopItemRow row) throws IOException {
+        writeUuid(out, row.getItemId());
+        writeUuid(out, row.getShopId());
+        writeString(out, row.getItemData());
+        out.writeInt(row.getQuantity());
+        writeString(out, row.getDescription());
+        writeString(out, row.getPriceData());
+        out.writeBoolean(row.isAvailable());
+        writeBytes(out, row.getItemBlob());
+        writeBytes(out, row.getPriceBlob());
+        writeString(out, row.getMaterial());
+        out.writeInt(row.getItemAmount());
+        writeString(out, row.getDisplayName());
+    }
+
+    public static ShopItemRow readShopItemRow(DataInput in) throws IOException {
+        return new ShopItemRow(readUuid(in), readUuid(in), readString(in), in.readInt(), readString(in),
+            readString(in), in.readBoolean(), readBytes(in), readBytes(in), readString(in), in.readInt(),
+            readString(in));
+    }
+
+    public static void writeRevenueEntry(DataOutput out, RevenueEntry entry) throws IOException {
+        writeUuid(out, entry.getEntryId());
+        out.writeUTF(entry.getFingerprint());
+        writeBytes(out, entry.getPrototype());
+        out.writeInt(entry.getAmount());
+    }
+
+    public static RevenueEntry readRevenueEntry(DataInput in) throws IOException {
+        return new RevenueEntry(readUuid(in), in.readUTF(), readBytes(in), in.readInt());
+    }
+
+    public static void writeUuid(DataOutput out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    public static UUID readUuid(DataInput in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    // Strings may be longer than the 64 KB writeUTF allows, descriptions and legacy Base64 data can be
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeBytes(DataOutput out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    public static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.models.Shop;
+import me.nouridin.supershop.models.ShopItem;
+import me.nouridin.supershop.supershop;
+import me.nouridin.supershop.util.ItemCodec;
+import me.nouridin.supershop.util.ItemSerializer;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Turns raw rows into model objects. The only state is the thread safe {@link BlobInterner},
+ * so decoder threads can share one instance.
+ */
+public class RowDecoder {
+
+    private final supershop plugin;
+    private final BlobInterner interner = new BlobInterner();
+
+    public RowDecoder(supershop plugin) {
+        this.plugin = plugin;
+    }
+
+    public BlobInterner getInterner() {
+        return interner;
+    }
+
+    public Shop decodeShop(ShopRow row, World world) {
+        if (world == null) {
+            plugin.getMessageUtils().sendConsoleMessage("&cWorld '" + row.getWorldName() + "' not found for shop " + row.getShopId());
+            return null;
+        }
+
+        Location location = new Location(world, row.getX(), row.getY(), row.getZ());
+        Shop shop = new Shop(row.getShopId(), row.getOwnerId(), row.getOwnerName(), location);
+        shop.setActive(row.isActive());
+        shop.setCreatedAt(row.getCreatedAt());
+        shop.setLastUpdated(row.getLastUpdated());
+        shop.setVersion(row.getVersion());
+
+        // Load revenue data, rows that were not migrated yet still use the old format
+        String revenueData = row.getRevenueData();
+        if (row.getRevenueBlob() != null) {
+            try {
+                shop.setRevenue(ItemCodec.decodeList(row.getRevenueBlob()));
+            } catch (IOException e) {
+                plugin.getMessageUtils().sendConsoleMessage("&cFailed to deserialize revenue for shop " + row.getShopId() + ": " + e.getMessage());
+            }
+        } else if (revenueData != null && !revenueData.isEmpty()) {
+            try {
+                List<ItemStack> revenue = ItemSerializer.deserializeItemList(revenueData);
+                shop.setRevenue(revenue);
+            } catch (IOException | ClassNotFoundException e) {
+                plugin.getMessageUtils().sendConsoleMessage("&cFailed to deserialize revenue for shop " + row.getShopId() + ": " + e.getMessage());
+            }
+        }
+
+        return shop;
+    }
+
+    public ShopItem decodeShopItem(ShopItemRow row) {
+        List<ItemStack> priceItems = null;
+        try {
+            priceItems = row.getPriceBlob() != null ?
+                interner.internPrices(row.getPriceBlob()) :
+                ItemSerializer.deserializeItemList(row.getPriceData());
+        } catch (IOException | ClassNotFoundException e) {
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to deserialize price items for shop item " + row.getItemId() + ": " + e.getMessage());
+        }
+
+        // Rows with the cheap columns filled in keep their item encoded until someone looks at it
+        Material material = row.getMaterial() == null ? null : Material.getMaterial(row.getMaterial());
+        if (row.getItemBlob() != null && row.getItemBlob().length > 0 && material != null && priceItems != null) {
+            ShopItem item = new ShopItem(row.getItemId(), interner.internItem(row.getItemBlob()), material, row.getItemAmount(),
+                row.getDisplayName(), row.getQuantity(), row.getDescription(), priceItems);
+            item.setAvailable(row.isAvailable());
+            item.setVersion(row.getVersion());
+            return item;
+        }
+
+        ItemStack itemStack = null;
+        try {
+            itemStack = row.getItemBlob() != null ?
+                ItemCodec.decode(row.getItemBlob()) :
+                ItemSerializer.deserialize(row.getItemData());
+        } catch (IOException | ClassNotFoundException e) {
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to deserialize item stack for shop item " + row.getItemId() + ": " + e.getMessage());
+        }
+
+        if (itemStack == null || priceItems == null) {
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to deserialize item data for item " + row.getItemId());
+            return null;
+        }
+
+        ShopItem item = new ShopItem(row.getItemId(), itemStack, row.getQuantity(), row.getDescription(), priceItems);
+        item.setAvailable(row.isAvailable());
+        item.setVersion(row.getVersion());
+
+        return item;
+    }
+}
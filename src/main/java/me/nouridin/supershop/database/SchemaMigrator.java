@@ -0,0 +1,162 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Applies numbered schema migrations in order and records each one in the schema_version table.
+ * <p>
+ * A migration is recorded after it ran, so one interrupted halfway runs again on the next
+ * start. Steps must therefore be safe to repeat, which is what {@link #addColumn} and
+ * {@link #createIndex} are for. They also cover databases where some columns were added
+ * before versions were tracked.
+ */
+public class SchemaMigrator {
+
+    @FunctionalInterface
+    public interface Step {
+        void apply(SchemaMigrator migrator) throws SQLException;
+    }
+
+    private static final class Migration {
+        private final int version;
+        private final String description;
+        private final Step step;
+
+        private Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    private final supershop plugin;
+    private final Connection connection;
+    private final List<Migration> migrations = new ArrayList<>();
+
+    public SchemaMigrator(supershop plugin, Connection connection) {
+        this.plugin = plugin;
+        this.connection = connection;
+    }
+
+    public SchemaMigrator add(int version, String description, Step step) {
+        migrations.add(new Migration(version, description, step));
+        return this;
+    }
+
+    /**
+     * @return the schema version after all pending migrations were applied
+     */
+    public int migrate() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                "version INTEGER PRIMARY KEY," +
+                "description VARCHAR(255) NOT NULL," +
+                "applied_at BIGINT NOT NULL" +
+                ")");
+        }
+
+        int current = getCurrentVersion();
+        migrations.sort(Comparator.comparingInt(migration -> migration.version));
+
+        for (Migration migration : migrations) {
+            if (migration.version <= current) {
+                continue;
+            }
+
+            long start = System.currentTimeMillis();
+            migration.step.apply(this);
+
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, ?)")) {
+                stmt.setInt(1, migration.version);
+                stmt.setString(2, migration.description);
+                stmt.setLong(3, System.currentTimeMillis());
+                stmt.executeUpdate();
+            }
+
+            current = migration.version;
+            plugin.getMessageUtils().sendConsoleMessage(String.format("&aApplied database migration %d (%s) in %d ms.",
+                migration.version, migration.description, System.currentTimeMillis() - start));
+        }
+
+        return current;
+    }
+
+    public int getCurrentVersion() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public void execute(String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    public boolean columnExists(String table, String column) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet rs = metaData.getColumns(connection.getCatalog(), null, table, null)) {
+            while (rs.next()) {
+                if (rs.getString("COLUMN_NAME").equalsIgnoreCase(column)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public boolean indexExists(String table, String index) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), null, table, false, true)) {
+            while (rs.next()) {
+                String name = rs.getString("INDEX_NAME");
+                if (name != null && name.equalsIgnoreCase(index)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public void addColumn(String table, String column, String definition) throws SQLException {
+        if (!columnExists(table, column)) {
+            execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
+    /**
+     * MySQL has no CREATE INDEX IF NOT EXISTS, so the check goes through the metadata on both backends.
+     */
+    public void createIndex(String index, String table, String columns) throws SQLException {
+        if (!indexExists(table, index)) {
+            execute("CREATE INDEX " + index + " ON " + table + " (" + columns + ")");
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.util.UUID;
+
+/**
+ * One entry of the shop_changes feed. Entries only say which shop changed, the summary is
+ * the shop as it is in the database when the feed is read, or null once it was removed.
+ */
+public final class ShopChange {
+
+    private final long sequence;
+    private final UUID shopId;
+    private final boolean local;
+    private final long createdAt;
+    private final ShopSummary summary;
+
+    public ShopChange(long sequence, UUID shopId, boolean local, long createdAt, ShopSummary summary) {
+        this.sequence = sequence;
+        this.shopId = shopId;
+        this.local = local;
+        this.createdAt = createdAt;
+        this.summary = summary;
+    }
+
+    public long getSequence() { return sequence; }
+    public UUID getShopId() { return shopId; }
+
+    /**
+     * @return true if this server wrote the change itself
+     */
+    public boolean isLocal() { return local; }
+
+    public long getCreatedAt() { return createdAt; }
+    public ShopSummary getSummary() { return summary; }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.util.UUID;
+
+/**
+ * Immutable copy of one row of the shop_items table, see {@link ShopRow}.
+ */
+public final class ShopItemRow {
+
+    private final UUID itemId;
+    private final UUID shopId;
+    private final String itemData;
+    private final int quantity;
+    private final String description;
+    private final String priceData;
+    private final boolean available;
+    private final byte[] itemBlob;
+    private final byte[] priceBlob;
+    private final String material;
+    private final int itemAmount;
+    private final String displayName;
+    private final long version;
+
+    /**
+     * The String columns hold the legacy Base64 format and are only set for rows that were
+     * never migrated, the blobs are null in that case.
+     */
+    public ShopItemRow(UUID itemId, UUID shopId, String itemData, int quantity, String description,
+                       String priceData, boolean available, byte[] itemBlob, byte[] priceBlob,
+                       String material, int itemAmount, String displayName) {
+        this(itemId, shopId, itemData, quantity, description, priceData, available, itemBlob, priceBlob,
+            material, itemAmount, displayName, 0);
+    }
+
+    /**
+     * @param version version of the row once it is written, or as it was read
+     */
+    public ShopItemRow(UUID itemId, UUID shopId, String itemData, int quantity, String description,
+                       String priceData, boolean available, byte[] itemBlob, byte[] priceBlob,
+                       String material, int itemAmount, String displayName, long version) {
+        this.itemId = itemId;
+        this.shopId = shopId;
+        this.itemData = itemData;
+        this.quantity = quantity;
+        this.description = description;
+        this.priceData = priceData;
+        this.available = available;
+        this.itemBlob = itemBlob;
+        this.priceBlob = priceBlob;
+        this.material = material;
+        this.itemAmount = itemAmount;
+        this.displayName = displayName;
+        this.version = version;
+    }
+
+    public UUID getItemId() { return itemId; }
+    public UUID getShopId() { return shopId; }
+    public String getItemData() { return itemData; }
+    public int getQuantity() { return quantity; }
+    public String getDescription() { return description; }
+    public String getPriceData() { return priceData; }
+    public boolean isAvailable() { return available; }
+    public byte[] getItemBlob() { return itemBlob; }
+    public byte[] getPriceBlob() { return priceBlob; }
+    public String getMaterial() { return material; }
+    public int getItemAmount() { return itemAmount; }
+    public String getDisplayName() { return displayName; }
+    public long getVersion() { return version; }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.models.Shop;
+import me.nouridin.supershop.models.ShopItem;
+import me.nouridin.supershop.supershop;
+import org.bukkit.World;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Startup loader that splits the work into stages:
+ * <ol>
+ *     <li>read - the database thread streams raw rows into a bounded work queue</li>
+ *     <li>decode - a pool of workers deserializes rows into shops and items</li>
+ *     <li>assemble - the calling thread attaches items to their shops in table order</li>
+ * </ol>
+ * The caller publishes the result to the shop indexes in one step and reports the timings.
+ */
+public class ShopLoadPipeline {
+
+    /**
+     * Streams raw rows from the database. Runs on the database thread.
+     */
+    @FunctionalInterface
+    public interface RowSource {
+        void read(Consumer<ShopRow> shops, Consumer<ShopItemRow> items) throws SQLException;
+    }
+
+    private static final Object END_OF_ROWS = new Object();
+    private static final long ENQUEUE_CHECK_MILLIS = 1000L;
+
+    private final supershop plugin;
+    private final PersistenceExecutor persistence;
+    private final RowDecoder decoder;
+    private final int decoderThreads;
+
+    public ShopLoadPipeline(supershop plugin, PersistenceExecutor persistence, RowDecoder decoder, int decoderThreads) {
+        this.plugin = plugin;
+        this.persistence = persistence;
+        this.decoder = decoder;
+        this.decoderThreads = Math.max(1, decoderThreads);
+    }
+
+    private static final class Sequenced<T> {
+        private final long sequence;
+        private final T row;
+
+        private Sequenced(long sequence, T row) {
+            this.sequence = sequence;
+            this.row = row;
+        }
+    }
+
+    private static final class DecodedItem {
+        private final long sequence;
+        private final UUID shopId;
+        private final ShopItem item;
+
+        private DecodedItem(long sequence, UUID shopId, ShopItem item) {
+            this.sequence = sequence;
+            this.shopId = shopId;
+            this.item = item;
+        }
+    }
+
+    public Result run(RowSource source) {
+        long start = System.nanoTime();
+
+        // Worlds are resolved up front on the calling thread, decoders only read this map
+        Map<String, World> worlds = new HashMap<>();
+        for (World world : plugin.getServer().getWorlds()) {
+            worlds.put(world.getName(), world);
+        }
+
+        BlockingQueue<Object> workQueue = new ArrayBlockingQueue<>(4096);
+        ConcurrentLinkedQueue<Sequenced<Shop>> decodedShops = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<DecodedItem> decodedItems = new ConcurrentLinkedQueue<>();
+        AtomicInteger shopRows = new AtomicInteger();
+        AtomicInteger itemRows = new AtomicInteger();
+
+        // Decode stage
+        ExecutorService decoders = Executors.newFixedThreadPool(decoderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "SuperShop-Decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < decoderThreads; i++) {
+            decoders.execute(() -> decodeLoop(workQueue, worlds, decodedShops, decodedItems));
+        }
+        decoders.shutdown();
+
+        // Read stage
+        long[] sequence = {0};
+        CompletableFuture<Long> reader = persistence.submit("load shops", () -> {
+            long readStart = System.nanoTime();
+            source.read(
+                row -> {
+                    shopRows.incrementAndGet();
+                    enqueue(workQueue, decoders, new Sequenced<>(sequence[0]++, row));
+                },
+                row -> {
+                    itemRows.incrementAndGet();
+                    enqueue(workQueue, decoders, new Sequenced<>(sequence[0]++, row));
+                });
+            return System.nanoTime() - readStart;
+        });
+        // However the read ends, also when the task was rejected and never ran
+        reader.whenComplete((readTime, error) -> {
+            for (int i = 0; i < decoderThreads; i++) {
+                enqueue(workQueue, decoders, END_OF_ROWS);
+            }
+        });
+
+        long readNanos;
+        try {
+            readNanos = reader.join();
+        } catch (CompletionException e) {
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to read shops: " + e.getCause().getMessage());
+            readNanos = 0;
+        }
+
+        try {
+            decoders.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            decoders.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        long decodeNanos = System.nanoTime() - start;
+
+        // Assemble stage, in table order so items keep their position in the shop
+        long assembleStart = System.nanoTime();
+        List<Sequenced<Shop>> sortedShops = new ArrayList<>(decodedShops);
+        sortedShops.sort(Comparator.comparingLong(decoded -> decoded.sequence));
+        Map<UUID, Shop> shops = new LinkedHashMap<>();
+        for (Sequenced<Shop> decoded : sortedShops) {
+            shops.put(decoded.row.getShopId(), decoded.row);
+        }
+
+        List<DecodedItem> sortedItems = new ArrayList<>(decodedItems);
+        sortedItems.sort(Comparator.comparingLong(decoded -> decoded.sequence));
+        int itemCount = 0;
+        for (DecodedItem decoded : sortedItems) {
+            Shop shop = shops.get(decoded.shopId);
+            if (shop != null) {
+                shop.addItem(decoded.item);
+                itemCount++;
+            }
+        }
+        long assembleNanos = System.nanoTime() - assembleStart;
+
+        return new Result(new ArrayList<>(shops.values()), itemCount, shopRows.get(), itemRows.get(),
+            decoderThreads, readNanos, decodeNanos, assembleNanos);
+    }
+
+    private void decodeLoop(BlockingQueue<Object> workQueue, Map<String, World> worlds,
+                            Queue<Sequenced<Shop>> decodedShops, Queue<DecodedItem> decodedItems) {
+        try {
+            while (true) {
+                Object work = workQueue.take();
+                if (work == END_OF_ROWS) {
+                    return;
+                }
+
+                Sequenced<?> sequenced = (Sequenced<?>) work;
+                try {
+                    decode(sequenced, worlds, decodedShops, decodedItems);
+                } catch (Throwable t) {
+                    // One bad row must not stop a decoder, the reader waits for them once the queue is full
+                    plugin.getMessageUtils().sendConsoleMessage("&cFailed to decode row: " + t);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void decode(Sequenced<?> sequenced, Map<String, World> worlds,
+                        Queue<Sequenced<Shop>> decodedShops, Queue<DecodedItem> decodedItems) {
+        if (sequenced.row instanceof ShopRow) {
+            ShopRow row = (ShopRow) sequenced.row;
+            Shop shop = decoder.decodeShop(row, worlds.get(row.getWorldName()));
+            if (shop != null) {
+                decodedShops.add(new Sequenced<>(sequenced.sequence, shop));
+            }
+        } else {
+            ShopItemRow row = (ShopItemRow) sequenced.row;
+            ShopItem item = decoder.decodeShopItem(row);
+            if (item != null && item.getQuantity() > 0) {
+                decodedItems.add(new DecodedItem(sequenced.sequence, row.getShopId(), item));
+            }
+        }
+    }
+
+    /**
+     * Waits for room in the queue for as long as decoders are left to make it.
+     */
+    private static void enqueue(BlockingQueue<Object> queue, ExecutorService decoders, Object work) {
+        try {
+            while (!queue.offer(work, ENQUEUE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (decoders.isTerminated()) {
+                    throw new IllegalStateException("Shop decoders stopped while loading shops");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading shops", e);
+        }
+    }
+
+    public static final class Result {
+
+        private final List<Shop> shops;
+        private final int itemCount;
+        private final int shopRows;
+        private final int itemRows;
+        private final int decoderThreads;
+        private final long readNanos;
+        private final long decodeNanos;
+        private final long assembleNanos;
+
+        private Result(List<Shop> shops, int itemCount, int shopRows, int itemRows, int decoderThreads,
+                       long readNanos, long decodeNanos, long assembleNanos) {
+            this.shops = shops;
+            this.itemCount = itemCount;
+            this.shopRows = shopRows;
+            this.itemRows = itemRows;
+            this.decoderThreads = decoderThreads;
+            this.readNanos = readNanos;
+            this.decodeNanos = decodeNanos;
+            this.assembleNanos = assembleNanos;
+        }
+
+        public List<Shop> getShops() { return shops; }
+        public int getItemCount() { return itemCount; }
+
+        /**
+         * Decode time is wall clock from the start of the load, it overlaps with reading.
+         */
+        public String formatReport(long publishNanos) {
+            return String.format("&aLoaded %d/%d shops and %d/%d items: read %d ms, decode %d ms (%d threads), assemble %d ms, publish %d ms.",
+                shops.size(), shopRows, itemCount, itemRows,
+                readNanos / 1_000_000L, decodeNanos / 1_000_000L, decoderThreads,
+                assembleNanos / 1_000_000L, publishNanos / 1_000_000L);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Storage backend for shops and player settings. Works on immutable row snapshots and
+ * knows nothing about Bukkit objects, the {@link me.nouridin.supershop.managers.DatabaseManager}
+ * takes the snapshots and decodes what comes back.
+ * <p>
+ * Every method except {@link #open()} and {@link #backup} runs on the {@link PersistenceExecutor} thread,
+ * implementations do not need to be thread safe.
+ */
+public interface ShopRepository {
+
+    /**
+     * Connects and brings the schema up to date. Called once from the server thread during startup.
+     */
+    void open() throws SQLException;
+
+    void close();
+
+    String getName();
+
+    /**
+     * Health check, throws if the backend cannot be reached right now.
+     */
+    void validate() throws SQLException;
+
+    void saveShop(ShopRow row) throws SQLException;
+
+    void saveShopItem(ShopItemRow row) throws SQLException;
+
+    /**
+     * Writes all rows in one transaction.
+     */
+    void saveBatch(List<ShopRow> shops, List<ShopItemRow> items) throws SQLException;
+
+    /**
+     * Writes the shop only if the stored row is still at {@code expectedVersion}, the row
+     * then takes the version of the snapshot. Used where another server may have changed the
+     * shop since it was loaded.
+     *
+     * @return false if the row was changed or removed in the meantime
+     */
+    boolean saveShopIfVersion(ShopRow row, long expectedVersion) throws SQLException;
+
+    /**
+     * Writes the item only if the stored row is still at {@code expectedVersion}, see
+     * {@link #saveShopIfVersion}. An item saved with no quantity left is delisted.
+     *
+     * @return false if the row was changed or removed in the meantime
+     */
+    boolean saveShopItemIfVersion(ShopItemRow row, long expectedVersion) throws SQLException;
+
+    /**
+     * Streams the location and owner of every active shop, without revenue or items.
+     */
+    void readShopSummaries(Consumer<ShopSummary> summaries) throws SQLException;
+
+    /**
+     * Streams the given shops if they are still active, and their listed items, see {@link ShopLoadPipeline.RowSource}.
+     */
+    void readShops(Collection<UUID> shopIds, Consumer<ShopRow> shops, Consumer<ShopItemRow> items) throws SQLException;
+
+    void deleteShop(UUID shopId) throws SQLException;
+
+    void deleteShopItem(UUID shopId, UUID itemId) throws SQLException;
+
+    void appendRevenue(UUID shopId, List<RevenueEntry> entries, long createdAt) throws SQLException;
+
+    /**
+     * @return ledger entries of the given shops not yet folded into the shop rows, keyed by shop id
+     */
+    Map<UUID, List<RevenueEntry>> loadPendingRevenue(Collection<UUID> shopIds) throws SQLException;
+
+    /**
+     * Deletes folded ledger entries created before the given time. Entries are kept after they were
+     * folded so that replaying a journal record that already reached the database does nothing.
+     *
+     * @return number of entries deleted
+     */
+    int purgeFoldedRevenue(long createdBefore) throws SQLException;
+
+    /**
+     * Hard-deletes up to {@code limit} shops that were removed before the given time,
+     * together with their items and revenue ledger entries.
+     *
+     * @return number of rows deleted, 0 once nothing is left to compact
+     */
+    int purgeRemovedShops(long removedBefore, int limit) throws SQLException;
+
+    /**
+     * Hard-deletes up to {@code limit} items that were delisted before the given time.
+     *
+     * @return number of rows deleted, 0 once nothing is left to compact
+     */
+    int purgeDelistedItems(long delistedBefore, int limit) throws SQLException;
+
+    /**
+     * Deletes up to {@code limit} item and price blobs that no item or revenue entry refers to anymore.
+     *
+     * @return number of blobs deleted, 0 once nothing is left to compact
+     */
+    int purgeUnusedBlobs(int limit) throws SQLException;
+
+    /**
+     * Gives the space freed by the purges back to the file system, if the backend can.
+     *
+     * @return bytes returned
+     */
+    long reclaimSpace() throws SQLException;
+
+    /**
+     * Writes a consistent copy of the whole database to the file. Runs on the backup thread while
+     * the database thread keeps working, so it must not hold locks that would make writes wait.
+     *
+     * @param stepSize pages or rows copied per step, the backend releases its locks between steps
+     * @return false if the backend keeps nothing worth backing up
+     */
+    boolean backup(File target, int stepSize) throws SQLException;
+
+    // Change feed, only written while database.change-feed is enabled
+
+    /**
+     * @return sequence number of the newest entry in the change feed, 0 if it is empty
+     */
+    long getLatestChange() throws SQLException;
+
+    /**
+     * @return up to {@code limit} feed entries after the given sequence number, oldest first
+     */
+    List<ShopChange> readChanges(long afterSequence, int limit) throws SQLException;
+
+    /**
+     * Deletes feed entries written before the given time.
+     *
+     * @return number of entries deleted
+     */
+    int purgeChanges(long createdBefore) throws SQLException;
+
+    void savePlayerLocale(UUID playerId, String locale) throws SQLException;
+
+    Map<UUID, String> loadPlayerLocales() throws SQLException;
+
+    boolean hasReceivedFirstLoginMessage(UUID playerId) throws SQLException;
+
+    void recordFirstLoginMessage(UUID playerId) throws SQLException;
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Immutable copy of one row of the shops table. Taken on the server thread so the
+ * database thread never touches a live {@link me.nouridin.supershop.models.Shop}.
+ */
+public final class ShopRow {
+
+    private final UUID shopId;
+    private final UUID ownerId;
+    private final String ownerName;
+    private final String worldName;
+    private final int x;
+    private final int y;
+    private final int z;
+    private final boolean active;
+    private final long createdAt;
+    private final long lastUpdated;
+    private final String revenueData;
+    private final byte[] revenueBlob;
+    private final long version;
+    private final List<UUID> foldedRevenue;
+
+    /**
+     * @param revenueData legacy Base64 revenue, only set when reading rows that were never migrated
+     * @param revenueBlob revenue in the {@link me.nouridin.supershop.util.ItemCodec} format, null if not migrated yet
+     */
+    public ShopRow(UUID shopId, UUID ownerId, String ownerName, String worldName, int x, int y, int z,
+                   boolean active, long createdAt, long lastUpdated, String revenueData, byte[] revenueBlob) {
+        this(shopId, ownerId, ownerName, worldName, x, y, z, active, createdAt, lastUpdated, revenueData, revenueBlob, 0);
+    }
+
+    /**
+     * @param version version of the row once it is written, or as it was read
+     */
+    public ShopRow(UUID shopId, UUID ownerId, String ownerName, String worldName, int x, int y, int z,
+                   boolean active, long createdAt, long lastUpdated, String revenueData, byte[] revenueBlob, long version) {
+        this(shopId, ownerId, ownerName, worldName, x, y, z, active, createdAt, lastUpdated, revenueData, revenueBlob, version, null);
+    }
+
+    /**
+     * @param foldedRevenue revenue ledger entries counted in the revenue blob, null for every pending entry of the shop
+     */
+    public ShopRow(UUID shopId, UUID ownerId, String ownerName, String worldName, int x, int y, int z,
+                   boolean active, long createdAt, long lastUpdated, String revenueData, byte[] revenueBlob, long version,
+                   List<UUID> foldedRevenue) {
+        this.shopId = shopId;
+        this.ownerId = ownerId;
+        this.ownerName = ownerName;
+        this.worldName = worldName;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.active = active;
+        this.createdAt = createdAt;
+        this.lastUpdated = lastUpdated;
+        this.revenueData = revenueData;
+        this.revenueBlob = revenueBlob;
+        this.version = version;
+        this.foldedRevenue = foldedRevenue != null ? Collections.unmodifiableList(foldedRevenue) : null;
+    }
+
+    public ShopRow withFoldedRevenue(List<UUID> foldedRevenue) {
+        return new ShopRow(shopId, ownerId, ownerName, worldName, x, y, z, active, createdAt, lastUpdated,
+            revenueData, revenueBlob, version, foldedRevenue);
+    }
+
+    public UUID getShopId() { return shopId; }
+    public UUID getOwnerId() { return ownerId; }
+    public String getOwnerName() { return ownerName; }
+    public String getWorldName() { return worldName; }
+    public int getX() { return x; }
+    public int getY() { return y; }
+    public int getZ() { return z; }
+    public boolean isActive() { return active; }
+    public long getCreatedAt() { return createdAt; }
+    public long getLastUpdated() { return lastUpdated; }
+    public String getRevenueData() { return revenueData; }
+    public byte[] getRevenueBlob() { return revenueBlob; }
+    public long getVersion() { return version; }
+
+    /**
+     * Ledger entries the revenue blob already counts, they are folded by the write of this row.
+     * Entries other servers appended after the shop was read are not among them.
+     */
+    public List<UUID> getFoldedRevenue() { return foldedRevenue; }
+}
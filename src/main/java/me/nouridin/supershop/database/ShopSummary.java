@@ -0,0 +1,51 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.util.UUID;
+
+/**
+ * Where an active shop is and who owns it, read for every shop at startup. The rest of the
+ * row and the items are only read once the shop's chunk is used, see {@link ShopRepository#readShops}.
+ */
+public final class ShopSummary {
+
+    private final UUID shopId;
+    private final UUID ownerId;
+    private final String worldName;
+    private final int x;
+    private final int y;
+    private final int z;
+
+    public ShopSummary(UUID shopId, UUID ownerId, String worldName, int x, int y, int z) {
+        this.shopId = shopId;
+        this.ownerId = ownerId;
+        this.worldName = worldName;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public UUID getShopId() { return shopId; }
+    public UUID getOwnerId() { return ownerId; }
+    public String getWorldName() { return worldName; }
+    public int getX() { return x; }
+    public int getY() { return y; }
+    public int getZ() { return z; }
+    public int getChunkX() { return x >> 4; }
+    public int getChunkZ() { return z >> 4; }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The parts of SQL that differ between backends. Repositories build their statements
+ * from a dialect once, when they are created, instead of branching on every call.
+ */
+public abstract class SqlDialect {
+
+    public abstract String getName();
+
+    /**
+     * Column type for serialized items.
+     */
+    public abstract String blobType();
+
+    /**
+     * Column type for UUIDs stored as 16 bytes.
+     */
+    public abstract String binaryKeyType();
+
+    /**
+     * Column definition for a numeric primary key the database assigns in increasing order.
+     */
+    public abstract String autoIncrementKey();
+
+    /**
+     * Insert that replaces the existing row with the same key.
+     */
+    public abstract String upsert(String table, List<String> columns, String keyColumn);
+
+    /**
+     * Upsert for tables with a version column. A new row is inserted with the bound version,
+     * an existing row keeps its other columns in sync and counts its own version up by one.
+     */
+    public abstract String versionedUpsert(String table, List<String> columns, String keyColumn, String versionColumn);
+
+    /**
+     * Insert that does nothing if a row with the same key already exists.
+     */
+    public abstract String insertIgnore(String table, List<String> columns);
+
+    /**
+     * Fetch size that makes the driver stream a result set instead of buffering all of it.
+     */
+    public abstract int streamingFetchSize();
+
+    /**
+     * Whether CREATE, DROP and ALTER take part in transactions.
+     */
+    public abstract boolean hasTransactionalDdl();
+
+    /**
+     * Bytes used on disk by the given tables, as far as the backend can tell.
+     */
+    public abstract long measureStorageBytes(Connection connection, Collection<String> tables) throws SQLException;
+
+    /**
+     * Sets the database up so {@link #reclaimSpace(Connection)} can shrink it. Runs once on
+     * startup with auto commit on. Does nothing for backends that reuse freed pages on their own.
+     */
+    public void enableSpaceReclaim(Connection connection) throws SQLException {
+    }
+
+    /**
+     * Gives the pages freed by deletes back to the file system.
+     *
+     * @return bytes returned, 0 if the backend keeps its pages
+     */
+    public long reclaimSpace(Connection connection) throws SQLException {
+        return 0;
+    }
+
+    protected static String columnList(List<String> columns) {
+        return String.join(", ", columns);
+    }
+
+    protected static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    protected static List<String> without(List<String> columns, String column) {
+        return columns.stream()
+            .filter(other -> !other.equals(column))
+            .collect(Collectors.toList());
+    }
+
+    protected static String assignments(List<String> columns, String keyColumn, String format) {
+        return columns.stream()
+            .filter(column -> !column.equals(keyColumn))
+            .map(column -> String.format(format, column, column))
+            .collect(Collectors.joining(", "));
+    }
+}
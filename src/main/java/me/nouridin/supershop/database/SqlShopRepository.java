@@ -0,0 +1,1244 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+import me.nouridin.supershop.util.ItemCodec;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * JDBC repository shared by the SQL backends. The subclasses only open the connection
+ * and pick the {@link SqlDialect}, every statement is built from the dialect once here.
+ */
+public abstract class SqlShopRepository implements ShopRepository {
+
+    private static final List<String> SHOP_COLUMNS = Arrays.asList(
+        "shop_id", "owner_id", "owner_name", "world_name", "x", "y", "z", "is_active",
+        "created_at", "last_updated", "revenue_data", "revenue_blob", "removed_at", "version");
+
+    private static final List<String> SHOP_ITEM_COLUMNS = Arrays.asList(
+        "item_id", "shop_id", "item_data", "quantity", "description", "price_data", "is_available",
+        "item_blob", "price_blob", "material", "item_amount", "display_name", "item_ref", "price_ref", "removed_at", "version");
+
+    private static final List<String> KEY_TABLES = Arrays.asList(
+        "shops", "shop_items", "player_locales", "first_login_tracking", "revenue_ledger", "shop_changes");
+
+    // Fingerprints remembered as stored before the cache starts over
+    private static final int MAX_KNOWN_BLOBS = 100_000;
+
+    protected final supershop plugin;
+    protected final SqlDialect dialect;
+    private final int batchSize;
+    private final boolean changeFeed;
+    private final String origin;
+    private ConnectionPool pool;
+    private KeyFormat keys = KeyFormat.TEXT;
+
+    // Blobs known to be in item_blobs, only touched on the database thread. Left empty when servers
+    // share the database, another server may purge a blob this one still remembers
+    private final Set<String> knownBlobs = new HashSet<>();
+    // Upgraded bytes by the fingerprint of the blob they replaced, loaded items still hold the old bytes
+    private final Map<String, byte[]> upgradedBlobs = new HashMap<>();
+
+    // Precompiled SQL
+    private final String shopUpsertSql;
+    private final String shopItemUpsertSql;
+    private final String shopUpdateSql;
+    private final String shopItemUpdateSql;
+    private final String localeUpsertSql;
+    private final String firstLoginInsertSql;
+    private final String blobInsertSql;
+    private final String ledgerInsertSql;
+    private final String changeInsertSql;
+
+    protected SqlShopRepository(supershop plugin, SqlDialect dialect) {
+        this.plugin = plugin;
+        this.dialect = dialect;
+        this.batchSize = Math.max(1, plugin.getConfigManager().getDatabaseBatchSize());
+        this.shopUpsertSql = dialect.versionedUpsert("shops", SHOP_COLUMNS, "shop_id", "version");
+        this.shopItemUpsertSql = dialect.versionedUpsert("shop_items", SHOP_ITEM_COLUMNS, "item_id", "version");
+        this.shopUpdateSql = versionedUpdate("shops", SHOP_COLUMNS, "shop_id");
+        this.shopItemUpdateSql = versionedUpdate("shop_items", SHOP_ITEM_COLUMNS, "item_id");
+        this.localeUpsertSql = dialect.upsert("player_locales", Arrays.asList("player_id", "locale"), "player_id");
+        this.firstLoginInsertSql = dialect.insertIgnore("first_login_tracking", Collections.singletonList("player_id"));
+        this.blobInsertSql = dialect.insertIgnore("item_blobs", Arrays.asList("fingerprint", "data", "data_version"));
+        this.ledgerInsertSql = dialect.insertIgnore("revenue_ledger",
+            Arrays.asList("entry_id", "shop_id", "fingerprint", "amount", "created_at"));
+        this.changeInsertSql = "INSERT INTO shop_changes (shop_id, origin, created_at) VALUES (?, ?, ?)";
+
+        this.changeFeed = plugin.getConfigManager().isChangeFeedEnabled();
+        String serverId = plugin.getConfigManager().getChangeFeedServerId();
+        this.origin = serverId == null || serverId.isEmpty() ? UUID.randomUUID().toString() : serverId;
+    }
+
+    /**
+     * Update of every column that only matches while the row is still at the version bound after the key.
+     * The columns are bound in the same order as for the upsert.
+     */
+    private static String versionedUpdate(String table, List<String> columns, String keyColumn) {
+        return "UPDATE " + table + " SET " + String.join(" = ?, ", columns) + " = ?" +
+            " WHERE " + keyColumn + " = ? AND version = ?";
+    }
+
+    /**
+     * Work done with one borrowed connection and the statements cached for it.
+     */
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T run(Connection connection, StatementCache statements) throws SQLException;
+    }
+
+    protected abstract Connection openConnection() throws SQLException;
+
+    @Override
+    public String getName() {
+        return dialect.getName();
+    }
+
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Borrows a connection for the duration of the work. A connection that failed with a
+     * connection error is closed instead of going back to the pool.
+     * The pool hands each connection to one thread at a time, so this is safe from any thread.
+     * The repository methods built on it still run on the {@link PersistenceExecutor}, see
+     * {@link ShopRepository}, only {@link MySqlShopRepository#backup} borrows from the backup thread.
+     */
+    public <T> T withConnection(SqlWork<T> work) throws SQLException {
+        try (ConnectionPool.PooledConnection pooled = pool.borrow()) {
+            try {
+                return work.run(pooled.getConnection(), pooled.getStatements());
+            } catch (SQLException e) {
+                if (ConnectionPool.isConnectionFailure(e)) {
+                    pooled.invalidate();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * How UUID keys are stored, see database.compact-keys.
+     */
+    public KeyFormat getKeyFormat() {
+        return keys;
+    }
+
+    @Override
+    public void open() throws SQLException {
+        if (pool == null) {
+            pool = new ConnectionPool(this::openConnection,
+                plugin.getConfigManager().getDatabasePoolMaxSize(),
+                plugin.getConfigManager().getDatabasePoolValidationTimeoutSeconds(),
+                plugin.getConfigManager().getDatabasePoolIdleTimeoutSeconds() * 1000L,
+                plugin.getConfigManager().getDatabasePoolConnectionTimeoutMillis());
+        }
+        withConnection((connection, statements) -> {
+            createTables(connection);
+            if (plugin.getConfigManager().isCompactionIncrementalVacuum()) {
+                dialect.enableSpaceReclaim(connection);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Override
+    public void validate() throws SQLException {
+        pool.evictIdle();
+        withConnection((connection, statements) -> {
+            if (!connection.isValid(plugin.getConfigManager().getDatabasePoolValidationTimeoutSeconds())) {
+                throw new SQLTransientConnectionException("Connection failed validation");
+            }
+            return null;
+        });
+    }
+
+    // Schema
+
+    private void createTables(Connection connection) throws SQLException {
+        KeyFormat configuredKeys = plugin.getConfigManager().isDatabaseCompactKeys() ? KeyFormat.BINARY : KeyFormat.TEXT;
+        KeyConverter converter = new KeyConverter(plugin, connection, dialect, batchSize);
+
+        // Existing tables keep their key format until they are converted below
+        KeyFormat existingKeys = converter.detect("shops", "shop_id");
+        keys = existingKeys != null ? existingKeys : configuredKeys;
+
+        int version = new SchemaMigrator(plugin, connection)
+            .add(1, "baseline tables", this::createBaselineTables)
+            .add(2, "binary item columns", migrator -> {
+                migrator.addColumn("shops", "revenue_blob", dialect.blobType());
+                migrator.addColumn("shop_items", "item_blob", dialect.blobType());
+                migrator.addColumn("shop_items", "price_blob", dialect.blobType());
+            })
+            .add(3, "lazy item columns", migrator -> {
+                migrator.addColumn("shop_items", "material", "VARCHAR(64)");
+                migrator.addColumn("shop_items", "item_amount", "INTEGER");
+                migrator.addColumn("shop_items", "display_name", "TEXT");
+            })
+            .add(4, "lookup indexes and material backfill", migrator -> {
+                createLookupIndexes(migrator);
+                backfillItemColumns(migrator.getConnection());
+            })
+            .add(5, "revenue ledger", migrator -> {
+                migrator.execute(revenueLedgerTableSql("revenue_ledger", keys));
+                migrator.execute(revenuePrototypesTableSql());
+                migrator.createIndex("idx_revenue_ledger_shop_id", "revenue_ledger", "shop_id");
+            })
+            .add(6, "idempotent revenue ledger", migrator ->
+                migrator.addColumn("revenue_ledger", "folded_at", "BIGINT"))
+            .add(7, "removal timestamps", this::addRemovalTimestamps)
+            .add(8, "blob dictionary", this::createBlobDictionary)
+            .add(9, "blob data versions", migrator -> {
+                // Unknown until the BlobMigration looks at the bytes
+                migrator.addColumn("item_blobs", "data_version", "INTEGER");
+                migrator.createIndex("idx_item_blobs_data_version", "item_blobs", "data_version");
+            })
+            .add(10, "change feed", migrator -> {
+                migrator.execute(shopChangesTableSql("shop_changes", keys));
+                migrator.createIndex("idx_shop_changes_created_at", "shop_changes", "created_at");
+            })
+            .add(11, "row versions", migrator -> {
+                migrator.addColumn("shops", "version", "BIGINT NOT NULL DEFAULT 0");
+                migrator.addColumn("shop_items", "version", "BIGINT NOT NULL DEFAULT 0");
+            })
+            .migrate();
+
+        plugin.getMessageUtils().sendConsoleMessage("&aDatabase schema is at version " + version + ".");
+
+        if (keys != configuredKeys) {
+            convertKeys(connection, converter, configuredKeys);
+        }
+    }
+
+    private void createBaselineTables(SchemaMigrator migrator) throws SQLException {
+        migrator.execute(shopsTableSql("shops", keys));
+        migrator.execute(shopItemsTableSql("shop_items", keys));
+        migrator.execute(playerLocalesTableSql("player_locales", keys));
+        migrator.execute(firstLoginTableSql("first_login_tracking", keys));
+        
+        // Databases from before revenue was stored
+        migrator.addColumn("shops", "revenue_data", "TEXT DEFAULT ''");
+    }
+
+    /**
+     * Rows removed before this version have no timestamp, they count as removed now.
+     */
+    private void addRemovalTimestamps(SchemaMigrator migrator) throws SQLException {
+        migrator.addColumn("shops", "removed_at", "BIGINT");
+        migrator.addColumn("shop_items", "removed_at", "BIGINT");
+        migrator.createIndex("idx_shops_removed_at", "shops", "removed_at");
+        migrator.createIndex("idx_shop_items_removed_at", "shop_items", "removed_at");
+
+        long now = System.currentTimeMillis();
+        try (PreparedStatement shops = migrator.getConnection().prepareStatement("UPDATE shops SET removed_at = ? WHERE is_active = FALSE");
+             PreparedStatement items = migrator.getConnection().prepareStatement("UPDATE shop_items SET removed_at = ? WHERE is_available = FALSE")) {
+            shops.setLong(1, now);
+            shops.executeUpdate();
+            items.setLong(1, now);
+            items.executeUpdate();
+        }
+    }
+
+    /**
+     * Item and price bytes move to item_blobs, keyed by their fingerprint, and rows only keep the
+     * fingerprints. The revenue prototypes were already stored that way and move along. Existing
+     * rows are moved over by the {@link BlobMigration} while the server runs.
+     */
+    private void createBlobDictionary(SchemaMigrator migrator) throws SQLException {
+        migrator.execute(itemBlobsTableSql());
+        migrator.addColumn("shop_items", "item_ref", "VARCHAR(64)");
+        migrator.addColumn("shop_items", "price_ref", "VARCHAR(64)");
+        migrator.createIndex("idx_shop_items_item_ref", "shop_items", "item_ref");
+        migrator.createIndex("idx_shop_items_price_ref", "shop_items", "price_ref");
+        migrator.createIndex("idx_revenue_ledger_fingerprint", "revenue_ledger", "fingerprint");
+
+        migrator.execute("INSERT INTO item_blobs (fingerprint, data) SELECT fingerprint, item_blob FROM revenue_prototypes");
+        migrator.execute("DROP TABLE revenue_prototypes");
+    }
+
+    private void createLookupIndexes(SchemaMigrator migrator) throws SQLException {
+        migrator.createIndex("idx_shop_items_shop_id", "shop_items", "shop_id");
+        migrator.createIndex("idx_shop_items_material", "shop_items", "material");
+        migrator.createIndex("idx_shops_owner_id", "shops", "owner_id");
+        migrator.createIndex("idx_shops_location", "shops", "world_name, x, y, z");
+        if (migrator.getCurrentVersion() >= 5) {
+            migrator.createIndex("idx_revenue_ledger_shop_id", "revenue_ledger", "shop_id");
+        }
+        if (migrator.getCurrentVersion() >= 7) {
+            migrator.createIndex("idx_shops_removed_at", "shops", "removed_at");
+            migrator.createIndex("idx_shop_items_removed_at", "shop_items", "removed_at");
+        }
+        if (migrator.getCurrentVersion() >= 10) {
+            migrator.createIndex("idx_shop_changes_created_at", "shop_changes", "created_at");
+        }
+        if (migrator.getCurrentVersion() >= 8) {
+            migrator.createIndex("idx_shop_items_item_ref", "shop_items", "item_ref");
+            migrator.createIndex("idx_shop_items_price_ref", "shop_items", "price_ref");
+            migrator.createIndex("idx_revenue_ledger_fingerprint", "revenue_ledger", "fingerprint");
+        }
+    }
+
+    // Table definitions in their current shape, used for new databases and when converting keys
+
+    private String shopsTableSql(String table, KeyFormat keyFormat) {
+        String keyType = keyFormat.columnType(dialect);
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+            "shop_id " + keyType + " PRIMARY KEY," +
+            "owner_id " + keyType + " NOT NULL," +
+            "owner_name VARCHAR(16) NOT NULL," +
+            "world_name VARCHAR(50) NOT NULL," +
+            "x INTEGER NOT NULL," +
+            "y INTEGER NOT NULL," +
+            "z INTEGER NOT NULL," +
+            "is_active BOOLEAN DEFAULT TRUE," +
+            "created_at BIGINT NOT NULL," +
+            "last_updated BIGINT NOT NULL," +
+            "revenue_data TEXT DEFAULT ''," +
+            "revenue_blob " + dialect.blobType() + "," +
+            "removed_at BIGINT," +
+            "version BIGINT NOT NULL DEFAULT 0" +
+            ")";
+    }
+
+    private String shopItemsTableSql(String table, KeyFormat keyFormat) {
+        String keyType = keyFormat.columnType(dialect);
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+            "item_id " + keyType + " PRIMARY KEY," +
+            "shop_id " + keyType + " NOT NULL," +
+            "item_data TEXT NOT NULL," +
+            "quantity INTEGER NOT NULL," +
+            "description TEXT," +
+            "price_data TEXT NOT NULL," +
+            "is_available BOOLEAN DEFAULT TRUE," +
+            "item_blob " + dialect.blobType() + "," +
+            "price_blob " + dialect.blobType() + "," +
+            "material VARCHAR(64)," +
+            "item_amount INTEGER," +
+            "display_name TEXT," +
+            "removed_at BIGINT," +
+            "item_ref VARCHAR(64)," +
+            "price_ref VARCHAR(64)," +
+            "version BIGINT NOT NULL DEFAULT 0" +
+            ")";
+    }
+
+    private String playerLocalesTableSql(String table, KeyFormat keyFormat) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+            "player_id " + keyFormat.columnType(dialect) + " PRIMARY KEY," +
+            "locale VARCHAR(10) NOT NULL" +
+            ")";
+    }
+
+    private String firstLoginTableSql(String table, KeyFormat keyFormat) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+            "player_id " + keyFormat.columnType(dialect) + " PRIMARY KEY" +
+            ")";
+    }
+
+    private String revenueLedgerTableSql(String table, KeyFormat keyFormat) {
+        String keyType = keyFormat.columnType(dialect);
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+            "entry_id " + keyType + " PRIMARY KEY," +
+            "shop_id " + keyType + " NOT NULL," +
+            "fingerprint VARCHAR(64) NOT NULL," +
+            "amount INTEGER NOT NULL," +
+            "created_at BIGINT NOT NULL," +
+            "folded_at BIGINT" +
+            ")";
+    }
+
+    private String shopChangesTableSql(String table, KeyFormat keyFormat) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+            "seq " + dialect.autoIncrementKey() + "," +
+            "shop_id " + keyFormat.columnType(dialect) + " NOT NULL," +
+            "origin VARCHAR(64) NOT NULL," +
+            "created_at BIGINT NOT NULL" +
+            ")";
+    }
+
+    private String itemBlobsTableSql() {
+        return "CREATE TABLE IF NOT EXISTS item_blobs (" +
+            "fingerprint VARCHAR(64) PRIMARY KEY," +
+            "data " + dialect.blobType() + " NOT NULL," +
+            "data_version INTEGER" +
+            ")";
+    }
+
+    private String revenuePrototypesTableSql() {
+        return "CREATE TABLE IF NOT EXISTS revenue_prototypes (" +
+            "fingerprint VARCHAR(64) PRIMARY KEY," +
+            "item_blob " + dialect.blobType() + " NOT NULL" +
+            ")";
+    }
+
+    /**
+     * Rewrites every table with UUID keys into the configured format and reports the size difference.
+     */
+    private void convertKeys(Connection connection, KeyConverter converter, KeyFormat target) throws SQLException {
+        long start = System.currentTimeMillis();
+        long sizeBefore = dialect.measureStorageBytes(connection, KEY_TABLES);
+
+        int rows = 0;
+        rows += converter.convert("shops", Set.of("shop_id", "owner_id"), keys, target, this::shopsTableSql);
+        rows += converter.convert("shop_items", Set.of("item_id", "shop_id"), keys, target, this::shopItemsTableSql);
+        rows += converter.convert("player_locales", Set.of("player_id"), keys, target, this::playerLocalesTableSql);
+        rows += converter.convert("first_login_tracking", Set.of("player_id"), keys, target, this::firstLoginTableSql);
+        rows += converter.convert("revenue_ledger", Set.of("entry_id", "shop_id"), keys, target, this::revenueLedgerTableSql);
+        rows += converter.convert("shop_changes", Set.of("shop_id"), keys, target, this::shopChangesTableSql);
+        keys = target;
+
+        // The indexes went away with the old tables
+        createLookupIndexes(new SchemaMigrator(plugin, connection));
+
+        if (dialect.hasTransactionalDdl()) {
+            // SQLite only hands the freed pages back to the file system on VACUUM
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("VACUUM");
+            }
+        }
+
+        long sizeAfter = dialect.measureStorageBytes(connection, KEY_TABLES);
+        plugin.getMessageUtils().sendConsoleMessage(String.format(
+            "&aConverted %d rows to %s keys in %d ms, storage went from %d KB to %d KB.",
+            rows, target.name().toLowerCase(), System.currentTimeMillis() - start, sizeBefore / 1024, sizeAfter / 1024));
+    }
+
+    /**
+     * Fills material, amount and display name for binary rows saved before those columns existed.
+     * Rows still in the old text format get them from the {@link BlobMigration}.
+     */
+    private void backfillItemColumns(Connection connection) throws SQLException {
+        String select = "SELECT item_id, item_blob FROM shop_items WHERE material IS NULL AND item_blob IS NOT NULL";
+        String update = "UPDATE shop_items SET material = ?, item_amount = ?, display_name = ? WHERE item_id = ?";
+        int filled = 0;
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try (PreparedStatement query = connection.prepareStatement(select);
+             PreparedStatement stmt = connection.prepareStatement(update);
+             ResultSet rs = query.executeQuery()) {
+
+            int pending = 0;
+            while (rs.next()) {
+                UUID itemId = keys.read(rs, "item_id");
+                ItemStack itemStack;
+                try {
+                    itemStack = ItemCodec.decode(rs.getBytes("item_blob"));
+                } catch (IOException | RuntimeException e) {
+                    plugin.getMessageUtils().sendConsoleMessage("&cFailed to read material of shop item " + itemId + ": " + e.getMessage());
+                    continue;
+                }
+                if (itemStack == null) {
+                    continue;
+                }
+
+                stmt.setString(1, itemStack.getType().name());
+                stmt.setInt(2, itemStack.getAmount());
+                stmt.setString(3, itemStack.hasItemMeta() && itemStack.getItemMeta().hasDisplayName() ?
+                    itemStack.getItemMeta().getDisplayName() : null);
+                keys.bind(stmt, 4, itemId);
+                stmt.addBatch();
+                filled++;
+                if (++pending >= batchSize) {
+                    stmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                stmt.executeBatch();
+            }
+
+            connection.commit();
+
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        if (filled > 0) {
+            plugin.getMessageUtils().sendConsoleMessage("&aFilled in the material of " + filled + " shop items.");
+        }
+    }
+
+    // Shops and items
+
+    private void bindShop(PreparedStatement stmt, ShopRow row) throws SQLException {
+        keys.bind(stmt, 1, row.getShopId());
+        keys.bind(stmt, 2, row.getOwnerId());
+        stmt.setString(3, row.getOwnerName());
+        stmt.setString(4, row.getWorldName());
+        stmt.setInt(5, row.getX());
+        stmt.setInt(6, row.getY());
+        stmt.setInt(7, row.getZ());
+        stmt.setBoolean(8, row.isActive());
+        stmt.setLong(9, row.getCreatedAt());
+        stmt.setLong(10, row.getLastUpdated());
+        stmt.setString(11, row.getRevenueData());
+        stmt.setBytes(12, row.getRevenueBlob());
+        // A saved row is live again, the upsert keeps columns it does not list
+        stmt.setNull(13, Types.BIGINT);
+        stmt.setLong(14, row.getVersion());
+    }
+
+    /**
+     * Binds the row with its bytes replaced by the fingerprints from {@link #storeBlobs}.
+     */
+    private void bindShopItem(PreparedStatement stmt, ShopItemRow row, String[] refs) throws SQLException {
+        keys.bind(stmt, 1, row.getItemId());
+        keys.bind(stmt, 2, row.getShopId());
+        stmt.setString(3, row.getItemData());
+        stmt.setInt(4, row.getQuantity());
+        stmt.setString(5, row.getDescription());
+        stmt.setString(6, row.getPriceData());
+        stmt.setBoolean(7, row.isAvailable());
+        stmt.setBytes(8, refs[0] == null ? row.getItemBlob() : null);
+        stmt.setBytes(9, refs[1] == null ? row.getPriceBlob() : null);
+        stmt.setString(10, row.getMaterial());
+        stmt.setInt(11, row.getItemAmount());
+        stmt.setString(12, row.getDisplayName());
+        stmt.setString(13, refs[0]);
+        stmt.setString(14, refs[1]);
+        stmt.setNull(15, Types.BIGINT);
+        stmt.setLong(16, row.getVersion());
+    }
+
+    /**
+     * Adds the item and price bytes of the rows to item_blobs, skipping blobs that are already
+     * there, and returns the fingerprints of each row. The fingerprints are added to the known
+     * blobs by the caller once the transaction committed.
+     */
+    private List<String[]> storeBlobs(StatementCache statements, List<ShopItemRow> rows, Set<String> stored) throws SQLException {
+        PreparedStatement stmt = statements.prepare(blobInsertSql);
+        List<String[]> refs = new ArrayList<>(rows.size());
+        int pending = 0;
+        for (ShopItemRow row : rows) {
+            String[] rowRefs = {
+                storeBlob(stmt, row.getItemBlob(), stored),
+                storeBlob(stmt, row.getPriceBlob(), stored)
+            };
+            refs.add(rowRefs);
+            if (++pending >= batchSize) {
+                stmt.executeBatch();
+                pending = 0;
+            }
+        }
+        if (pending > 0) {
+            stmt.executeBatch();
+        }
+        return refs;
+    }
+
+    private String storeBlob(PreparedStatement stmt, byte[] data, Set<String> stored) throws SQLException {
+        // Rows from older journals may still carry the text format only
+        if (data == null) {
+            return null;
+        }
+
+        String fingerprint = ItemCodec.fingerprint(data);
+        byte[] upgraded = upgradedBlobs.get(fingerprint);
+        if (upgraded != null) {
+            // The old blob is gone, save the item as it was upgraded
+            data = upgraded;
+            fingerprint = ItemCodec.fingerprint(upgraded);
+        }
+
+        if (!knownBlobs.contains(fingerprint) && stored.add(fingerprint)) {
+            bindBlob(stmt, fingerprint, data);
+            stmt.addBatch();
+        }
+        return fingerprint;
+    }
+
+    static void bindBlob(PreparedStatement stmt, String fingerprint, byte[] data) throws SQLException {
+        stmt.setString(1, fingerprint);
+        stmt.setBytes(2, data);
+        stmt.setInt(3, ItemCodec.getDataVersion(data));
+    }
+
+    private void rememberBlobs(Set<String> stored) {
+        if (changeFeed) {
+            return;
+        }
+        if (knownBlobs.size() + stored.size() > MAX_KNOWN_BLOBS) {
+            knownBlobs.clear();
+        }
+        knownBlobs.addAll(stored);
+    }
+
+    String getBlobInsertSql() {
+        return blobInsertSql;
+    }
+
+    /**
+     * Called by the {@link BlobMigration} once blobs were rewritten under new fingerprints.
+     */
+    void rememberUpgrades(Map<String, byte[]> upgrades) {
+        if (upgradedBlobs.size() + upgrades.size() > MAX_KNOWN_BLOBS) {
+            upgradedBlobs.clear();
+        }
+        upgradedBlobs.putAll(upgrades);
+        knownBlobs.removeAll(upgrades.keySet());
+    }
+
+    /**
+     * Runs the work in one transaction on a borrowed connection.
+     */
+    private <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        return withConnection((connection, statements) -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try {
+                T result = work.run(connection, statements);
+                connection.commit();
+                return result;
+
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    @Override
+    public void saveShop(ShopRow row) throws SQLException {
+        inTransaction((connection, statements) -> {
+            PreparedStatement stmt = statements.prepare(shopUpsertSql);
+            bindShop(stmt, row);
+            stmt.executeUpdate();
+            // The row now holds the revenue of the ledger entries it was read with
+            foldRevenue(statements, Collections.singletonList(row));
+            recordChanges(statements, Collections.singleton(row.getShopId()));
+            return null;
+        });
+    }
+
+    @Override
+    public void saveShopItem(ShopItemRow row) throws SQLException {
+        Set<String> stored = new HashSet<>();
+        inTransaction((connection, statements) -> {
+            String[] refs = storeBlobs(statements, Collections.singletonList(row), stored).get(0);
+            PreparedStatement stmt = statements.prepare(shopItemUpsertSql);
+            bindShopItem(stmt, row, refs);
+            stmt.executeUpdate();
+            recordChanges(statements, Collections.singleton(row.getShopId()));
+            return null;
+        });
+        rememberBlobs(stored);
+    }
+
+    @Override
+    public boolean saveShopIfVersion(ShopRow row, long expectedVersion) throws SQLException {
+        return inTransaction((connection, statements) -> {
+            PreparedStatement stmt = statements.prepare(shopUpdateSql);
+            bindShop(stmt, row);
+            keys.bind(stmt, SHOP_COLUMNS.size() + 1, row.getShopId());
+            stmt.setLong(SHOP_COLUMNS.size() + 2, expectedVersion);
+            if (stmt.executeUpdate() == 0) {
+                return false;
+            }
+            foldRevenue(statements, Collections.singletonList(row));
+            recordChanges(statements, Collections.singleton(row.getShopId()));
+            return true;
+        });
+    }
+
+    @Override
+    public boolean saveShopItemIfVersion(ShopItemRow row, long expectedVersion) throws SQLException {
+        Set<String> stored = new HashSet<>();
+        boolean saved = inTransaction((connection, statements) -> {
+            String[] refs = storeBlobs(statements, Collections.singletonList(row), stored).get(0);
+            PreparedStatement stmt = statements.prepare(shopItemUpdateSql);
+            bindShopItem(stmt, row, refs);
+            keys.bind(stmt, SHOP_ITEM_COLUMNS.size() + 1, row.getItemId());
+            stmt.setLong(SHOP_ITEM_COLUMNS.size() + 2, expectedVersion);
+            if (stmt.executeUpdate() == 0) {
+                // Blobs stored for the lost race are left to the compaction
+                return false;
+            }
+            if (row.getQuantity() <= 0) {
+                // Sold out, delisted the same way as deleteShopItem
+                PreparedStatement delist = statements.prepare("UPDATE shop_items SET is_available = FALSE, removed_at = ?, version = version + 1 WHERE item_id = ?");
+                delist.setLong(1, System.currentTimeMillis());
+                keys.bind(delist, 2, row.getItemId());
+                delist.executeUpdate();
+            }
+            recordChanges(statements, Collections.singleton(row.getShopId()));
+            return true;
+        });
+        if (saved) {
+            rememberBlobs(stored);
+        }
+        return saved;
+    }
+
+    @Override
+    public void saveBatch(List<ShopRow> shops, List<ShopItemRow> items) throws SQLException {
+        Set<String> stored = new HashSet<>();
+        inTransaction((connection, statements) -> {
+            PreparedStatement stmt = statements.prepare(shopUpsertSql);
+            int pending = 0;
+            for (ShopRow row : shops) {
+                bindShop(stmt, row);
+                stmt.addBatch();
+                if (++pending >= batchSize) {
+                    stmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                stmt.executeBatch();
+            }
+
+            foldRevenue(statements, shops);
+
+            List<String[]> refs = storeBlobs(statements, items, stored);
+            stmt = statements.prepare(shopItemUpsertSql);
+            pending = 0;
+            for (int i = 0; i < items.size(); i++) {
+                bindShopItem(stmt, items.get(i), refs.get(i));
+                stmt.addBatch();
+                if (++pending >= batchSize) {
+                    stmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                stmt.executeBatch();
+            }
+
+            Set<UUID> changed = new LinkedHashSet<>();
+            for (ShopRow row : shops) {
+                changed.add(row.getShopId());
+            }
+            for (ShopItemRow row : items) {
+                changed.add(row.getShopId());
+            }
+            recordChanges(statements, changed);
+            return null;
+        });
+        rememberBlobs(stored);
+    }
+
+    @Override
+    public void readShopSummaries(Consumer<ShopSummary> summarySink) throws SQLException {
+        String sql = "SELECT shop_id, owner_id, world_name, x, y, z FROM shops WHERE is_active = TRUE";
+
+        withConnection((connection, statements) -> {
+            try (PreparedStatement stmt = prepareStreaming(connection, sql);
+                 ResultSet rs = stmt.executeQuery()) {
+
+                while (rs.next()) {
+                    summarySink.accept(new ShopSummary(
+                        keys.read(rs, "shop_id"),
+                        keys.read(rs, "owner_id"),
+                        rs.getString("world_name"),
+                        rs.getInt("x"),
+                        rs.getInt("y"),
+                        rs.getInt("z")));
+                }
+
+            } catch (SQLException e) {
+                plugin.getMessageUtils().sendConsoleMessage("&cFailed to index shops: " + e.getMessage());
+                throw e;
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void readShops(Collection<UUID> shopIds, Consumer<ShopRow> shopSink, Consumer<ShopItemRow> itemSink) throws SQLException {
+        // One IN list per batch keeps the statement under the bind variable limit
+        List<UUID> ids = new ArrayList<>(shopIds);
+        withConnection((connection, statements) -> {
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                streamRows(connection, ids.subList(from, Math.min(ids.size(), from + batchSize)), shopSink, itemSink);
+            }
+            return null;
+        });
+    }
+
+    private void streamRows(Connection connection, List<UUID> requested, Consumer<ShopRow> shopSink, Consumer<ShopItemRow> itemSink) throws SQLException {
+        Set<UUID> shopIds = new HashSet<>();
+        String sql = "SELECT * FROM shops WHERE is_active = TRUE AND shop_id IN (" + placeholders(requested.size()) + ")";
+
+        try (PreparedStatement stmt = prepareStreaming(connection, sql)) {
+            bindKeys(stmt, requested);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ShopRow row = readShopRow(rs);
+                    shopIds.add(row.getShopId());
+                    shopSink.accept(row);
+                }
+            }
+
+        } catch (SQLException e) {
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to load shops: " + e.getMessage());
+            throw e;
+        }
+
+        if (shopIds.isEmpty()) {
+            return;
+        }
+
+        // Listed items of the whole batch in one pass instead of one query per shop
+        sql = "SELECT i.*, ib.data AS item_ref_data, pb.data AS price_ref_data FROM shop_items i " +
+            "LEFT JOIN item_blobs ib ON ib.fingerprint = i.item_ref " +
+            "LEFT JOIN item_blobs pb ON pb.fingerprint = i.price_ref " +
+            "WHERE i.is_available = TRUE AND i.quantity > 0 AND i.shop_id IN (" + placeholders(requested.size()) + ")";
+
+        try (PreparedStatement stmt = prepareStreaming(connection, sql)) {
+            bindKeys(stmt, requested);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    // Items of inactive shops are skipped before anything is deserialized
+                    UUID shopId = keys.read(rs, "shop_id");
+                    if (shopIds.contains(shopId)) {
+                        itemSink.accept(readShopItemRow(rs, shopId));
+                    }
+                }
+            }
+
+        } catch (SQLException e) {
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to load shop items: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private void bindKeys(PreparedStatement stmt, List<UUID> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) {
+            keys.bind(stmt, i + 1, ids.get(i));
+        }
+    }
+
+    /**
+     * Prepares a forward-only query that streams rows instead of buffering the whole result.
+     */
+    private PreparedStatement prepareStreaming(Connection connection, String sql) throws SQLException {
+        PreparedStatement stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(dialect.streamingFetchSize());
+        return stmt;
+    }
+    
+    private ShopRow readShopRow(ResultSet rs) throws SQLException {
+        return new ShopRow(
+            keys.read(rs, "shop_id"),
+            keys.read(rs, "owner_id"),
+            rs.getString("owner_name"),
+            rs.getString("world_name"),
+            rs.getInt("x"),
+            rs.getInt("y"),
+            rs.getInt("z"),
+            rs.getBoolean("is_active"),
+            rs.getLong("created_at"),
+            rs.getLong("last_updated"),
+            rs.getString("revenue_data"),
+            rs.getBytes("revenue_blob"),
+            rs.getLong("version"));
+    }
+    
+    private ShopItemRow readShopItemRow(ResultSet rs, UUID shopId) throws SQLException {
+        // Rows not moved to the blob dictionary yet still hold their bytes inline
+        byte[] itemBlob = rs.getBytes("item_ref_data");
+        byte[] priceBlob = rs.getBytes("price_ref_data");
+        return new ShopItemRow(
+            keys.read(rs, "item_id"),
+            shopId,
+            rs.getString("item_data"),
+            rs.getInt("quantity"),
+            rs.getString("description"),
+            rs.getString("price_data"),
+            rs.getBoolean("is_available"),
+            itemBlob != null ? itemBlob : rs.getBytes("item_blob"),
+            priceBlob != null ? priceBlob : rs.getBytes("price_blob"),
+            rs.getString("material"),
+            rs.getInt("item_amount"),
+            rs.getString("display_name"),
+            rs.getLong("version"));
+    }
+
+    @Override
+    public void deleteShop(UUID shopId) throws SQLException {
+        inTransaction((connection, statements) -> {
+            PreparedStatement stmt = statements.prepare("UPDATE shops SET is_active = FALSE, removed_at = ?, version = version + 1 WHERE shop_id = ?");
+            stmt.setLong(1, System.currentTimeMillis());
+            keys.bind(stmt, 2, shopId);
+            stmt.executeUpdate();
+            // Revenue of a removed shop was either handed back or discarded
+            foldAllRevenue(statements, Collections.singleton(shopId));
+            recordChanges(statements, Collections.singleton(shopId));
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteShopItem(UUID shopId, UUID itemId) throws SQLException {
+        inTransaction((connection, statements) -> {
+            PreparedStatement stmt = statements.prepare("UPDATE shop_items SET is_available = FALSE, removed_at = ?, version = version + 1 WHERE shop_id = ? AND item_id = ?");
+            stmt.setLong(1, System.currentTimeMillis());
+            keys.bind(stmt, 2, shopId);
+            keys.bind(stmt, 3, itemId);
+            stmt.executeUpdate();
+            recordChanges(statements, Collections.singleton(shopId));
+            return null;
+        });
+    }
+
+    // Revenue ledger
+
+    @Override
+    public void appendRevenue(UUID shopId, List<RevenueEntry> entries, long createdAt) throws SQLException {
+        inTransaction((connection, statements) -> {
+            PreparedStatement prototypeStmt = statements.prepare(blobInsertSql);
+            // Ignored when the entry exists, a replayed journal record must not count the sale twice
+            PreparedStatement entryStmt = statements.prepare(ledgerInsertSql);
+
+            for (RevenueEntry entry : entries) {
+                bindBlob(prototypeStmt, entry.getFingerprint(), entry.getPrototype());
+                prototypeStmt.addBatch();
+
+                keys.bind(entryStmt, 1, entry.getEntryId());
+                keys.bind(entryStmt, 2, shopId);
+                entryStmt.setString(3, entry.getFingerprint());
+                entryStmt.setInt(4, entry.getAmount());
+                entryStmt.setLong(5, createdAt);
+                entryStmt.addBatch();
+            }
+            prototypeStmt.executeBatch();
+            entryStmt.executeBatch();
+            recordChanges(statements, Collections.singleton(shopId));
+            return null;
+        });
+    }
+
+    /**
+     * Marks the ledger entries the rows' revenue blobs count as folded. Runs inside the transaction
+     * that writes the blobs. Entries other servers appended after the shop was read stay pending.
+     * The folded entries stay until {@link #purgeFoldedRevenue(long)} removes them.
+     */
+    private void foldRevenue(StatementCache statements, Collection<ShopRow> rows) throws SQLException {
+        List<UUID> legacyRows = new ArrayList<>();
+        PreparedStatement stmt = statements.prepare("UPDATE revenue_ledger SET folded_at = ? WHERE entry_id = ? AND shop_id = ? AND folded_at IS NULL");
+        long now = System.currentTimeMillis();
+        int pending = 0;
+        for (ShopRow row : rows) {
+            if (row.getFoldedRevenue() == null) {
+                legacyRows.add(row.getShopId());
+                continue;
+            }
+            for (UUID entryId : row.getFoldedRevenue()) {
+                stmt.setLong(1, now);
+                keys.bind(stmt, 2, entryId);
+                keys.bind(stmt, 3, row.getShopId());
+                stmt.addBatch();
+                pending++;
+            }
+        }
+        if (pending > 0) {
+            stmt.executeBatch();
+        }
+        if (!legacyRows.isEmpty()) {
+            // Replayed records from before the entries were listed
+            foldAllRevenue(statements, legacyRows);
+        }
+    }
+
+    /**
+     * Marks every pending ledger entry of the given shops as folded.
+     */
+    private void foldAllRevenue(StatementCache statements, Collection<UUID> shopIds) throws SQLException {
+        PreparedStatement stmt = statements.prepare("UPDATE revenue_ledger SET folded_at = ? WHERE shop_id = ? AND folded_at IS NULL");
+        long now = System.currentTimeMillis();
+        for (UUID shopId : shopIds) {
+            stmt.setLong(1, now);
+            keys.bind(stmt, 2, shopId);
+            stmt.addBatch();
+        }
+        stmt.executeBatch();
+    }
+
+    @Override
+    public int purgeFoldedRevenue(long createdBefore) throws SQLException {
+        return withConnection((connection, statements) -> {
+            PreparedStatement stmt = statements.prepare("DELETE FROM revenue_ledger WHERE folded_at IS NOT NULL AND created_at < ?");
+            stmt.setLong(1, createdBefore);
+            return stmt.executeUpdate();
+        });
+    }
+
+    @Override
+    public Map<UUID, List<RevenueEntry>> loadPendingRevenue(Collection<UUID> shopIds) throws SQLException {
+        List<UUID> ids = new ArrayList<>(shopIds);
+
+        return withConnection((connection, statements) -> {
+            Map<UUID, List<RevenueEntry>> revenue = new HashMap<>();
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                List<UUID> batch = ids.subList(from, Math.min(ids.size(), from + batchSize));
+                String sql = "SELECT l.entry_id, l.shop_id, l.amount, l.fingerprint, p.data FROM revenue_ledger l " +
+                    "JOIN item_blobs p ON p.fingerprint = l.fingerprint " +
+                    "WHERE l.folded_at IS NULL AND l.shop_id IN (" + placeholders(batch.size()) + ") ORDER BY l.created_at";
+
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    bindKeys(stmt, batch);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            RevenueEntry entry = new RevenueEntry(keys.read(rs, "entry_id"), rs.getString("fingerprint"), rs.getBytes("data"), rs.getInt("amount"));
+                            revenue.computeIfAbsent(keys.read(rs, "shop_id"), k -> new ArrayList<>()).add(entry);
+                        }
+                    }
+                }
+            }
+            return revenue;
+        });
+    }
+
+    // Compaction
+
+    @Override
+    public int purgeRemovedShops(long removedBefore, int limit) throws SQLException {
+        return inTransaction((connection, statements) -> {
+            List<UUID> shopIds = selectKeys(statements,
+                "SELECT shop_id FROM shops WHERE is_active = FALSE AND removed_at < ? LIMIT ?", "shop_id", removedBefore, limit);
+            if (shopIds.isEmpty()) {
+                return 0;
+            }
+
+            // Every delete checks the shop is still removed, a save that brought it back in the meantime wins
+            String removed = "SELECT shop_id FROM shops WHERE is_active = FALSE AND shop_id IN (" + placeholders(shopIds.size()) + ")";
+            int rows = deleteKeys(connection, "DELETE FROM shop_items WHERE shop_id IN (" + removed + ")", shopIds);
+            rows += deleteKeys(connection, "DELETE FROM revenue_ledger WHERE shop_id IN (" + removed + ")", shopIds);
+            rows += deleteKeys(connection, "DELETE FROM shops WHERE is_active = FALSE AND shop_id IN (" + placeholders(shopIds.size()) + ")", shopIds);
+            return rows;
+        });
+    }
+
+    @Override
+    public int purgeDelistedItems(long delistedBefore, int limit) throws SQLException {
+        return inTransaction((connection, statements) -> {
+            List<UUID> itemIds = selectKeys(statements,
+                "SELECT item_id FROM shop_items WHERE is_available = FALSE AND removed_at < ? LIMIT ?", "item_id", delistedBefore, limit);
+            if (itemIds.isEmpty()) {
+                return 0;
+            }
+            return deleteKeys(connection, "DELETE FROM shop_items WHERE is_available = FALSE AND item_id IN (" + placeholders(itemIds.size()) + ")", itemIds);
+        });
+    }
+
+    private List<UUID> selectKeys(StatementCache statements, String sql, String column, long before, int limit) throws SQLException {
+        PreparedStatement stmt = statements.prepare(sql);
+        stmt.setLong(1, before);
+        stmt.setInt(2, limit);
+
+        List<UUID> ids = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                ids.add(keys.read(rs, column));
+            }
+        }
+        return ids;
+    }
+
+    private int deleteKeys(Connection connection, String sql, List<UUID> ids) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            bindKeys(stmt, ids);
+            return stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public int purgeUnusedBlobs(int limit) throws SQLException {
+        return inTransaction((connection, statements) -> {
+            PreparedStatement stmt = statements.prepare("SELECT b.fingerprint FROM item_blobs b WHERE " + unusedBlob("b.fingerprint") + " LIMIT ?");
+            stmt.setInt(1, limit);
+
+            List<String> fingerprints = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    fingerprints.add(rs.getString("fingerprint"));
+                }
+            }
+            if (fingerprints.isEmpty()) {
+                return 0;
+            }
+
+            // Saves that still skip these would refer to a deleted blob
+            knownBlobs.removeAll(fingerprints);
+            // Checked again, another server may have started using a blob since it was selected
+            try (PreparedStatement delete = connection.prepareStatement(
+                    "DELETE FROM item_blobs WHERE fingerprint IN (" + placeholders(fingerprints.size()) + ") AND " +
+                    unusedBlob("item_blobs.fingerprint"))) {
+                for (int i = 0; i < fingerprints.size(); i++) {
+                    delete.setString(i + 1, fingerprints.get(i));
+                }
+                return delete.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Condition that no item, price or ledger entry refers to the blob in the column.
+     */
+    private static String unusedBlob(String fingerprintColumn) {
+        return "NOT EXISTS (SELECT 1 FROM shop_items i WHERE i.item_ref = " + fingerprintColumn + ") " +
+            "AND NOT EXISTS (SELECT 1 FROM shop_items i WHERE i.price_ref = " + fingerprintColumn + ") " +
+            "AND NOT EXISTS (SELECT 1 FROM revenue_ledger l WHERE l.fingerprint = " + fingerprintColumn + ")";
+    }
+
+    @Override
+    public long reclaimSpace() throws SQLException {
+        return withConnection((connection, statements) -> dialect.reclaimSpace(connection));
+    }
+
+    // Change feed
+
+    /**
+     * Appends the shops to the change feed, inside the transaction that changed them.
+     */
+    private void recordChanges(StatementCache statements, Collection<UUID> shopIds) throws SQLException {
+        if (!changeFeed || shopIds.isEmpty()) {
+            return;
+        }
+
+        PreparedStatement stmt = statements.prepare(changeInsertSql);
+        long now = System.currentTimeMillis();
+        for (UUID shopId : shopIds) {
+            keys.bind(stmt, 1, shopId);
+            stmt.setString(2, origin);
+            stmt.setLong(3, now);
+            stmt.addBatch();
+        }
+        stmt.executeBatch();
+    }
+
+    @Override
+    public long getLatestChange() throws SQLException {
+        return withConnection((connection, statements) -> {
+            PreparedStatement stmt = statements.prepare("SELECT MAX(seq) FROM shop_changes");
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        });
+    }
+
+    @Override
+    public List<ShopChange> readChanges(long afterSequence, int limit) throws SQLException {
+        return withConnection((connection, statements) -> {
+            // The shop is read along with the entry, a shop that is gone or inactive was removed
+            PreparedStatement stmt = statements.prepare(
+                "SELECT c.seq, c.shop_id, c.origin, c.created_at, s.owner_id, s.world_name, s.x, s.y, s.z, s.is_active " +
+                "FROM shop_changes c LEFT JOIN shops s ON s.shop_id = c.shop_id WHERE c.seq > ? ORDER BY c.seq LIMIT ?");
+            stmt.setLong(1, afterSequence);
+            stmt.setInt(2, limit);
+
+            List<ShopChange> changes = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    UUID shopId = keys.read(rs, "shop_id");
+                    ShopSummary summary = rs.getBoolean("is_active") ?
+                        new ShopSummary(shopId, keys.read(rs, "owner_id"), rs.getString("world_name"),
+                            rs.getInt("x"), rs.getInt("y"), rs.getInt("z")) :
+                        null;
+                    changes.add(new ShopChange(rs.getLong("seq"), shopId, origin.equals(rs.getString("origin")),
+                        rs.getLong("created_at"), summary));
+                }
+            }
+            return changes;
+        });
+    }
+
+    @Override
+    public int purgeChanges(long createdBefore) throws SQLException {
+        return withConnection((connection, statements) -> {
+            PreparedStatement stmt = statements.prepare("DELETE FROM shop_changes WHERE created_at < ?");
+            stmt.setLong(1, createdBefore);
+            return stmt.executeUpdate();
+        });
+    }
+
+    // Players
+
+    @Override
+    public void savePlayerLocale(UUID playerId, String locale) throws SQLException {
+        withConnection((connection, statements) -> {
+            PreparedStatement stmt = statements.prepare(localeUpsertSql);
+            keys.bind(stmt, 1, playerId);
+            stmt.setString(2, locale);
+            return stmt.executeUpdate();
+        });
+    }
+
+    @Override
+    public Map<UUID, String> loadPlayerLocales() throws SQLException {
+        return withConnection((connection, statements) -> {
+            Map<UUID, String> playerLocales = new HashMap<>();
+            try (PreparedStatement stmt = connection.prepareStatement("SELECT player_id, locale FROM player_locales");
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    playerLocales.put(keys.read(rs, "player_id"), rs.getString("locale"));
+                }
+            }
+            return playerLocales;
+        });
+    }
+
+    @Override
+    public boolean hasReceivedFirstLoginMessage(UUID playerId) throws SQLException {
+        return withConnection((connection, statements) -> {
+            PreparedStatement stmt = statements.prepare("SELECT 1 FROM first_login_tracking WHERE player_id = ?");
+            keys.bind(stmt, 1, playerId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        });
+    }
+
+    @Override
+    public void recordFirstLoginMessage(UUID playerId) throws SQLException {
+        withConnection((connection, statements) -> {
+            PreparedStatement stmt = statements.prepare(firstLoginInsertSql);
+            keys.bind(stmt, 1, playerId);
+            return stmt.executeUpdate();
+        });
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+
+public class SqliteDialect extends SqlDialect {
+
+    @Override
+    public String getName() {
+        return "SQLite";
+    }
+
+    @Override
+    public String blobType() {
+        return "BLOB";
+    }
+
+    @Override
+    public String binaryKeyType() {
+        return "BLOB";
+    }
+
+    @Override
+    public String autoIncrementKey() {
+        // AUTOINCREMENT never hands out a number twice, even after the highest row was deleted
+        return "INTEGER PRIMARY KEY AUTOINCREMENT";
+    }
+
+    @Override
+    public String upsert(String table, List<String> columns, String keyColumn) {
+        return "INSERT OR REPLACE INTO " + table + " (" + columnList(columns) + ") VALUES (" + placeholders(columns.size()) + ")";
+    }
+
+    @Override
+    public String versionedUpsert(String table, List<String> columns, String keyColumn, String versionColumn) {
+        // INSERT OR REPLACE would delete the old row first and lose its version
+        return "INSERT INTO " + table + " (" + columnList(columns) + ") VALUES (" + placeholders(columns.size()) + ")" +
+            " ON CONFLICT(" + keyColumn + ") DO UPDATE SET " +
+            assignments(without(columns, versionColumn), keyColumn, "%s = excluded.%s") +
+            ", " + versionColumn + " = " + table + "." + versionColumn + " + 1";
+    }
+
+    @Override
+    public String insertIgnore(String table, List<String> columns) {
+        return "INSERT OR IGNORE INTO " + table + " (" + columnList(columns) + ") VALUES (" + placeholders(columns.size()) + ")";
+    }
+
+    @Override
+    public int streamingFetchSize() {
+        // Only a hint, the SQLite driver steps through rows lazily anyway
+        return 1000;
+    }
+
+    @Override
+    public boolean hasTransactionalDdl() {
+        return true;
+    }
+
+    @Override
+    public long measureStorageBytes(Connection connection, Collection<String> tables) throws SQLException {
+        // SQLite keeps one file, used pages is the closest thing to a per-database size
+        try (Statement stmt = connection.createStatement()) {
+            long usedPages = pragma(stmt, "page_count") - pragma(stmt, "freelist_count");
+            return usedPages * pragma(stmt, "page_size");
+        }
+    }
+
+    @Override
+    public void enableSpaceReclaim(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            // 2 is INCREMENTAL, switching an existing file over takes one full VACUUM
+            if (pragma(stmt, "auto_vacuum") != 2) {
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                stmt.execute("VACUUM");
+            }
+        }
+    }
+
+    @Override
+    public long reclaimSpace(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            long freePages = pragma(stmt, "freelist_count");
+            // Each step of the pragma frees one page, drain it or only the first one goes
+            try (ResultSet rs = stmt.executeQuery("PRAGMA incremental_vacuum")) {
+                while (rs.next()) {
+                    // Nothing to read
+                }
+            }
+            return (freePages - pragma(stmt, "freelist_count")) * pragma(stmt, "page_size");
+        }
+    }
+
+    private static long pragma(Statement stmt, String name) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
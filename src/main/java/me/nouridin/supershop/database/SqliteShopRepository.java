@@ -0,0 +1,105 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.core.DB;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+public class SqliteShopRepository extends SqlShopRepository {
+
+    // How the online backup waits out a step that finds the database locked
+    private static final int BACKUP_BUSY_SLEEP_MILLIS = 100;
+    private static final int BACKUP_BUSY_RETRIES = 50;
+    // Pause between backup steps, dropped after a few restarts
+    private static final long BACKUP_STEP_PAUSE_MILLIS = 20L;
+    private static final int BACKUP_MAX_RESTARTS = 3;
+
+    public SqliteShopRepository(supershop plugin) {
+        super(plugin, new SqliteDialect());
+    }
+
+    @Override
+    protected Connection openConnection() throws SQLException {
+        File dataFolder = plugin.getDataFolder();
+        if (!dataFolder.exists()) {
+            dataFolder.mkdirs();
+        }
+        
+        String url = "jdbc:sqlite:" + dataFolder.getAbsolutePath() + "/shops.db";
+        return DriverManager.getConnection(url);
+    }
+
+    /**
+     * Copies the database with SQLite's online backup API. Each step copies {@code stepSize}
+     * pages under a short read lock and the copy pauses between steps, so writes from the
+     * database thread get the file in between. A write from another connection makes SQLite
+     * start the copy over. Once that happened a few times the pauses stop, so a busy server
+     * cannot keep a large copy from ever finishing.
+     */
+    @Override
+    public boolean backup(File target, int stepSize) throws SQLException {
+        // Own connection, the driver holds this connection's lock for the whole copy
+        try (Connection connection = openConnection()) {
+            DB database = connection.unwrap(SQLiteConnection.class).getDatabase();
+            int result;
+            try {
+                result = database.backup("main", target.getAbsolutePath(), new StepPause(),
+                    BACKUP_BUSY_SLEEP_MILLIS, BACKUP_BUSY_RETRIES, Math.max(1, stepSize));
+            } catch (NoSuchMethodError e) {
+                // Drivers before 3.42 have no step size and copy 100 pages per step
+                result = database.backup("main", target.getAbsolutePath(), new StepPause());
+            }
+            if (result != 0) {
+                throw new SQLException("SQLite backup failed with result code " + result);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called by the driver after every step, while no lock is held.
+     */
+    private static final class StepPause implements DB.ProgressObserver {
+
+        private int lastRemaining = Integer.MAX_VALUE;
+        private int restarts;
+
+        @Override
+        public void progress(int remaining, int pageCount) {
+            // More pages left than after the previous step, a write restarted the copy
+            if (remaining > lastRemaining) {
+                restarts++;
+            }
+            lastRemaining = remaining;
+            if (remaining == 0 || restarts >= BACKUP_MAX_RESTARTS) {
+                return;
+            }
+
+            try {
+                Thread.sleep(BACKUP_STEP_PAUSE_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes that could not reach the database, kept in order in a file next to the config.
+ * Every entry is synced to disk before the write counts as accepted, so an outage that
+ * outlasts the server does not lose them. The file is replayed against the database as
+ * soon as it is reachable again and removed once it is empty.
+ * <p>
+ * Record layout: int payload length, byte write type, payload.
+ */
+public class WriteBacklog {
+
+    @FunctionalInterface
+    public interface Replayer {
+        void apply(WriteCodec.Type type, DataInput in) throws IOException, SQLException;
+    }
+
+    private static final class Entry {
+        private final WriteCodec.Type type;
+        private final byte[] payload;
+
+        private Entry(WriteCodec.Type type, byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    private final supershop plugin;
+    private final File file;
+    private final List<Entry> entries = new ArrayList<>();
+    private volatile int size;
+
+    public WriteBacklog(supershop plugin, File file) {
+        this.plugin = plugin;
+        this.file = file;
+    }
+
+    /**
+     * Reads entries left over from a previous run.
+     */
+    public void load() throws IOException {
+        entries.clear();
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    Entry entry = readEntry(in);
+                    if (entry == null) {
+                        break;
+                    }
+                    entries.add(entry);
+                }
+            }
+        }
+        size = entries.size();
+    }
+
+    private Entry readEntry(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        try {
+            WriteCodec.Type type = WriteCodec.Type.values()[in.readUnsignedByte()];
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            return new Entry(type, payload);
+        } catch (EOFException | ArrayIndexOutOfBoundsException e) {
+            // The server died halfway through this entry, the write was never accepted
+            plugin.getMessageUtils().sendConsoleMessage("&cIgnoring a truncated entry at the end of " + file.getName() + ".");
+            return null;
+        }
+    }
+
+    public void append(WriteCodec.Type type, WriteCodec.Payload payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        payload.write(new DataOutputStream(bytes));
+        Entry entry = new Entry(type, bytes.toByteArray());
+
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            writeEntry(data, entry);
+            data.flush();
+            out.getChannel().force(false);
+        }
+        entries.add(entry);
+        size = entries.size();
+    }
+
+    /**
+     * Applies the entries in order. Entries that were applied are removed even if a later one fails,
+     * so nothing is written twice.
+     *
+     * @return number of entries applied
+     */
+    public int replay(Replayer replayer) throws IOException, SQLException {
+        int applied = 0;
+        try {
+            for (Entry entry : entries) {
+                try {
+                    replayer.apply(entry.type, new DataInputStream(new ByteArrayInputStream(entry.payload)));
+                } catch (IOException e) {
+                    plugin.getMessageUtils().sendConsoleMessage("&cDropping unreadable " + entry.type + " entry from " + file.getName() + ": " + e.getMessage());
+                }
+                applied++;
+            }
+        } finally {
+            if (applied > 0) {
+                entries.subList(0, applied).clear();
+                size = entries.size();
+                rewrite();
+            }
+        }
+        return applied;
+    }
+
+    private void rewrite() throws IOException {
+        if (entries.isEmpty()) {
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            for (Entry entry : entries) {
+                writeEntry(data, entry);
+            }
+            data.flush();
+            out.getChannel().force(false);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeInt(entry.payload.length);
+        out.writeByte(entry.type.ordinal());
+        out.write(entry.payload);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
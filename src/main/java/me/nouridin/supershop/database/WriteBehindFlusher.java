@@ -0,0 +1,147 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.models.Shop;
+import me.nouridin.supershop.models.ShopItem;
+import me.nouridin.supershop.supershop;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Collects items that changed since the last flush and writes each of them once per
+ * flush interval, no matter how many times they changed in between. Shop rows change
+ * rarely and are written right away with {@link #saveNow}.
+ * Everything here runs on the server thread, the actual writes go through the
+ * {@link PersistenceExecutor}. Only a server that owns its rows writes behind, servers
+ * sharing a database write every change with a version check instead.
+ */
+public class WriteBehindFlusher {
+
+    private final supershop plugin;
+    private final Map<UUID, PendingItem> dirtyItems = new LinkedHashMap<>();
+    private final int maxPendingEntities;
+    private BukkitTask flushTask;
+
+    // Metrics
+    private long coalescedChanges;
+    private long flushedEntities;
+
+    private static class PendingItem {
+        private final Shop shop;
+        private final ShopItem item;
+
+        private PendingItem(Shop shop, ShopItem item) {
+            this.shop = shop;
+            this.item = item;
+        }
+    }
+
+    public WriteBehindFlusher(supershop plugin) {
+        this.plugin = plugin;
+        this.maxPendingEntities = plugin.getConfigManager().getWriteBehindMaxPending();
+    }
+
+    public void start() {
+        long intervalTicks = Math.max(1, plugin.getConfigManager().getWriteBehindMaxStalenessSeconds()) * 20L;
+        flushTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::flush, intervalTicks, intervalTicks);
+    }
+
+    public void markDirty(Shop shop, ShopItem item) {
+        if (item.markDirty()) {
+            dirtyItems.put(item.getItemId(), new PendingItem(shop, item));
+        } else {
+            coalescedChanges++;
+        }
+        flushIfFull();
+    }
+
+    /**
+     * Drops a pending item write, used when the item is deleted before the flush.
+     */
+    public void forget(ShopItem item) {
+        dirtyItems.remove(item.getItemId());
+        item.clearDirty();
+    }
+
+    /**
+     * Drops the pending writes of the shop's items, used when the shop is removed.
+     */
+    public void forget(Shop shop) {
+        for (ShopItem item : shop.getItems()) {
+            forget(item);
+        }
+    }
+
+    /**
+     * Writes the shop right away instead of waiting for the next flush.
+     */
+    public CompletableFuture<Void> saveNow(Shop shop) {
+        flushedEntities++;
+        return plugin.getDatabaseManager().saveShop(shop);
+    }
+
+    private void flushIfFull() {
+        if (dirtyItems.size() >= maxPendingEntities) {
+            flush();
+        }
+    }
+
+    public CompletableFuture<Void> flush() {
+        // An empty batch still checkpoints the journal after direct writes
+        if (dirtyItems.isEmpty() && !plugin.getDatabaseManager().hasUncheckpointedWrites()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Map<UUID, List<ShopItem>> itemsByShop = new HashMap<>();
+        for (PendingItem pending : dirtyItems.values()) {
+            pending.item.clearDirty();
+            itemsByShop.computeIfAbsent(pending.shop.getShopId(), k -> new ArrayList<>()).add(pending.item);
+        }
+
+        flushedEntities += dirtyItems.size();
+        dirtyItems.clear();
+
+        // One transaction per flush
+        return plugin.getDatabaseManager().saveBatch(Collections.emptyList(), itemsByShop).thenApply(result -> null);
+    }
+
+    /**
+     * Stops the timer and forces out every pending change, called from onDisable.
+     */
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        flush();
+    }
+
+    public int getPendingCount() {
+        return dirtyItems.size();
+    }
+
+    public long getCoalescedChanges() {
+        return coalescedChanges;
+    }
+
+    public long getFlushedEntities() {
+        return flushedEntities;
+    }
+}
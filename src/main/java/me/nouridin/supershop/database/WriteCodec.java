@@ -0,0 +1,168 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.database;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Serialized form of the repository writes, shared by the {@link WriteBacklog} and the
+ * {@link MutationJournal}. Every write is stored with the rows it carries, so applying a
+ * record again leaves the database in the same state.
+ */
+public final class WriteCodec {
+
+    public enum Type {
+        SAVE_SHOP, SAVE_SHOP_ITEM, SAVE_BATCH, DELETE_SHOP, DELETE_SHOP_ITEM,
+        APPEND_REVENUE, SAVE_PLAYER_LOCALE, RECORD_FIRST_LOGIN,
+        // Shop rows followed by the ledger entries they fold. Older SAVE_SHOP and SAVE_BATCH
+        // records have no such list and fold every pending entry of the shop when replayed
+        SAVE_SHOP_FOLDING, SAVE_BATCH_FOLDING
+    }
+
+    @FunctionalInterface
+    public interface Payload {
+        void write(DataOutput out) throws IOException;
+    }
+
+    private WriteCodec() {
+    }
+
+    /**
+     * Payload of a {@link Type#SAVE_SHOP_FOLDING} record.
+     */
+    public static Payload saveShop(ShopRow row) {
+        return out -> {
+            RowCodec.writeShopRow(out, row);
+            RowCodec.writeFoldedRevenue(out, row);
+        };
+    }
+
+    public static Payload saveShopItem(ShopItemRow row) {
+        return out -> RowCodec.writeShopItemRow(out, row);
+    }
+
+    /**
+     * Payload of a {@link Type#SAVE_BATCH_FOLDING} record.
+     */
+    public static Payload saveBatch(List<ShopRow> shops, List<ShopItemRow> items) {
+        return out -> {
+            out.writeInt(shops.size());
+            for (ShopRow row : shops) {
+                RowCodec.writeShopRow(out, row);
+                RowCodec.writeFoldedRevenue(out, row);
+            }
+            out.writeInt(items.size());
+            for (ShopItemRow row : items) {
+                RowCodec.writeShopItemRow(out, row);
+            }
+        };
+    }
+
+    public static Payload deleteShop(UUID shopId) {
+        return out -> RowCodec.writeUuid(out, shopId);
+    }
+
+    public static Payload deleteShopItem(UUID shopId, UUID itemId) {
+        return out -> {
+            RowCodec.writeUuid(out, shopId);
+            RowCodec.writeUuid(out, itemId);
+        };
+    }
+
+    public static Payload appendRevenue(UUID shopId, List<RevenueEntry> entries, long createdAt) {
+        return out -> {
+            RowCodec.writeUuid(out, shopId);
+            out.writeLong(createdAt);
+            out.writeInt(entries.size());
+            for (RevenueEntry entry : entries) {
+                RowCodec.writeRevenueEntry(out, entry);
+            }
+        };
+    }
+
+    public static Payload savePlayerLocale(UUID playerId, String locale) {
+        return out -> {
+            RowCodec.writeUuid(out, playerId);
+            out.writeUTF(locale);
+        };
+    }
+
+    public static Payload recordFirstLogin(UUID playerId) {
+        return out -> RowCodec.writeUuid(out, playerId);
+    }
+
+    /**
+     * Decodes one record and runs it against the repository.
+     */
+    public static void apply(Type type, DataInput in, ShopRepository repository) throws IOException, SQLException {
+        switch (type) {
+            case SAVE_SHOP:
+            case SAVE_SHOP_FOLDING:
+                repository.saveShop(readShopRow(in, type == Type.SAVE_SHOP_FOLDING));
+                break;
+            case SAVE_SHOP_ITEM:
+                repository.saveShopItem(RowCodec.readShopItemRow(in));
+                break;
+            case SAVE_BATCH:
+            case SAVE_BATCH_FOLDING: {
+                List<ShopRow> shops = new ArrayList<>();
+                for (int i = in.readInt(); i > 0; i--) {
+                    shops.add(readShopRow(in, type == Type.SAVE_BATCH_FOLDING));
+                }
+                List<ShopItemRow> items = new ArrayList<>();
+                for (int i = in.readInt(); i > 0; i--) {
+                    items.add(RowCodec.readShopItemRow(in));
+                }
+                repository.saveBatch(shops, items);
+                break;
+            }
+            case DELETE_SHOP:
+                repository.deleteShop(RowCodec.readUuid(in));
+                break;
+            case DELETE_SHOP_ITEM:
+                repository.deleteShopItem(RowCodec.readUuid(in), RowCodec.readUuid(in));
+                break;
+            case APPEND_REVENUE: {
+                UUID shopId = RowCodec.readUuid(in);
+                long createdAt = in.readLong();
+                List<RevenueEntry> entries = new ArrayList<>();
+                for (int i = in.readInt(); i > 0; i--) {
+                    entries.add(RowCodec.readRevenueEntry(in));
+                }
+                repository.appendRevenue(shopId, entries, createdAt);
+                break;
+            }
+            case SAVE_PLAYER_LOCALE:
+                repository.savePlayerLocale(RowCodec.readUuid(in), in.readUTF());
+                break;
+            case RECORD_FIRST_LOGIN:
+                repository.recordFirstLoginMessage(RowCodec.readUuid(in));
+                break;
+        }
+    }
+
+    private static ShopRow readShopRow(DataInput in, boolean folding) throws IOException {
+        ShopRow row = RowCodec.readShopRow(in);
+        return folding ? RowCodec.readFoldedRevenue(in, row) : row;
+    }
+}
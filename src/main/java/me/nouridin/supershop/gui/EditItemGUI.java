@@ -33,6 +33,7 @@ public class EditItemGUI extends BaseGUI {
     private final Shop shop;
     private final ShopItem shopItem;
     private List<ItemStack> priceItems;
+    private int originalQuantity; // Stock when the editor opened, quantity minus this is what the owner added
     private int quantity;
     private String description;
 
@@ -44,7 +45,8 @@ public class EditItemGUI extends BaseGUI {
         this.shop = shop;
         this.shopItem = shopItem;
         this.priceItems = new ArrayList<>(shopItem.getPriceItems());
-        this.quantity = shopItem.getQuantity();
+        this.originalQuantity = shopItem.getQuantity();
+        this.quantity = originalQuantity;
         this.description = shopItem.getDescription();
 
         // Make price slots interactable
@@ -291,10 +293,13 @@ public class EditItemGUI extends BaseGUI {
                 handleEditDescription();
                 break;
             case 39: // Toggle availability
-                shopItem.setAvailable(!shopItem.isAvailable());
-                plugin.getDatabaseManager().saveShopItem(shop.getShopId(), shopItem);
-                plugin.getMessageUtils().sendMessage(player, "gui.edititem.availability-toggled");
-                refresh();
+                boolean available = !shopItem.isAvailable();
+                plugin.getShopManager().editItem(player, shop, shopItem, item -> item.setAvailable(available), saved -> {
+                    if (saved) {
+                        plugin.getMessageUtils().sendMessage(player, "gui.edititem.availability-toggled");
+                    }
+                    refresh();
+                });
                 break;
             case 49: // Save changes
                 handleSaveChanges();
@@ -332,18 +337,27 @@ public class EditItemGUI extends BaseGUI {
             return;
         }
 
-        // Update shop item
-        shopItem.setQuantity(quantity);
-        shopItem.setPriceItems(priceItems);
-        shopItem.setDescription(description);
-
-        // Save to database
-        plugin.getDatabaseManager().saveShopItem(shop.getShopId(), shopItem);
+        // Stock is changed by what was added or taken back here, sales made meanwhile are kept
+        int stockChange = quantity - originalQuantity;
+        List<ItemStack> newPriceItems = new ArrayList<>(priceItems);
+        String newDescription = description;
+
+        plugin.getShopManager().editItem(player, shop, shopItem, item -> {
+            item.setQuantity(Math.max(0, item.getQuantity() + stockChange));
+            item.setPriceItems(newPriceItems);
+            item.setDescription(newDescription);
+        }, saved -> {
+            if (!saved) {
+                settleRejectedStock(stockChange);
+                refresh();
+                return;
+            }
 
-        plugin.getMessageUtils().sendMessage(player, "gui.edititem.item-updated-success");
+            plugin.getMessageUtils().sendMessage(player, "gui.edititem.item-updated-success");
 
-        close();
-        new ShopManagementGUI(plugin, player, shop).open();
+            close();
+            new ShopManagementGUI(plugin, player, shop).open();
+        });
 
         int available = countItemInInventory(player, shopItem.getItemStack());
         if (quantity > available) {
@@ -384,6 +398,26 @@ public class EditItemGUI extends BaseGUI {
     }
 
 
+    /**
+     * Undoes the stock moved between the owner and the shop for an edit that was not saved,
+     * and starts the editor over from the stock the shop has now.
+     */
+    private void settleRejectedStock(int stockChange) {
+        ItemStack item = shopItem.getItemStack().clone();
+        if (stockChange > 0) {
+            item.setAmount(stockChange);
+            for (ItemStack drop : player.getInventory().addItem(item).values()) {
+                player.getWorld().dropItemNaturally(player.getLocation(), drop);
+            }
+        } else if (stockChange < 0) {
+            // Only what the owner still carries can be taken back
+            item.setAmount(-stockChange);
+            player.getInventory().removeItem(item);
+        }
+        originalQuantity = shopItem.getQuantity();
+        quantity = originalQuantity;
+    }
+
     private int countItemInInventory(Player player, ItemStack target) {
         int count = 0;
         for (ItemStack item : player.getInventory().getContents()) {
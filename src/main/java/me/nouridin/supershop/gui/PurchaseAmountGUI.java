@@ -172,11 +172,12 @@ public class PurchaseAmountGUI extends BaseGUI {
             return;
         }
 
-        if (plugin.getShopManager().processPurchase(player, shop, shopItem, selectedAmount)) {
+        int amount = selectedAmount;
+        plugin.getShopManager().processPurchase(player, shop, shopItem, amount, () -> {
             close();
             plugin.getMessageUtils().sendMessage(player, "gui.purchaseamount.purchase-success.title");
-            plugin.getMessageUtils().sendMessage(player, "gui.purchaseamount.purchase-success.summary", String.valueOf(selectedAmount), shopItem.getFormattedItemName());
-        }
+            plugin.getMessageUtils().sendMessage(player, "gui.purchaseamount.purchase-success.summary", String.valueOf(amount), shopItem.getFormattedItemName());
+        });
     }
 
     private String calculateTotalCost() {
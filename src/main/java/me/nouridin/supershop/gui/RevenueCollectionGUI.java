@@ -200,9 +200,11 @@ public class RevenueCollectionGUI extends BaseGUI {
             return;
         }
         
-        if (plugin.getShopManager().collectRevenue(shop.getShopId(), player)) {
-            close();
-            new ShopManagementGUI(plugin, player, shop).open();
-        }
+        plugin.getShopManager().collectRevenue(shop.getShopId(), player, collected -> {
+            if (collected) {
+                close();
+                new ShopManagementGUI(plugin, player, shop).open();
+            }
+        });
     }
 }
\ No newline at end of file
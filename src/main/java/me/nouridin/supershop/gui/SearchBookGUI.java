@@ -16,9 +16,11 @@
 
 package me.nouridin.supershop.gui;
 
+import me.nouridin.supershop.managers.ListingIndex;
 import me.nouridin.supershop.models.Shop;
 import me.nouridin.supershop.models.ShopItem;
 import me.nouridin.supershop.supershop;
+import me.nouridin.supershop.util.RankedResults;
 import me.nouridin.supershop.util.SearchResult;
 import net.kyori.adventure.text.Component;
 import org.bukkit.Material;
@@ -29,7 +31,9 @@ import org.bukkit.inventory.meta.ItemMeta;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -324,11 +328,13 @@ public class SearchBookGUI extends BaseGUI {
     }
 
     private void handlePopularItems() {
-        List<Material> popularMaterials = plugin.getSearchManager().getPopularItems();
-        if (!popularMaterials.isEmpty()) {
-            filteredResults = allResults.stream()
-                .filter(result -> popularMaterials.contains(result.getShopItem().getItemStack().getType()))
-                .collect(Collectors.toList());
+        List<Material> popularItems = plugin.getSearchManager().getPopularItems();
+        if (!popularItems.isEmpty()) {
+            // Read from the material buckets, ranked by applySorting
+            filteredResults = new ArrayList<>();
+            for (Material material : popularItems) {
+                filteredResults.addAll(plugin.getSearchManager().searchByMaterial(material, searcher.getLocation()));
+            }
 
             searchQuery = plugin.getLocaleManager().getMessage(player.getUniqueId(), "gui.search.popular-items-search-query");
             currentPage = 0;
@@ -375,9 +381,7 @@ public class SearchBookGUI extends BaseGUI {
     }
 
     private void handleNearbyShops() {
-        filteredResults = allResults.stream()
-            .filter(result -> result.getDistance() <= 1000)
-            .collect(Collectors.toList());
+        filteredResults = plugin.getSearchManager().getNearbyShops(searcher.getLocation(), 1000);
 
         searchQuery = plugin.getLocaleManager().getMessage(player.getUniqueId(), "gui.search.nearby-shops-search-query");
         currentPage = 0;
@@ -454,15 +458,12 @@ public class SearchBookGUI extends BaseGUI {
 
         // Apply search filter
         if (!searchQuery.isEmpty() && !searchQuery.equals(plugin.getLocaleManager().getMessage(player.getUniqueId(), "gui.search.popular-items-search-query")) && !searchQuery.equals(plugin.getLocaleManager().getMessage(player.getUniqueId(), "gui.search.nearby-shops-search-query"))) {
-            String query = searchQuery.toLowerCase();
+            Set<ShopItem> matches = new HashSet<>();
+            for (ListingIndex.Listing listing : plugin.getShopManager().getListingIndex().matchText(searchQuery)) {
+                matches.add(listing.getItem());
+            }
             filteredResults = filteredResults.stream()
-                .filter(result -> {
-                    String itemName = result.getItemName().toLowerCase();
-                    String description = result.getDescription().toLowerCase();
-                    String materialName = result.getShopItem().getItemStack().getType().name().toLowerCase().replace("_", " ");
-
-                    return itemName.contains(query) || description.contains(query) || materialName.contains(query);
-                })
+                .filter(result -> matches.contains(result.getShopItem()))
                 .collect(Collectors.toList());
         }
 
@@ -477,26 +478,34 @@ public class SearchBookGUI extends BaseGUI {
     }
 
     private void applySorting() {
+        // Re-sorting starts from the matches, pages are only ranked once they are shown
+        List<SearchResult> matches = filteredResults instanceof RankedResults
+            ? ((RankedResults) filteredResults).getCandidates()
+            : filteredResults;
+
+        Comparator<SearchResult> order;
         switch (sortType) {
-            case DISTANCE:
-                filteredResults.sort(Comparator.comparingDouble(SearchResult::getDistance));
-                break;
             case NAME_AZ:
-                filteredResults.sort(Comparator.comparing(SearchResult::getItemName));
+                order = RankedResults.BY_NAME;
                 break;
             case NAME_ZA:
-                filteredResults.sort(Comparator.comparing(SearchResult::getItemName).reversed());
+                order = RankedResults.BY_NAME.reversed();
                 break;
             case QUANTITY:
-                filteredResults.sort(Comparator.comparingInt(SearchResult::getQuantity).reversed());
+                order = RankedResults.BY_QUANTITY.reversed();
                 break;
             case PRICE_LOW:
-                filteredResults.sort(Comparator.comparing(result -> result.getShopItem().getPriceItems().size()));
+                order = RankedResults.BY_PRICE;
                 break;
             case PRICE_HIGH:
-                filteredResults.sort(Comparator.comparing((SearchResult result) -> result.getShopItem().getPriceItems().size()).reversed());
+                order = RankedResults.BY_PRICE.reversed();
+                break;
+            case DISTANCE:
+            default:
+                order = RankedResults.BY_DISTANCE;
                 break;
         }
+        filteredResults = new RankedResults(matches, order, itemsPerPage);
     }
 
     private boolean canPlayerAfford(ShopItem shopItem) {
@@ -223,9 +223,7 @@ public class ShopBrowseGUI extends BaseGUI {
         }
 
         // Process purchase
-        if (plugin.getShopManager().processPurchase(player, shop, shopItem, quantity)) {
-            refresh(); // Refresh to update quantities
-        }
+        plugin.getShopManager().processPurchase(player, shop, shopItem, quantity, this::refresh); // Refresh to update quantities
     }
 
     private ShopItem getShopItemFromSlot(int slot) {
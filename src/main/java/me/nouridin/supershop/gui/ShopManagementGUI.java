@@ -239,13 +239,14 @@ public class ShopManagementGUI extends BaseGUI {
     }
 
     private void handleToggleStatus() {
-        shop.setActive(!shop.isActive());
-        plugin.getDatabaseManager().saveShop(shop);
-
-        String status = shop.isActive() ? plugin.getLocaleManager().getMessage(player.getUniqueId(), "gui.activated") : plugin.getLocaleManager().getMessage(player.getUniqueId(), "gui.deactivated");
-        plugin.getMessageUtils().sendMessage(player, "gui.shopmanagement.shop-status-changed", status);
-
-        refresh();
+        boolean active = !shop.isActive();
+        plugin.getShopManager().editShop(player, shop, edited -> edited.setActive(active), saved -> {
+            if (saved) {
+                String status = shop.isActive() ? plugin.getLocaleManager().getMessage(player.getUniqueId(), "gui.activated") : plugin.getLocaleManager().getMessage(player.getUniqueId(), "gui.deactivated");
+                plugin.getMessageUtils().sendMessage(player, "gui.shopmanagement.shop-status-changed", status);
+            }
+            refresh();
+        });
     }
 
     private void handleCollectRevenue() {
@@ -254,9 +255,11 @@ public class ShopManagementGUI extends BaseGUI {
             return;
         }
 
-        if (plugin.getShopManager().collectRevenue(shop.getShopId(), player)) {
-            refresh(); // Refresh to update the revenue display
-        }
+        plugin.getShopManager().collectRevenue(shop.getShopId(), player, collected -> {
+            if (collected) {
+                refresh(); // Refresh to update the revenue display
+            }
+        });
     }
 
     private void handleRemoveShop() {
@@ -351,13 +354,14 @@ public class ShopManagementGUI extends BaseGUI {
     private void handleItemManagement(ShopItem shopItem, InventoryClickEvent event) {
         if (event.isShiftClick()) {
             // Toggle availability
-            shopItem.setAvailable(!shopItem.isAvailable());
-            plugin.getDatabaseManager().saveShopItem(shop.getShopId(), shopItem);
-
-            String status = shopItem.isAvailable() ? plugin.getLocaleManager().getMessage(player.getUniqueId(), "gui.available") : plugin.getLocaleManager().getMessage(player.getUniqueId(), "gui.unavailable");
-            plugin.getMessageUtils().sendMessage(player, "gui.shopmanagement.item-marked-as", status);
-
-            refresh();
+            boolean available = !shopItem.isAvailable();
+            plugin.getShopManager().editItem(player, shop, shopItem, item -> item.setAvailable(available), saved -> {
+                if (saved) {
+                    String status = shopItem.isAvailable() ? plugin.getLocaleManager().getMessage(player.getUniqueId(), "gui.available") : plugin.getLocaleManager().getMessage(player.getUniqueId(), "gui.unavailable");
+                    plugin.getMessageUtils().sendMessage(player, "gui.shopmanagement.item-marked-as", status);
+                }
+                refresh();
+            });
         } else if (event.isRightClick()) {
             // Remove item
             if (plugin.getShopManager().removeItemFromShop(shop.getShopId(), shopItem.getItemId(), player)) {
@@ -53,14 +53,29 @@ public class ChestInteractListener implements Listener {
         Shop shop = plugin.getShopManager().getShopAtLocation(clickedBlock.getLocation());
 
         if (shop == null) {
+            if (!plugin.getShopManager().isShopAtLocation(clickedBlock.getLocation())) {
+                return;
+            }
+
+            // Not loaded yet, open it once it is read
+            event.setCancelled(true);
+            boolean sneaking = player.isSneaking();
+            plugin.getShopManager().getShopAtLocation(clickedBlock.getLocation(), loaded -> {
+                if (loaded != null && player.isOnline()) {
+                    openShop(player, loaded, sneaking);
+                }
+            });
             return;
         }
 
         event.setCancelled(true);
+        openShop(player, shop, player.isSneaking());
+    }
 
+    private void openShop(Player player, Shop shop, boolean sneaking) {
         if (shop.getOwnerId().equals(player.getUniqueId())) {
             // Owner can always open, even if inactive
-            if (player.isSneaking()) {
+            if (sneaking) {
                 showQuickShopInfo(player, shop);
             } else {
                 showShopManagement(player, shop);
@@ -85,13 +100,18 @@ public class ChestInteractListener implements Listener {
             return;
         }
 
+        Player player = event.getPlayer();
         Shop shop = plugin.getShopManager().getShopAtLocation(block.getLocation());
         if (shop == null) {
+            if (plugin.getShopManager().isShopAtLocation(block.getLocation())) {
+                // Protected while it loads, the next attempt sees the owner
+                event.setCancelled(true);
+                plugin.getMessageUtils().sendMessage(player, "shop.loading");
+                plugin.getShopManager().getShopAtLocation(block.getLocation(), loaded -> { });
+            }
             return;
         }
 
-        Player player = event.getPlayer();
-
         if (!shop.getOwnerId().equals(player.getUniqueId())) {
             event.setCancelled(true);
             plugin.getMessageUtils().sendMessage(player, "listener.chest-interact.cannot-break-not-owner");
@@ -34,13 +34,19 @@ public class FirstLoginListener implements Listener {
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
 
-        // Check if the player has received the first login message before
-        if (!plugin.getDatabaseManager().hasReceivedFirstLoginMessage(player.getUniqueId())) {
-            // Send the welcome message
-            plugin.getMessageUtils().sendMessage(player, "first-login-welcome");
-
-            // Record that the player has received the message
-            plugin.getDatabaseManager().recordFirstLoginMessage(player.getUniqueId());
-        }
+        // Check if the player has received the first login message before, off the server thread
+        plugin.getDatabaseManager().getPersistence().thenSync(
+            plugin.getDatabaseManager().hasReceivedFirstLoginMessage(player.getUniqueId()),
+            received -> {
+                if (received) {
+                    return;
+                }
+
+                // Send the welcome message
+                plugin.getMessageUtils().sendMessage(player, "first-login-welcome");
+
+                // Record that the player has received the message
+                plugin.getDatabaseManager().recordFirstLoginMessage(player.getUniqueId());
+            });
     }
 }
\ No newline at end of file
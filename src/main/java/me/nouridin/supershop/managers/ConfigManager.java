@@ -45,11 +45,42 @@ public class ConfigManager {
         config.addDefault("database.database", "supershop");
         config.addDefault("database.username", "root");
         config.addDefault("database.password", "");
+        config.addDefault("database.executor.queue-capacity", 10000);
+        config.addDefault("database.executor.shutdown-timeout-seconds", 30);
+        config.addDefault("database.batch-size", 500);
+        config.addDefault("database.compact-keys", false);
+        config.addDefault("database.decoder-threads", 0);
+        config.addDefault("database.write-behind.max-staleness-seconds", 5);
+        config.addDefault("database.write-behind.max-pending", 5000);
+        config.addDefault("database.pool.max-size", 2);
+        config.addDefault("database.pool.connection-timeout-ms", 5000);
+        config.addDefault("database.pool.socket-timeout-seconds", 60);
+        config.addDefault("database.pool.validation-timeout-seconds", 2);
+        config.addDefault("database.pool.idle-timeout-seconds", 600);
+        config.addDefault("database.circuit-breaker.failure-threshold", 3);
+        config.addDefault("database.circuit-breaker.retry-seconds", 10);
+        config.addDefault("database.journal.enabled", true);
+        config.addDefault("database.journal.sync-interval-ms", 50);
+        config.addDefault("database.journal.segment-size-kb", 4096);
+        config.addDefault("database.compaction.retention-days", 30);
+        config.addDefault("database.compaction.interval-minutes", 360);
+        config.addDefault("database.compaction.batch-size", 100);
+        config.addDefault("database.compaction.incremental-vacuum", false);
+        config.addDefault("database.backup.enabled", true);
+        config.addDefault("database.backup.interval-hours", 24);
+        config.addDefault("database.backup.keep", 7);
+        config.addDefault("database.backup.step-size", 256);
+        config.addDefault("database.change-feed.enabled", false);
+        config.addDefault("database.change-feed.server-id", "");
+        config.addDefault("database.change-feed.poll-interval-seconds", 2);
+        config.addDefault("database.change-feed.retention-minutes", 60);
         
         config.addDefault("shop.max-shops-per-player", 10);
         config.addDefault("shop.max-items-per-shop", 54);
         config.addDefault("shop.allow-cross-world-trading", true);
         config.addDefault("shop.require-permission-to-create", false);
+        config.addDefault("shop.unload-empty-worlds", true);
+        config.addDefault("shop.world-unload-delay-seconds", 300);
         
         config.addDefault("search-book.enabled", true);
         config.addDefault("search-book.max-results", 50);
@@ -84,12 +115,46 @@ public class ConfigManager {
     public String getDatabaseName() { return config.getString("database.database", "supershop"); }
     public String getDatabaseUsername() { return config.getString("database.username", "root"); }
     public String getDatabasePassword() { return config.getString("database.password", ""); }
+    public int getDatabaseQueueCapacity() { return config.getInt("database.executor.queue-capacity", 10000); }
+    public int getDatabaseShutdownTimeoutSeconds() { return config.getInt("database.executor.shutdown-timeout-seconds", 30); }
+    public int getDatabaseBatchSize() { return config.getInt("database.batch-size", 500); }
+    public boolean isDatabaseCompactKeys() { return config.getBoolean("database.compact-keys", false); }
+    public int getDatabaseDecoderThreads() {
+        int threads = config.getInt("database.decoder-threads", 0);
+        return threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+    public int getWriteBehindMaxStalenessSeconds() { return config.getInt("database.write-behind.max-staleness-seconds", 5); }
+    public int getWriteBehindMaxPending() { return config.getInt("database.write-behind.max-pending", 5000); }
+    public int getDatabasePoolMaxSize() { return config.getInt("database.pool.max-size", 2); }
+    public int getDatabasePoolConnectionTimeoutMillis() { return config.getInt("database.pool.connection-timeout-ms", 5000); }
+    public int getDatabasePoolSocketTimeoutSeconds() { return config.getInt("database.pool.socket-timeout-seconds", 60); }
+    public int getDatabasePoolValidationTimeoutSeconds() { return config.getInt("database.pool.validation-timeout-seconds", 2); }
+    public int getDatabasePoolIdleTimeoutSeconds() { return config.getInt("database.pool.idle-timeout-seconds", 600); }
+    public int getDatabaseBreakerFailureThreshold() { return config.getInt("database.circuit-breaker.failure-threshold", 3); }
+    public int getDatabaseBreakerRetrySeconds() { return config.getInt("database.circuit-breaker.retry-seconds", 10); }
+    public boolean isJournalEnabled() { return config.getBoolean("database.journal.enabled", true); }
+    public int getJournalSyncIntervalMillis() { return config.getInt("database.journal.sync-interval-ms", 50); }
+    public int getJournalSegmentSizeKb() { return config.getInt("database.journal.segment-size-kb", 4096); }
+    public int getCompactionRetentionDays() { return config.getInt("database.compaction.retention-days", 30); }
+    public int getCompactionIntervalMinutes() { return config.getInt("database.compaction.interval-minutes", 360); }
+    public int getCompactionBatchSize() { return config.getInt("database.compaction.batch-size", 100); }
+    public boolean isCompactionIncrementalVacuum() { return config.getBoolean("database.compaction.incremental-vacuum", false); }
+    public boolean isBackupEnabled() { return config.getBoolean("database.backup.enabled", true); }
+    public int getBackupIntervalHours() { return config.getInt("database.backup.interval-hours", 24); }
+    public int getBackupKeep() { return config.getInt("database.backup.keep", 7); }
+    public int getBackupStepSize() { return config.getInt("database.backup.step-size", 256); }
+    public boolean isChangeFeedEnabled() { return config.getBoolean("database.change-feed.enabled", false); }
+    public String getChangeFeedServerId() { return config.getString("database.change-feed.server-id", ""); }
+    public int getChangeFeedPollIntervalSeconds() { return config.getInt("database.change-feed.poll-interval-seconds", 2); }
+    public int getChangeFeedRetentionMinutes() { return config.getInt("database.change-feed.retention-minutes", 60); }
     
     // Shop getters
     public int getMaxShopsPerPlayer() { return config.getInt("shop.max-shops-per-player", 10); }
     public int getMaxItemsPerShop() { return config.getInt("shop.max-items-per-shop", 54); }
     public boolean isAllowCrossWorldTrading() { return config.getBoolean("shop.allow-cross-world-trading", true); }
     public boolean isRequirePermissionToCreate() { return config.getBoolean("shop.require-permission-to-create", false); }
+    public boolean isUnloadEmptyWorlds() { return config.getBoolean("shop.unload-empty-worlds", true); }
+    public int getWorldUnloadDelaySeconds() { return config.getInt("shop.world-unload-delay-seconds", 300); }
     
     // Search Book getters
     public boolean isSearchBookEnabled() { return config.getBoolean("search-book.enabled", true); }
@@ -17,397 +17,581 @@
 package me.nouridin.supershop.managers;
 
 import me.nouridin.supershop.*;
+import me.nouridin.supershop.database.BackupJob;
+import me.nouridin.supershop.database.BatchResult;
+import me.nouridin.supershop.database.BlobInterner;
+import me.nouridin.supershop.database.BlobMigration;
+import me.nouridin.supershop.database.ChangeFeed;
+import me.nouridin.supershop.database.CircuitBreaker;
+import me.nouridin.supershop.database.CompactionJob;
+import me.nouridin.supershop.database.InMemoryShopRepository;
+import me.nouridin.supershop.database.MutationJournal;
+import me.nouridin.supershop.database.MySqlShopRepository;
+import me.nouridin.supershop.database.PersistenceExecutor;
+import me.nouridin.supershop.database.ResilientShopRepository;
+import me.nouridin.supershop.database.RevenueEntry;
+import me.nouridin.supershop.database.RowDecoder;
+import me.nouridin.supershop.database.ShopLoadPipeline;
+import me.nouridin.supershop.database.ShopItemRow;
+import me.nouridin.supershop.database.ShopRepository;
+import me.nouridin.supershop.database.ShopRow;
+import me.nouridin.supershop.database.ShopSummary;
+import me.nouridin.supershop.database.SqlShopRepository;
+import me.nouridin.supershop.database.SqliteShopRepository;
+import me.nouridin.supershop.database.WriteCodec;
 import me.nouridin.supershop.models.Shop;
 import me.nouridin.supershop.models.ShopItem;
-import me.nouridin.supershop.util.ItemSerializer;
+import me.nouridin.supershop.util.ItemCodec;
 import me.nouridin.supershop.util.MessageUtils;
-import org.bukkit.Bukkit;
-import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.scheduler.BukkitTask;
 
 import java.io.File;
 import java.io.IOException;
-import java.sql.*;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+/**
+ * Entry point for everything that is stored. Takes snapshots of the models on the server
+ * thread and hands them to the configured {@link ShopRepository} on the database thread.
+ */
 public class DatabaseManager {
     
     private final supershop plugin;
-    private Connection connection;
-    private final String databaseType;
+    private final ResilientShopRepository repository;
+    private final PersistenceExecutor persistence;
+    private final RowDecoder rowDecoder;
+    private BukkitTask healthCheckTask;
+    private MutationJournal journal;
+    private CompactionJob compaction;
+    private ChangeFeed changeFeed;
+    private BackupJob backups;
+    // Only touched on the database thread
+    private boolean foldedRevenuePurgeFailing;
     
     public DatabaseManager(supershop plugin) {
         this.plugin = plugin;
-        this.databaseType = plugin.getConfigManager().getDatabaseType();
+        this.persistence = new PersistenceExecutor(plugin, plugin.getConfigManager().getDatabaseQueueCapacity());
+        this.rowDecoder = new RowDecoder(plugin);
+        this.repository = new ResilientShopRepository(plugin, createRepository(plugin.getConfigManager().getDatabaseType()));
         initializeDatabase();
+        openJournal();
+        startHealthChecks();
+        compaction = new CompactionJob(plugin, persistence, repository);
+        compaction.start();
+        changeFeed = new ChangeFeed(plugin, persistence, repository);
+        changeFeed.start();
+        startBackups();
+    }
+
+    public PersistenceExecutor getPersistence() {
+        return persistence;
+    }
+
+    public BlobInterner getInterner() {
+        return rowDecoder.getInterner();
+    }
+
+    public ResilientShopRepository getRepository() {
+        return repository;
+    }
+
+    private ShopRepository createRepository(String databaseType) {
+        if (databaseType.equalsIgnoreCase("mysql")) {
+            return new MySqlShopRepository(plugin);
+        }
+        if (databaseType.equalsIgnoreCase("memory")) {
+            return new InMemoryShopRepository();
+        }
+        if (!databaseType.equalsIgnoreCase("sqlite")) {
+            plugin.getMessageUtils().sendConsoleMessage("&cUnsupported database type: " + databaseType + ", using SQLite.");
+        }
+        return new SqliteShopRepository(plugin);
     }
     
     private void initializeDatabase() {
         try {
-            if (databaseType.equalsIgnoreCase("sqlite")) {
-                initializeSQLite();
-            } else if (databaseType.equalsIgnoreCase("mysql")) {
-                initializeMySQL();
-            } else {
-                plugin.getMessageUtils().sendConsoleMessage("&cUnsupported database type: " + databaseType);
-                return;
-            }
-            
-            createTables();
-            plugin.getMessageUtils().sendConsoleMessage("&aDatabase initialized successfully!");
+            repository.open();
+            plugin.getMessageUtils().sendConsoleMessage("&aDatabase initialized successfully! (" + repository.getName() + ")");
             
         } catch (SQLException e) {
             plugin.getMessageUtils().sendConsoleMessage("&cFailed to initialize database: " + e.getMessage());
             e.printStackTrace();
         }
     }
-    
-    private void initializeSQLite() throws SQLException {
-        File dataFolder = plugin.getDataFolder();
-        if (!dataFolder.exists()) {
-            dataFolder.mkdirs();
+
+    /**
+     * Replays what the journal holds past its last checkpoint, before any shop is loaded.
+     */
+    private void openJournal() {
+        if (!plugin.getConfigManager().isJournalEnabled()) {
+            return;
+        }
+
+        MutationJournal opened = new MutationJournal(plugin, new File(plugin.getDataFolder(), "journal"),
+            plugin.getConfigManager().getJournalSyncIntervalMillis(),
+            plugin.getConfigManager().getJournalSegmentSizeKb() * 1024L);
+        try {
+            List<MutationJournal.Record> records = opened.recover();
+            if (!records.isEmpty()) {
+                int replayed = persistence.submit("replay journal", () -> {
+                    int applied = 0;
+                    for (MutationJournal.Record record : records) {
+                        try {
+                            WriteCodec.apply(record.getType(), record.open(), repository);
+                            applied++;
+                        } catch (IOException | SQLException e) {
+                            plugin.getMessageUtils().sendConsoleMessage("&cFailed to replay journal record " + record.getSequence() + ": " + e.getMessage());
+                        }
+                    }
+                    return applied;
+                }).join();
+                plugin.getMessageUtils().sendConsoleMessage("&aReplayed " + replayed + "/" + records.size() + " journal records from before the last shutdown.");
+            }
+            opened.checkpoint(opened.getLastSequence());
+            opened.start();
+            journal = opened;
+        } catch (IOException e) {
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to open the journal, purchases are not crash safe: " + e.getMessage());
         }
-        
-        String url = "jdbc:sqlite:" + dataFolder.getAbsolutePath() + "/shops.db";
-        connection = DriverManager.getConnection(url);
     }
-    
-    private void initializeMySQL() throws SQLException {
-        String host = plugin.getConfigManager().getDatabaseHost();
-        int port = plugin.getConfigManager().getDatabasePort();
-        String database = plugin.getConfigManager().getDatabaseName();
-        String username = plugin.getConfigManager().getDatabaseUsername();
-        String password = plugin.getConfigManager().getDatabasePassword();
-        
-        String url = String.format("jdbc:mysql://%s:%d/%s?useSSL=false&autoReconnect=true", 
-            host, port, database);
-        
-        connection = DriverManager.getConnection(url, username, password);
+
+    private void journal(WriteCodec.Type type, WriteCodec.Payload payload) {
+        if (journal != null) {
+            journal.append(type, payload);
+        }
     }
-    
-    private void createTables() throws SQLException {
-        String createShopsTable = "CREATE TABLE IF NOT EXISTS shops (" +
-            "shop_id VARCHAR(36) PRIMARY KEY," +
-            "owner_id VARCHAR(36) NOT NULL," +
-            "owner_name VARCHAR(16) NOT NULL," +
-            "world_name VARCHAR(50) NOT NULL," +
-            "x INTEGER NOT NULL," +
-            "y INTEGER NOT NULL," +
-            "z INTEGER NOT NULL," +
-            "is_active BOOLEAN DEFAULT TRUE," +
-            "created_at BIGINT NOT NULL," +
-            "last_updated BIGINT NOT NULL," +
-            "revenue_data TEXT DEFAULT ''" +
-            ")";
-        
-        String createShopItemsTable = "CREATE TABLE IF NOT EXISTS shop_items (" +
-            "item_id VARCHAR(36) PRIMARY KEY," +
-            "shop_id VARCHAR(36) NOT NULL," +
-            "item_data TEXT NOT NULL," +
-            "quantity INTEGER NOT NULL," +
-            "description TEXT," +
-            "price_data TEXT NOT NULL," +
-            "is_available BOOLEAN DEFAULT TRUE" +
-            ")";
-
-        String createPlayerLocalesTable = "CREATE TABLE IF NOT EXISTS player_locales (" +
-            "player_id VARCHAR(36) PRIMARY KEY," +
-            "locale VARCHAR(10) NOT NULL" +
-            ")";
-
-        String createFirstLoginTable = "CREATE TABLE IF NOT EXISTS first_login_tracking (" +
-            "player_id VARCHAR(36) PRIMARY KEY" +
-            ")";
-        
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(createShopsTable);
-            stmt.execute(createShopItemsTable);
-            stmt.execute(createPlayerLocalesTable);
-            stmt.execute(createFirstLoginTable);
-            
-            // Add revenue_data column if it doesn't exist (for existing databases)
-            try {
-                stmt.execute("ALTER TABLE shops ADD COLUMN revenue_data TEXT DEFAULT ''");
-            } catch (SQLException e) {
-                // Column already exists, ignore
-            }
+
+    /**
+     * Journals the current state of an item whose database write is deferred to the write-behind flush.
+     */
+    public void journalShopItem(UUID shopId, ShopItem item) {
+        if (journal != null) {
+            journal.append(WriteCodec.Type.SAVE_SHOP_ITEM, WriteCodec.saveShopItem(snapshotShopItem(shopId, item, item.getVersion())));
         }
     }
-    
-    public void saveShop(Shop shop) {
-        String sql = databaseType.equalsIgnoreCase("sqlite") ?
-            "INSERT OR REPLACE INTO shops (shop_id, owner_id, owner_name, world_name, x, y, z, is_active, created_at, last_updated, revenue_data) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)" :
-            "INSERT INTO shops (shop_id, owner_id, owner_name, world_name, x, y, z, is_active, created_at, last_updated, revenue_data) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE owner_name = VALUES(owner_name), world_name = VALUES(world_name), x = VALUES(x), y = VALUES(y), z = VALUES(z), is_active = VALUES(is_active), last_updated = VALUES(last_updated), revenue_data = VALUES(revenue_data)";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, shop.getShopId().toString());
-            stmt.setString(2, shop.getOwnerId().toString());
-            stmt.setString(3, shop.getOwnerName());
-            stmt.setString(4, shop.getWorldName());
-            stmt.setInt(5, shop.getLocation().getBlockX());
-            stmt.setInt(6, shop.getLocation().getBlockY());
-            stmt.setInt(7, shop.getLocation().getBlockZ());
-            stmt.setBoolean(8, shop.isActive());
-            stmt.setLong(9, shop.getCreatedAt());
-            stmt.setLong(10, shop.getLastUpdated());
-            
-            String serializedRevenue = "";
-            try {
-                serializedRevenue = ItemSerializer.serializeItemList(shop.getRevenue());
-            } catch (IOException e) {
-                plugin.getMessageUtils().sendConsoleMessage("&cFailed to serialize revenue for shop " + shop.getShopId() + ": " + e.getMessage());
-            }
-            stmt.setString(11, serializedRevenue);
-            
-            stmt.executeUpdate();
-            
-        } catch (SQLException e) {
-            plugin.getMessageUtils().sendConsoleMessage("&cFailed to save shop: " + e.getMessage());
+
+    /**
+     * True if journal records were written since the last batch save covered them.
+     */
+    public boolean hasUncheckpointedWrites() {
+        return journal != null && journal.getPendingRecords() > 0;
+    }
+
+    public MutationJournal getJournal() {
+        return journal;
+    }
+
+    private void startHealthChecks() {
+        long intervalTicks = Math.max(1, plugin.getConfigManager().getDatabaseBreakerRetrySeconds()) * 20L;
+        healthCheckTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::checkHealth, intervalTicks, intervalTicks);
+    }
+
+    /**
+     * Queues a reconnect and backlog replay while the database is down, does nothing otherwise.
+     */
+    public void checkHealth() {
+        if (repository.getBreaker().getState() != CircuitBreaker.State.CLOSED || !repository.getBacklog().isEmpty()) {
+            persistence.execute("database health check", () -> {
+                repository.recover();
+                return null;
+            });
         }
     }
-    
-    public void saveShopItem(UUID shopId, ShopItem item) {
-        String sql = databaseType.equalsIgnoreCase("sqlite") ?
-            "INSERT OR REPLACE INTO shop_items (item_id, shop_id, item_data, quantity, description, price_data, is_available) VALUES (?, ?, ?, ?, ?, ?, ?)" :
-            "INSERT INTO shop_items (item_id, shop_id, item_data, quantity, description, price_data, is_available) VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE item_data = VALUES(item_data), quantity = VALUES(quantity), description = VALUES(description), price_data = VALUES(price_data), is_available = VALUES(is_available)";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, item.getItemId().toString());
-            stmt.setString(2, shopId.toString());
-            
-            String serializedItemData = "";
-            try {
-                serializedItemData = ItemSerializer.serialize(item.getItemStack());
-            } catch (IOException e) {
-                plugin.getMessageUtils().sendConsoleMessage("&cFailed to serialize item stack for shop item " + item.getItemId() + ": " + e.getMessage());
-            }
-            stmt.setString(3, serializedItemData);
-            
-            stmt.setInt(4, item.getQuantity());
-            stmt.setString(5, item.getDescription());
-            
-            String serializedPriceData = "";
-            try {
-                serializedPriceData = ItemSerializer.serializeItemList(item.getPriceItems());
-            } catch (IOException e) {
-                plugin.getMessageUtils().sendConsoleMessage("&cFailed to serialize price items for shop item " + item.getItemId() + ": " + e.getMessage());
-            }
-            stmt.setString(6, serializedPriceData);
-            
-            stmt.setBoolean(7, item.isAvailable());
-            
-            stmt.executeUpdate();
-            
-        } catch (SQLException e) {
-            plugin.getMessageUtils().sendConsoleMessage("&cFailed to save shop item: " + e.getMessage());
+
+    /**
+     * SQLite is copied page by page into another database file, MySQL is exported as an SQL script.
+     * The in-memory backend has nothing to back up.
+     */
+    private void startBackups() {
+        if (repository.getDelegate() instanceof SqlShopRepository) {
+            backups = new BackupJob(plugin, repository,
+                repository.getDelegate() instanceof MySqlShopRepository ? ".sql.gz" : ".db");
+            backups.start();
         }
     }
-    
-    public List<Shop> loadAllShops() {
-        List<Shop> shops = new ArrayList<>();
-        String sql = "SELECT * FROM shops WHERE is_active = TRUE";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            
-            while (rs.next()) {
-                Shop shop = createShopFromResultSet(rs);
-                if (shop != null) {
-                    loadShopItems(shop);
-                    shops.add(shop);
-                }
+
+    /**
+     * Starts a backup right away on the backup thread.
+     *
+     * @return false if the backend has no backups or one is already running
+     */
+    public boolean backupNow() {
+        return backups != null && backups.run();
+    }
+
+    public BackupJob getBackups() {
+        return backups;
+    }
+
+    /**
+     * Starts converting rows left in older formats and upgrading item data written by older
+     * Minecraft versions, only SQL backends ever had either.
+     */
+    public void startBlobMigration() {
+        if (repository.getDelegate() instanceof SqlShopRepository) {
+            new BlobMigration(plugin, persistence, (SqlShopRepository) repository.getDelegate()).start();
+        }
+    }
+
+    // Snapshots are taken on the calling thread, the models are only ever mutated on the server thread.
+    // Every write to the database takes the next version of the model, see Shop#nextVersion.
+    private ShopRow snapshotShop(Shop shop, long version) {
+        byte[] serializedRevenue = new byte[0];
+        try {
+            serializedRevenue = ItemCodec.encodeList(shop.getRevenue());
+        } catch (IOException e) {
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to serialize revenue for shop " + shop.getShopId() + ": " + e.getMessage());
+        }
+
+        return new ShopRow(shop.getShopId(), shop.getOwnerId(), shop.getOwnerName(), shop.getWorldName(),
+            shop.getLocation().getBlockX(), shop.getLocation().getBlockY(), shop.getLocation().getBlockZ(),
+            shop.isActive(), shop.getCreatedAt(), shop.getLastUpdated(), "", serializedRevenue, version,
+            shop.takeRevenueEntries());
+    }
+
+    private ShopItemRow snapshotShopItem(UUID shopId, ShopItem item, long version) {
+        // Items that were never decoded are saved from their original bytes
+        byte[] serializedItemData = item.getEncodedItem();
+        try {
+            if (serializedItemData == null) {
+                serializedItemData = ItemCodec.encode(item.getItemStack());
             }
-            
-        } catch (SQLException e) {
-            plugin.getMessageUtils().sendConsoleMessage("&cFailed to load shops: " + e.getMessage());
+        } catch (IOException e) {
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to serialize item stack for shop item " + item.getItemId() + ": " + e.getMessage());
+        }
+
+        byte[] serializedPriceData = new byte[0];
+        try {
+            serializedPriceData = ItemCodec.encodeList(item.getPriceItems());
+        } catch (IOException e) {
+            plugin.getMessageUtils().sendConsoleMessage("&cFailed to serialize price items for shop item " + item.getItemId() + ": " + e.getMessage());
         }
-        
-        return shops;
+
+        // The legacy text columns are NOT NULL, they are left empty once the blobs are written
+        return new ShopItemRow(item.getItemId(), shopId, "", item.getQuantity(),
+            item.getDescription(), "", item.isAvailable(), serializedItemData, serializedPriceData,
+            item.getMaterial().name(), item.getItemAmount(), item.getDisplayName(), version);
+    }
+
+    public CompletableFuture<Void> saveShop(Shop shop) {
+        ShopRow row = snapshotShop(shop, shop.nextVersion());
+        journal(WriteCodec.Type.SAVE_SHOP_FOLDING, WriteCodec.saveShop(row));
+
+        return persistence.execute("save shop", () -> {
+            repository.saveShop(row);
+            return 1;
+        });
     }
     
-    private void loadShopItems(Shop shop) {
-        String sql = "SELECT * FROM shop_items WHERE shop_id = ? AND is_available = TRUE AND quantity > 0";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, shop.getShopId().toString());
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    ShopItem item = createShopItemFromResultSet(rs);
-                    if (item != null && item.getQuantity() > 0) {
-                        shop.addItem(item);
+    public CompletableFuture<Void> saveShopItem(UUID shopId, ShopItem item) {
+        ShopItemRow row = snapshotShopItem(shopId, item, item.nextVersion());
+        journal(WriteCodec.Type.SAVE_SHOP_ITEM, WriteCodec.saveShopItem(row));
+
+        return persistence.execute("save shop item", () -> {
+            repository.saveShopItem(row);
+            return 1;
+        });
+    }
+
+    /**
+     * Saves the shop only if no other server wrote it since this one last wrote or read it.
+     * Not journaled, the caller acts on the outcome. The version of the shop is advanced right
+     * away, so later writes from this server line up behind this one. After a conflict the
+     * shop has to be read back before it is written again.
+     *
+     * @return completes with false on a conflict, exceptionally if the database could not be reached
+     */
+    public CompletableFuture<Boolean> saveShopIfVersion(Shop shop) {
+        long expectedVersion = shop.getVersion();
+        ShopRow row = snapshotShop(shop, shop.nextVersion());
+
+        return persistence.submit("save shop if unchanged", () -> repository.saveShopIfVersion(row, expectedVersion));
+    }
+
+    /**
+     * Saves the item only if no other server wrote it since this one last wrote or read it,
+     * see {@link #saveShopIfVersion(Shop)}.
+     *
+     * @return completes with false on a conflict, exceptionally if the database could not be reached
+     */
+    public CompletableFuture<Boolean> saveShopItemIfVersion(UUID shopId, ShopItem item) {
+        long expectedVersion = item.getVersion();
+        ShopItemRow row = snapshotShopItem(shopId, item, item.nextVersion());
+
+        return persistence.submit("save shop item if unchanged", () -> repository.saveShopItemIfVersion(row, expectedVersion));
+    }
+
+    /**
+     * Saves many shops and items in a single transaction using JDBC batches.
+     * On SQLite this is one fsync for the whole batch instead of one per row.
+     * Callers pass every pending change, so once the batch is written it doubles as a journal checkpoint.
+     *
+     * @param itemsByShop items to save, keyed by the id of the shop they belong to
+     * @return number of rows written and how long the transaction took
+     */
+    public CompletableFuture<BatchResult> saveBatch(Collection<Shop> shops, Map<UUID, ? extends Collection<ShopItem>> itemsByShop) {
+        List<ShopRow> shopRows = new ArrayList<>(shops.size());
+        for (Shop shop : shops) {
+            shopRows.add(snapshotShop(shop, shop.nextVersion()));
+        }
+
+        List<ShopItemRow> itemRows = new ArrayList<>();
+        for (Map.Entry<UUID, ? extends Collection<ShopItem>> entry : itemsByShop.entrySet()) {
+            for (ShopItem item : entry.getValue()) {
+                itemRows.add(snapshotShopItem(entry.getKey(), item, item.nextVersion()));
+            }
+        }
+
+        long journalSequence = journal != null ? journal.getLastSequence() : 0;
+        long snapshotAt = System.currentTimeMillis();
+
+        return persistence.submit("save batch", () -> {
+            long start = System.nanoTime();
+            repository.saveBatch(shopRows, itemRows);
+            BatchResult result = new BatchResult(shopRows.size(), itemRows.size(), System.nanoTime() - start);
+
+            // Every write journaled before the snapshot has reached the database now
+            if (journal != null) {
+                journal.checkpoint(journalSequence);
+                try {
+                    repository.purgeFoldedRevenue(snapshotAt);
+                    foldedRevenuePurgeFailing = false;
+                } catch (SQLException e) {
+                    // Retried with the next checkpoint, logged once until it works again
+                    if (!foldedRevenuePurgeFailing) {
+                        foldedRevenuePurgeFailing = true;
+                        plugin.getMessageUtils().sendConsoleMessage("&cFailed to purge folded revenue entries: " + e.getMessage());
                     }
                 }
             }
-            
-        } catch (SQLException e) {
-            plugin.getMessageUtils().sendConsoleMessage("&cFailed to load shop items: " + e.getMessage());
-        }
+            return result;
+        });
     }
-    
-    private Shop createShopFromResultSet(ResultSet rs) throws SQLException {
-        UUID shopId = UUID.fromString(rs.getString("shop_id"));
-        UUID ownerId = UUID.fromString(rs.getString("owner_id"));
-        String ownerName = rs.getString("owner_name");
-        String worldName = rs.getString("world_name");
-        int x = rs.getInt("x");
-        int y = rs.getInt("y");
-        int z = rs.getInt("z");
-        boolean isActive = rs.getBoolean("is_active");
-        long createdAt = rs.getLong("created_at");
-        long lastUpdated = rs.getLong("last_updated");
-        String revenueData = rs.getString("revenue_data");
-        
-        World world = Bukkit.getWorld(worldName);
-        if (world == null) {
-            plugin.getMessageUtils().sendConsoleMessage("&cWorld '" + worldName + "' not found for shop " + shopId);
-            return null;
-        }
-        
-        Location location = new Location(world, x, y, z);
-        Shop shop = new Shop(shopId, ownerId, ownerName, location);
-        shop.setActive(isActive);
-        shop.setCreatedAt(createdAt);
-        shop.setLastUpdated(lastUpdated);
-        
-        // Load revenue data
-        if (revenueData != null && !revenueData.isEmpty()) {
+
+    /**
+     * Records a sale in the revenue ledger instead of rewriting the shop's whole revenue.
+     * The payment items are stored once as prototypes with an amount of 1, keyed by a hash
+     * of their bytes, so each ledger entry only holds that hash and an amount. The entries
+     * are folded away the next time this server writes the shop row.
+     */
+    public CompletableFuture<Void> appendRevenue(Shop shop, List<ItemStack> payment) {
+        UUID shopId = shop.getShopId();
+        // Snapshot on the calling thread, like every other write
+        List<RevenueEntry> entries = new ArrayList<>(payment.size());
+        for (ItemStack item : payment) {
+            if (item == null || item.getAmount() <= 0) {
+                continue;
+            }
+            ItemStack prototype = item.clone();
+            prototype.setAmount(1);
             try {
-                List<ItemStack> revenue = ItemSerializer.deserializeItemList(revenueData);
-                shop.setRevenue(revenue);
-            } catch (IOException | ClassNotFoundException e) {
-                plugin.getMessageUtils().sendConsoleMessage("&cFailed to deserialize revenue for shop " + shopId + ": " + e.getMessage());
+                byte[] bytes = ItemCodec.encode(prototype);
+                entries.add(new RevenueEntry(UUID.randomUUID(), ItemCodec.fingerprint(bytes), bytes, item.getAmount()));
+            } catch (IOException e) {
+                plugin.getMessageUtils().sendConsoleMessage("&cFailed to serialize revenue for shop " + shopId + ": " + e.getMessage());
             }
         }
-        
-        return shop;
+
+        if (entries.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<UUID> entryIds = new ArrayList<>(entries.size());
+        for (RevenueEntry entry : entries) {
+            entryIds.add(entry.getEntryId());
+        }
+        shop.addRevenueEntries(entryIds);
+
+        long now = System.currentTimeMillis();
+        journal(WriteCodec.Type.APPEND_REVENUE, WriteCodec.appendRevenue(shopId, entries, now));
+        return persistence.execute("append revenue", () -> {
+            repository.appendRevenue(shopId, entries, now);
+            return entries.size();
+        });
     }
-    
-    private ShopItem createShopItemFromResultSet(ResultSet rs) throws SQLException {
-        UUID itemId = UUID.fromString(rs.getString("item_id"));
-        String itemData = rs.getString("item_data");
-        int quantity = rs.getInt("quantity");
-        String description = rs.getString("description");
-        String priceData = rs.getString("price_data");
-        boolean isAvailable = rs.getBoolean("is_available");
-        
-        ItemStack itemStack = null;
+
+    /**
+     * Startup only: where every active shop is and who owns it. Nothing is decoded here,
+     * the shops themselves are loaded per chunk once their world is in use.
+     */
+    public List<ShopSummary> loadShopSummaries() {
         try {
-            itemStack = ItemSerializer.deserialize(itemData);
-        } catch (IOException | ClassNotFoundException e) {
-            plugin.getMessageUtils().sendConsoleMessage("&cFailed to deserialize item stack for shop item " + itemId + ": " + e.getMessage());
+            return persistence.submit("index shops", () -> {
+                List<ShopSummary> summaries = new ArrayList<>();
+                repository.readShopSummaries(summaries::add);
+                return summaries;
+            }).join();
+        } catch (CompletionException e) {
+            return new ArrayList<>();
         }
+    }
 
-        List<ItemStack> priceItems = null;
+    /**
+     * Startup only: loads the shops in chunks that were already loaded, the server thread waits here.
+     */
+    public ShopLoadPipeline.Result preloadShops(Collection<UUID> shopIds) {
+        ShopLoadPipeline pipeline = new ShopLoadPipeline(plugin, persistence, rowDecoder,
+            plugin.getConfigManager().getDatabaseDecoderThreads());
+        ShopLoadPipeline.Result result = pipeline.run((shops, items) -> repository.readShops(shopIds, shops, items));
+
+        Map<UUID, List<RevenueEntry>> pendingRevenue;
         try {
-            priceItems = ItemSerializer.deserializeItemList(priceData);
-        } catch (IOException | ClassNotFoundException e) {
-            plugin.getMessageUtils().sendConsoleMessage("&cFailed to deserialize price items for shop item " + itemId + ": " + e.getMessage());
+            pendingRevenue = persistence.submit("load revenue ledger", () -> repository.loadPendingRevenue(shopIds)).join();
+        } catch (CompletionException e) {
+            pendingRevenue = Collections.emptyMap();
         }
-        
-        if (itemStack == null || priceItems == null) {
-            plugin.getMessageUtils().sendConsoleMessage("&cFailed to deserialize item data for item " + itemId);
-            return null;
+        attachRevenue(result.getShops(), pendingRevenue);
+
+        return result;
+    }
+
+    /**
+     * Loads a few shops with their items and revenue. Rows are read and decoded on the
+     * database thread, the shops are only published once the caller is back on the server thread.
+     */
+    public CompletableFuture<List<Shop>> loadShops(Collection<UUID> shopIds) {
+        // Worlds are resolved here, the database thread only reads this map
+        Map<String, World> worlds = new HashMap<>();
+        for (World world : plugin.getServer().getWorlds()) {
+            worlds.put(world.getName(), world);
         }
-        
-        ShopItem item = new ShopItem(itemId, itemStack, quantity, description, priceItems);
-        item.setAvailable(isAvailable);
-        
-        return item;
+        List<UUID> ids = new ArrayList<>(shopIds);
+
+        return persistence.submit("load shops", () -> {
+            Map<UUID, Shop> shops = new LinkedHashMap<>();
+            repository.readShops(ids,
+                row -> {
+                    Shop shop = rowDecoder.decodeShop(row, worlds.get(row.getWorldName()));
+                    if (shop != null) {
+                        shops.put(shop.getShopId(), shop);
+                    }
+                },
+                row -> {
+                    Shop shop = shops.get(row.getShopId());
+                    ShopItem item = shop != null ? rowDecoder.decodeShopItem(row) : null;
+                    if (item != null && item.getQuantity() > 0) {
+                        shop.addItem(item);
+                    }
+                });
+            attachRevenue(shops.values(), repository.loadPendingRevenue(ids));
+            return new ArrayList<>(shops.values());
+        });
     }
-    
-    public void deleteShop(UUID shopId) {
-        String sql = "UPDATE shops SET is_active = FALSE WHERE shop_id = ?";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, shopId.toString());
-            stmt.executeUpdate();
-            
-        } catch (SQLException e) {
-            plugin.getMessageUtils().sendConsoleMessage("&cFailed to delete shop: " + e.getMessage());
+
+    /**
+     * Adds the sales recorded since each shop row was last written.
+     */
+    private void attachRevenue(Collection<Shop> shops, Map<UUID, List<RevenueEntry>> pendingRevenue) {
+        Map<String, ItemStack> prototypes = new HashMap<>();
+        for (Shop shop : shops) {
+            List<RevenueEntry> entries = pendingRevenue.get(shop.getShopId());
+            if (entries == null) {
+                continue;
+            }
+            List<ItemStack> revenue = new ArrayList<>(entries.size());
+            List<UUID> entryIds = new ArrayList<>(entries.size());
+            for (RevenueEntry entry : entries) {
+                ItemStack prototype = prototypes.get(entry.getFingerprint());
+                if (prototype == null) {
+                    try {
+                        prototype = ItemCodec.decode(entry.getPrototype());
+                    } catch (IOException e) {
+                        plugin.getMessageUtils().sendConsoleMessage("&cFailed to deserialize revenue item " + entry.getFingerprint() + ": " + e.getMessage());
+                        continue;
+                    }
+                    if (prototype == null) {
+                        continue;
+                    }
+                    prototypes.put(entry.getFingerprint(), prototype);
+                }
+                ItemStack item = prototype.clone();
+                item.setAmount(entry.getAmount());
+                revenue.add(item);
+                entryIds.add(entry.getEntryId());
+            }
+            shop.addRevenue(revenue);
+            // Only what was added here is folded by the next write, unreadable entries stay pending
+            shop.addRevenueEntries(entryIds);
         }
     }
     
-    public void deleteShopItem(UUID shopId, UUID itemId) {
-        String sql = "UPDATE shop_items SET is_available = FALSE WHERE shop_id = ? AND item_id = ?";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, shopId.toString());
-            stmt.setString(2, itemId.toString());
-            stmt.executeUpdate();
-            
-        } catch (SQLException e) {
-            plugin.getMessageUtils().sendConsoleMessage("&cFailed to delete shop item: " + e.getMessage());
-        }
+    public CompletableFuture<Void> deleteShop(UUID shopId) {
+        journal(WriteCodec.Type.DELETE_SHOP, WriteCodec.deleteShop(shopId));
+
+        return persistence.execute("delete shop", () -> {
+            repository.deleteShop(shopId);
+            return 1;
+        });
     }
+    
+    public CompletableFuture<Void> deleteShopItem(UUID shopId, UUID itemId) {
+        journal(WriteCodec.Type.DELETE_SHOP_ITEM, WriteCodec.deleteShopItem(shopId, itemId));
 
-    public void savePlayerLocale(UUID playerUUID, String locale) {
-        String sql = databaseType.equalsIgnoreCase("sqlite") ?
-            "INSERT OR REPLACE INTO player_locales (player_id, locale) VALUES (?, ?)" :
-            "INSERT INTO player_locales (player_id, locale) VALUES (?, ?) ON DUPLICATE KEY UPDATE locale = VALUES(locale)";
+        return persistence.execute("delete shop item", () -> {
+            repository.deleteShopItem(shopId, itemId);
+            return 1;
+        });
+    }
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, playerUUID.toString());
-            stmt.setString(2, locale);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            plugin.getMessageUtils().sendConsoleMessage("&cFailed to save player locale for " + playerUUID + ": " + e.getMessage());
-        }
+    public CompletableFuture<Void> savePlayerLocale(UUID playerUUID, String locale) {
+        return persistence.execute("save player locale", () -> {
+            repository.savePlayerLocale(playerUUID, locale);
+            return 1;
+        });
     }
 
     public Map<UUID, String> loadAllPlayerLocales() {
-        Map<UUID, String> playerLocales = new HashMap<>();
-        String sql = "SELECT player_id, locale FROM player_locales";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
+        return persistence.submit("load player locales", this::queryAllPlayerLocales).join();
+    }
 
-            while (rs.next()) {
-                UUID playerUUID = UUID.fromString(rs.getString("player_id"));
-                String locale = rs.getString("locale");
-                playerLocales.put(playerUUID, locale);
-            }
+    private Map<UUID, String> queryAllPlayerLocales() {
+        try {
+            return repository.loadPlayerLocales();
         } catch (SQLException e) {
             plugin.getMessageUtils().sendConsoleMessage("&cFailed to load player locales: " + e.getMessage());
+            return new HashMap<>();
         }
-        return playerLocales;
     }
 
-    public boolean hasReceivedFirstLoginMessage(UUID playerUUID) {
-        String sql = "SELECT 1 FROM first_login_tracking WHERE player_id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, playerUUID.toString());
-            try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next();
+    public CompletableFuture<Boolean> hasReceivedFirstLoginMessage(UUID playerUUID) {
+        return persistence.submit("check first login", () -> {
+            try {
+                return repository.hasReceivedFirstLoginMessage(playerUUID);
+            } catch (SQLException e) {
+                plugin.getMessageUtils().sendConsoleMessage("&cFailed to check first login message status for " + playerUUID + ": " + e.getMessage());
+                return false;
             }
-        } catch (SQLException e) {
-            plugin.getMessageUtils().sendConsoleMessage("&cFailed to check first login message status for " + playerUUID + ": " + e.getMessage());
-            return false;
-        }
+        });
     }
 
-    public void recordFirstLoginMessage(UUID playerUUID) {
-        String sql = databaseType.equalsIgnoreCase("sqlite") ?
-            "INSERT OR IGNORE INTO first_login_tracking (player_id) VALUES (?)" :
-            "INSERT IGNORE INTO first_login_tracking (player_id) VALUES (?)";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, playerUUID.toString());
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            plugin.getMessageUtils().sendConsoleMessage("&cFailed to record first login message for " + playerUUID + ": " + e.getMessage());
-        }
+    public CompletableFuture<Void> recordFirstLoginMessage(UUID playerUUID) {
+        return persistence.execute("record first login", () -> {
+            repository.recordFirstLoginMessage(playerUUID);
+            return 1;
+        });
     }
     
     public void closeConnection() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                plugin.getMessageUtils().sendConsoleMessage("&aDatabase connection closed.");
-            }
-        } catch (SQLException e) {
-            plugin.getMessageUtils().sendConsoleMessage("&cFailed to close database connection: " + e.getMessage());
+        if (healthCheckTask != null) {
+            healthCheckTask.cancel();
+            healthCheckTask = null;
+        }
+        compaction.stop();
+        changeFeed.stop();
+        if (backups != null) {
+            backups.shutdown(plugin.getConfigManager().getDatabaseShutdownTimeoutSeconds());
+        }
+
+        // Let every queued write reach the database before the connection goes away
+        persistence.shutdown(plugin.getConfigManager().getDatabaseShutdownTimeoutSeconds());
+        if (journal != null) {
+            journal.close();
         }
+        repository.close();
+        plugin.getMessageUtils().sendConsoleMessage("&aDatabase connection closed.");
     }
-}
\ No newline at end of file
+}
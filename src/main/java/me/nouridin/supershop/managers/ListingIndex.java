@@ -0,0 +1,334 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.nouridin.supershop.managers;
+
+import me.nouridin.supershop.models.Shop;
+import me.nouridin.supershop.models.ShopItem;
+import org.bukkit.Material;
+
+import java.util.*;
+
+/**
+ * Every item of the loaded shops, searchable by text without looking at the items themselves.
+ * Names, material names and descriptions are normalized and split into tokens, and every
+ * substring of up to {@value #GRAM_LENGTH} characters of a token points at the listings that
+ * contain it. A query only verifies the listings found under its rarest n-gram, so its cost
+ * follows the number of matches instead of the number of listings.
+ * <p>
+ * Listings are also bucketed by material, together with how many of them can be bought and their
+ * total stock, so material searches read one bucket and popular materials are ranked without
+ * looking at any listing. The names of listings that can be bought feed the
+ * {@link SuggestionTrie} behind search completion.
+ * <p>
+ * Kept up to date by the {@link ShopManager} whenever a shop is loaded or unloaded and an item
+ * is added, removed, edited or sold. Listings are indexed whether or not they are available, callers
+ * check that. Only used from the server thread.
+ */
+public class ListingIndex {
+
+    private static final int GRAM_LENGTH = 3;
+    // Separates the fields of a listing, never part of a normalized query
+    private static final char FIELD_SEPARATOR = '\n';
+
+    private final Map<UUID, Listing> listings = new HashMap<>();
+    private final Map<String, Set<UUID>> postings = new HashMap<>();
+    private final Map<Material, MaterialBucket> materials = new EnumMap<>(Material.class);
+    private final SuggestionTrie suggestions = new SuggestionTrie();
+
+    public static final class Listing {
+
+        private final Shop shop;
+        private final ShopItem item;
+        private String text;
+        private boolean buyable; // Counted in the material totals and the suggestion weights
+        private int stock; // Quantity counted in the material total
+
+        private Listing(Shop shop, ShopItem item) {
+            this.shop = shop;
+            this.item = item;
+        }
+
+        public Shop getShop() { return shop; }
+        public ShopItem getItem() { return item; }
+    }
+
+    private static final class MaterialBucket {
+
+        private final Set<Listing> listings = new LinkedHashSet<>();
+        private int buyable;
+        private long stock;
+    }
+
+    public void add(Shop shop, ShopItem item) {
+        remove(item);
+        Listing listing = new Listing(shop, item);
+        listing.text = textOf(item);
+        listings.put(item.getItemId(), listing);
+        post(item.getItemId(), listing.text);
+
+        materials.computeIfAbsent(item.getMaterial(), k -> new MaterialBucket()).listings.add(listing);
+        count(listing);
+    }
+
+    public void addAll(Shop shop) {
+        for (ShopItem item : shop.getItems()) {
+            add(shop, item);
+        }
+    }
+
+    public void remove(ShopItem item) {
+        Listing listing = listings.remove(item.getItemId());
+        if (listing != null) {
+            unpost(item.getItemId(), listing.text);
+            if (listing.buyable) {
+                changeSuggestions(item, false);
+            }
+
+            MaterialBucket bucket = materials.get(item.getMaterial());
+            bucket.listings.remove(listing);
+            bucket.buyable -= listing.buyable ? 1 : 0;
+            bucket.stock -= listing.stock;
+            if (bucket.listings.isEmpty()) {
+                materials.remove(item.getMaterial());
+            }
+        }
+    }
+
+    public void removeAll(Shop shop) {
+        for (ShopItem item : shop.getItems()) {
+            remove(item);
+        }
+    }
+
+    /**
+     * Indexes the text and stock of an item again after it was edited or sold.
+     */
+    public void update(ShopItem item) {
+        Listing listing = listings.get(item.getItemId());
+        if (listing == null) {
+            return;
+        }
+        count(listing);
+        String text = textOf(item);
+        if (!text.equals(listing.text)) {
+            unpost(item.getItemId(), listing.text);
+            listing.text = text;
+            post(item.getItemId(), text);
+        }
+    }
+
+    /**
+     * Updates every item of the shop, used after the shop was opened or closed.
+     */
+    public void updateAll(Shop shop) {
+        for (ShopItem item : shop.getItems()) {
+            update(item);
+        }
+    }
+
+    /**
+     * Up to {@code limit} item and material names with a word starting with the prefix,
+     * the ones most listings can be bought under first.
+     */
+    public List<String> complete(String prefix, int limit) {
+        return suggestions.complete(prefix, limit);
+    }
+
+    /**
+     * Listings whose name, material name or description contains the query, compared the way
+     * {@link #normalize} writes them. Returned in no particular order.
+     */
+    public List<Listing> matchText(String query) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // The rarest n-gram of the query bounds the candidates
+        Set<UUID> candidates = null;
+        for (String token : normalized.split(" ")) {
+            // The longest n-grams of a token, the shorter ones are inside them
+            int length = Math.min(GRAM_LENGTH, token.length());
+            for (int start = 0; start + length <= token.length(); start++) {
+                Set<UUID> posting = postings.get(token.substring(start, start + length));
+                if (posting == null) {
+                    return Collections.emptyList();
+                }
+                if (candidates == null || posting.size() < candidates.size()) {
+                    candidates = posting;
+                }
+            }
+        }
+
+        List<Listing> matches = new ArrayList<>();
+        for (UUID itemId : candidates) {
+            Listing listing = listings.get(itemId);
+            if (listing.text.contains(normalized)) {
+                matches.add(listing);
+            }
+        }
+        return matches;
+    }
+
+    public Collection<Listing> getListings() {
+        return Collections.unmodifiableCollection(listings.values());
+    }
+
+    /**
+     * Listings of the material, in the order they were indexed.
+     */
+    public Collection<Listing> getListings(Material material) {
+        MaterialBucket bucket = materials.get(material);
+        return bucket != null ? Collections.unmodifiableCollection(bucket.listings) : Collections.emptyList();
+    }
+
+    /**
+     * Materials with at least one listing, in declaration order.
+     */
+    public Set<Material> getMaterials() {
+        return Collections.unmodifiableSet(materials.keySet());
+    }
+
+    /**
+     * Number of listings of the material that can be bought right now.
+     */
+    public int getBuyableCount(Material material) {
+        MaterialBucket bucket = materials.get(material);
+        return bucket != null ? bucket.buyable : 0;
+    }
+
+    /**
+     * Total quantity of the material that can be bought right now.
+     */
+    public long getStock(Material material) {
+        MaterialBucket bucket = materials.get(material);
+        return bucket != null ? bucket.stock : 0;
+    }
+
+    public int size() {
+        return listings.size();
+    }
+
+    private void post(UUID itemId, String text) {
+        for (String gram : gramsOfText(text)) {
+            postings.computeIfAbsent(gram, k -> new HashSet<>()).add(itemId);
+        }
+    }
+
+    private void unpost(UUID itemId, String text) {
+        for (String gram : gramsOfText(text)) {
+            Set<UUID> posting = postings.get(gram);
+            if (posting != null) {
+                posting.remove(itemId);
+                if (posting.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts a listing in the totals of its material and its names in the suggestion weights
+     * while it can be bought.
+     */
+    private void count(Listing listing) {
+        boolean buyable = listing.shop.isActive() && listing.item.isAvailable();
+        int stock = buyable ? listing.item.getQuantity() : 0;
+        MaterialBucket bucket = materials.get(listing.item.getMaterial());
+        bucket.stock += stock - listing.stock;
+        listing.stock = stock;
+        if (buyable != listing.buyable) {
+            listing.buyable = buyable;
+            bucket.buyable += buyable ? 1 : -1;
+            changeSuggestions(listing.item, buyable);
+        }
+    }
+
+    private void changeSuggestions(ShopItem item, boolean add) {
+        Set<String> names = new HashSet<>(2);
+        names.add(item.getFormattedItemName());
+        names.add(item.getMaterial().name().toLowerCase().replace("_", " "));
+        for (String name : names) {
+            if (add) {
+                suggestions.add(name);
+            } else {
+                suggestions.remove(name);
+            }
+        }
+    }
+
+    private static String textOf(ShopItem item) {
+        // Display name and material are known without decoding the item
+        String description = item.hasDescription() ? item.getDescription() : "";
+        return normalize(item.getFormattedItemName()) + FIELD_SEPARATOR +
+            normalize(item.getMaterial().name()) + FIELD_SEPARATOR +
+            normalize(description);
+    }
+
+    private static Set<String> gramsOfText(String text) {
+        Set<String> grams = new HashSet<>();
+        for (String field : text.split(String.valueOf(FIELD_SEPARATOR))) {
+            for (String token : field.split(" ")) {
+                grams.addAll(grams(token));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * Every substring of the token that is up to {@value #GRAM_LENGTH} characters long.
+     */
+    private static List<String> grams(String token) {
+        List<String> grams = new ArrayList<>();
+        for (int start = 0; start < token.length(); start++) {
+            for (int end = start + 1; end <= Math.min(token.length(), start + GRAM_LENGTH); end++) {
+                grams.add(token.substring(start, end));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * Lower case letters and digits with single spaces in between, without color codes.
+     */
+    public static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '§' || c == '&' && i + 1 < text.length() && isColorCode(text.charAt(i + 1))) {
+                i++;
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (space && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                normalized.append(Character.toLowerCase(c));
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static boolean isColorCode(char c) {
+        return "0123456789abcdefklmnorx".indexOf(Character.toLowerCase(c)) >= 0;
+    }
+}
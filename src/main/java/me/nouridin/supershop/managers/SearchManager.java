@@ -16,6 +16,7 @@
 
 package me.nouridin.supershop.managers;
 
+import me.nouridin.supershop.util.RankedResults;
 import me.nouridin.supershop.util.SearchResult;
 import me.nouridin.supershop.models.Shop;
 import me.nouridin.supershop.models.ShopItem;
@@ -40,61 +41,77 @@ public class SearchManager {
     
     public List<SearchResult> searchByItemName(String itemName, Location searchLocation, 
                                              String sellerFilter, Double maxDistance) {
+        return searchByItemName(itemName, searchLocation, sellerFilter, maxDistance, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * The {@code limit} nearest matches, the rest are never sorted.
+     */
+    public List<SearchResult> searchByItemName(String itemName, Location searchLocation, 
+                                             String sellerFilter, Double maxDistance, int limit) {
         List<SearchResult> results = new ArrayList<>();
         
-        for (Shop shop : plugin.getShopManager().getAllShops()) {
-            if (!shop.isActive()) {
-                continue;
+        // With a distance limit only the shops in the cells around the searcher are measured
+        Map<Shop, Double> nearby = null;
+        if (maxDistance != null) {
+            nearby = new IdentityHashMap<>();
+            for (SpatialIndex.Neighbor neighbor : plugin.getShopManager().getSpatialIndex().withinRadius(searchLocation, maxDistance)) {
+                nearby.put(neighbor.getShop(), neighbor.getDistance());
             }
-            
-            if (sellerFilter != null && !shop.getOwnerName().toLowerCase().contains(sellerFilter.toLowerCase())) {
+        }
+        
+        // Only the listings that contain the name are looked at
+        for (ListingIndex.Listing listing : plugin.getShopManager().getListingIndex().matchText(itemName)) {
+            Shop shop = listing.getShop();
+            ShopItem item = listing.getItem();
+            if (!shop.isActive() || !item.isAvailable()) {
                 continue;
             }
             
-            double distance = shop.getDistanceFrom(searchLocation);
-            
-            if (maxDistance != null && distance > maxDistance) {
+            if (sellerFilter != null && !shop.getOwnerName().toLowerCase().contains(sellerFilter.toLowerCase())) {
                 continue;
             }
             
-            for (ShopItem item : shop.getItems()) {
-                if (!item.isAvailable()) {
+            double distance;
+            if (nearby != null) {
+                Double nearbyDistance = nearby.get(shop);
+                if (nearbyDistance == null) {
                     continue;
                 }
-                
-                if (matchesItemName(item, itemName)) {
-                    results.add(new SearchResult(shop, item, distance));
-                }
+                distance = nearbyDistance;
+            } else {
+                distance = shop.getDistanceFrom(searchLocation);
             }
+            
+            results.add(new SearchResult(shop, item, distance));
         }
         
-        results.sort(Comparator.comparingDouble(SearchResult::getDistance));
-        
-        return results;
+        return RankedResults.top(results, RankedResults.BY_DISTANCE, limit);
+    }
+    
+    /**
+     * The {@code limit} nearest listings of the material, the rest are never sorted.
+     */
+    public List<SearchResult> searchByMaterial(Material material, Location searchLocation, int limit) {
+        return RankedResults.top(searchByMaterial(material, searchLocation), RankedResults.BY_DISTANCE, limit);
     }
     
+    /**
+     * Every listing of the material that can be bought, in index order, for callers that rank them.
+     */
     public List<SearchResult> searchByMaterial(Material material, Location searchLocation) {
-        List<SearchResult> results = new ArrayList<>();
+        ListingIndex listings = plugin.getShopManager().getListingIndex();
+        List<SearchResult> results = new ArrayList<>(listings.getBuyableCount(material));
         
-        for (Shop shop : plugin.getShopManager().getAllShops()) {
-            if (!shop.isActive()) {
-                continue;
-            }
-            
-            double distance = shop.getDistanceFrom(searchLocation);
-            
-            for (ShopItem item : shop.getItems()) {
-                if (!item.isAvailable()) {
-                    continue;
-                }
-                
-                if (item.getItemStack().getType() == material) {
-                    results.add(new SearchResult(shop, item, distance));
-                }
+        // Only the listings of this material are looked at
+        for (ListingIndex.Listing listing : listings.getListings(material)) {
+            Shop shop = listing.getShop();
+            ShopItem item = listing.getItem();
+            if (shop.isActive() && item.isAvailable()) {
+                results.add(new SearchResult(shop, item, shop.getDistanceFrom(searchLocation)));
             }
         }
         
-        results.sort(Comparator.comparingDouble(SearchResult::getDistance));
         return results;
     }
     
@@ -124,24 +141,35 @@ public class SearchManager {
     }
     
     public List<SearchResult> getNearbyShops(Location location, double radius) {
+        return getNearbyShops(location, radius, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Items of the shops within the radius, nearest first. Shops are visited nearest first, so
+     * the search stops at the first shop past the radius or once {@code limit} items are found.
+     */
+    public List<SearchResult> getNearbyShops(Location location, double radius, int limit) {
         List<SearchResult> results = new ArrayList<>();
         
-        for (Shop shop : plugin.getShopManager().getAllShops()) {
+        Iterator<SpatialIndex.Neighbor> neighbors = plugin.getShopManager().getSpatialIndex().nearestFirst(location);
+        while (results.size() < limit && neighbors.hasNext()) {
+            SpatialIndex.Neighbor neighbor = neighbors.next();
+            if (neighbor.getDistance() > radius) {
+                break;
+            }
+            
+            Shop shop = neighbor.getShop();
             if (!shop.isActive()) {
                 continue;
             }
             
-            double distance = shop.getDistanceFrom(location);
-            if (distance <= radius) {
-                for (ShopItem item : shop.getItems()) {
-                    if (item.isAvailable()) {
-                        results.add(new SearchResult(shop, item, distance));
-                    }
+            for (ShopItem item : shop.getItems()) {
+                if (item.isAvailable() && results.size() < limit) {
+                    results.add(new SearchResult(shop, item, neighbor.getDistance()));
                 }
             }
         }
         
-        results.sort(Comparator.comparingDouble(SearchResult::getDistance));
         return results;
     }
     
@@ -166,75 +194,23 @@ public class SearchManager {
         return results;
     }
     
+    /**
+     * The materials most listings can be bought under, the one with more stock first on a tie.
+     * Ranked from the totals the listing index keeps per material.
+     */
     public List<Material> getPopularItems() {
-        Map<Material, Integer> itemCounts = new HashMap<>();
+        ListingIndex listings = plugin.getShopManager().getListingIndex();
         
-        for (Shop shop : plugin.getShopManager().getAllShops()) {
-            if (!shop.isActive()) {
-                continue;
-            }
-            
-            for (ShopItem item : shop.getItems()) {
-                if (item.isAvailable()) {
-                    Material material = item.getItemStack().getType();
-                    itemCounts.put(material, itemCounts.getOrDefault(material, 0) + 1);
-                }
-            }
-        }
-        
-        return itemCounts.entrySet().stream()
-            .sorted(Map.Entry.<Material, Integer>comparingByValue().reversed())
-            .map(Map.Entry::getKey)
+        return listings.getMaterials().stream()
+            .filter(material -> listings.getBuyableCount(material) > 0)
+            .sorted(Comparator.comparingInt(listings::getBuyableCount)
+                .thenComparingLong(listings::getStock)
+                .reversed())
             .limit(10)
             .collect(ArrayList::new, (list, item) -> list.add(item), ArrayList::addAll);
     }
     
     public List<String> getSearchSuggestions(String partialInput) {
-        Set<String> suggestions = new HashSet<>();
-        String lowerInput = partialInput.toLowerCase();
-        
-        for (Shop shop : plugin.getShopManager().getAllShops()) {
-            if (!shop.isActive()) {
-                continue;
-            }
-            
-            for (ShopItem item : shop.getItems()) {
-                if (item.isAvailable()) {
-                    String itemName = item.getFormattedItemName().toLowerCase();
-                    if (itemName.contains(lowerInput)) {
-                        suggestions.add(item.getFormattedItemName());
-                    }
-                    
-                    String materialName = item.getItemStack().getType().name().toLowerCase().replace("_", " ");
-                    if (materialName.contains(lowerInput)) {
-                        suggestions.add(materialName);
-                    }
-                }
-            }
-        }
-        
-        List<String> result = new ArrayList<>(suggestions);
-        result.sort(String::compareTo);
-        return result.subList(0, Math.min(10, result.size()));
-    }
-    
-    private boolean matchesItemName(ShopItem item, String searchQuery) {
-        String query = searchQuery.toLowerCase();
-        
-        String displayName = item.getFormattedItemName().toLowerCase();
-        if (displayName.contains(query)) {
-            return true;
-        }
-        
-        String materialName = item.getItemStack().getType().name().toLowerCase().replace("_", " ");
-        if (materialName.contains(query)) {
-            return true;
-        }
-        
-        if (item.hasDescription() && item.getDescription().toLowerCase().contains(query)) {
-            return true;
-        }
-        
-        return false;
+        return plugin.getShopManager().getListingIndex().complete(partialInput, 10);
     }
-}
\ No newline at end of file
+}
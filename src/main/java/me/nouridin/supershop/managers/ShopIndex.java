@@ -0,0 +1,126 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.managers;
+
+import me.nouridin.supershop.database.ShopSummary;
+
+import java.util.*;
+
+/**
+ * Where every active shop is, including the shops that are not loaded. Lets the
+ * {@link ShopManager} find out which shops a chunk holds without asking the database.
+ * Only used from the server thread.
+ */
+public class ShopIndex {
+
+    private final Map<UUID, ShopSummary> byId = new HashMap<>();
+    private final Map<String, Map<Long, List<ShopSummary>>> byChunk = new HashMap<>();
+    private final Map<UUID, Set<UUID>> byOwner = new HashMap<>();
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    public void add(ShopSummary summary) {
+        remove(summary.getShopId());
+        byId.put(summary.getShopId(), summary);
+        byChunk.computeIfAbsent(summary.getWorldName(), k -> new HashMap<>())
+            .computeIfAbsent(chunkKey(summary.getChunkX(), summary.getChunkZ()), k -> new ArrayList<>())
+            .add(summary);
+        byOwner.computeIfAbsent(summary.getOwnerId(), k -> new HashSet<>()).add(summary.getShopId());
+    }
+
+    public void remove(UUID shopId) {
+        ShopSummary summary = byId.remove(shopId);
+        if (summary == null) {
+            return;
+        }
+
+        Map<Long, List<ShopSummary>> chunks = byChunk.get(summary.getWorldName());
+        if (chunks != null) {
+            long key = chunkKey(summary.getChunkX(), summary.getChunkZ());
+            List<ShopSummary> inChunk = chunks.get(key);
+            if (inChunk != null) {
+                inChunk.remove(summary);
+                if (inChunk.isEmpty()) {
+                    chunks.remove(key);
+                }
+            }
+            if (chunks.isEmpty()) {
+                byChunk.remove(summary.getWorldName());
+            }
+        }
+
+        Set<UUID> owned = byOwner.get(summary.getOwnerId());
+        if (owned != null) {
+            owned.remove(shopId);
+            if (owned.isEmpty()) {
+                byOwner.remove(summary.getOwnerId());
+            }
+        }
+    }
+
+    public ShopSummary get(UUID shopId) {
+        return byId.get(shopId);
+    }
+
+    public List<ShopSummary> getShopsInChunk(String worldName, int chunkX, int chunkZ) {
+        Map<Long, List<ShopSummary>> chunks = byChunk.get(worldName);
+        if (chunks == null) {
+            return Collections.emptyList();
+        }
+        List<ShopSummary> inChunk = chunks.get(chunkKey(chunkX, chunkZ));
+        return inChunk != null ? inChunk : Collections.emptyList();
+    }
+
+    public List<ShopSummary> getShopsInWorld(String worldName) {
+        Map<Long, List<ShopSummary>> chunks = byChunk.get(worldName);
+        if (chunks == null) {
+            return Collections.emptyList();
+        }
+        List<ShopSummary> shops = new ArrayList<>();
+        for (List<ShopSummary> inChunk : chunks.values()) {
+            shops.addAll(inChunk);
+        }
+        return shops;
+    }
+
+    /**
+     * @return the shop at the block, or null if there is none
+     */
+    public ShopSummary getShopAt(String worldName, int x, int y, int z) {
+        for (ShopSummary summary : getShopsInChunk(worldName, x >> 4, z >> 4)) {
+            if (summary.getX() == x && summary.getY() == y && summary.getZ() == z) {
+                return summary;
+            }
+        }
+        return null;
+    }
+
+    public Set<UUID> getShopIdsByOwner(UUID ownerId) {
+        Set<UUID> owned = byOwner.get(ownerId);
+        return owned != null ? owned : Collections.emptySet();
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public int getWorldCount() {
+        return byChunk.size();
+    }
+}
@@ -16,29 +16,70 @@
 
 package me.nouridin.supershop.managers;
 
+import me.nouridin.supershop.database.BatchResult;
+import me.nouridin.supershop.database.ChangeFeed;
+import me.nouridin.supershop.database.ShopLoadPipeline;
+import me.nouridin.supershop.database.ShopSummary;
+import me.nouridin.supershop.database.WriteBehindFlusher;
 import me.nouridin.supershop.models.Shop;
 import me.nouridin.supershop.models.ShopItem;
 import me.nouridin.supershop.supershop;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
+/**
+ * Keeps the loaded shops. Every active shop is in the {@link ShopIndex}, but only the shops
+ * in chunks that are in use are loaded with their items and revenue. A world that stays
+ * empty drops back to its index entries.
+ */
 public class ShopManager {
 
     private final supershop plugin;
     private final Map<Location, Shop> shopsByLocation;
     private final Map<UUID, Shop> shopsById;
     private final Map<UUID, Set<UUID>> shopsByOwner;
+    private final WriteBehindFlusher writeBehind;
+    private final ShopIndex index = new ShopIndex();
+    private final ListingIndex listings = new ListingIndex();
+    private final SpatialIndex spatial = new SpatialIndex();
+
+    // Shops and items with a version checked write in flight, see processPurchase
+    private final Set<UUID> versionedWrites = new HashSet<>();
+
+    // Lazy loading, shops queued by chunk loads are read together on the next tick
+    private final Set<UUID> pendingLoads = new LinkedHashSet<>();
+    private final Set<UUID> loadingShops = new HashSet<>();
+    private boolean loadScheduled;
 
     public ShopManager(supershop plugin) {
         this.plugin = plugin;
         this.shopsByLocation = new ConcurrentHashMap<>();
         this.shopsById = new ConcurrentHashMap<>();
         this.shopsByOwner = new ConcurrentHashMap<>();
+        this.writeBehind = new WriteBehindFlusher(plugin);
+        this.writeBehind.start();
+    }
+
+    public WriteBehindFlusher getWriteBehind() {
+        return writeBehind;
+    }
+
+    public ListingIndex getListingIndex() {
+        return listings;
+    }
+
+    public SpatialIndex getSpatialIndex() {
+        return spatial;
     }
 
     public Shop createShop(Player owner, Location location) {
@@ -49,9 +90,8 @@ public class ShopManager {
         UUID shopId = UUID.randomUUID();
         Shop shop = new Shop(shopId, owner.getUniqueId(), owner.getName(), location);
 
-        shopsByLocation.put(location, shop);
-        shopsById.put(shopId, shop);
-        shopsByOwner.computeIfAbsent(owner.getUniqueId(), k -> new HashSet<>()).add(shopId);
+        index.add(summarize(shop));
+        publish(shop);
 
         plugin.getDatabaseManager().saveShop(shop);
 
@@ -153,6 +193,24 @@ public class ShopManager {
 
 
     private void removeShopFromSystem(Shop shop) {
+        writeBehind.forget(shop);
+        index.remove(shop.getShopId());
+        evict(shop);
+
+        plugin.getDatabaseManager().deleteShop(shop.getShopId());
+    }
+
+    private void publish(Shop shop) {
+        listings.addAll(shop);
+        spatial.add(shop);
+        shopsByLocation.put(shop.getLocation(), shop);
+        shopsById.put(shop.getShopId(), shop);
+        shopsByOwner.computeIfAbsent(shop.getOwnerId(), k -> new HashSet<>()).add(shop.getShopId());
+    }
+
+    private void evict(Shop shop) {
+        listings.removeAll(shop);
+        spatial.remove(shop);
         shopsByLocation.remove(shop.getLocation());
         shopsById.remove(shop.getShopId());
         Set<UUID> ownerShops = shopsByOwner.get(shop.getOwnerId());
@@ -162,22 +220,88 @@ public class ShopManager {
                 shopsByOwner.remove(shop.getOwnerId());
             }
         }
+    }
 
-        plugin.getDatabaseManager().deleteShop(shop.getShopId());
+    /**
+     * Takes an item out of a loaded shop, its pending write and the listing index.
+     */
+    private void delist(Shop shop, ShopItem item) {
+        shop.removeItem(item);
+        writeBehind.forget(item);
+        listings.remove(item);
     }
 
+    private static ShopSummary summarize(Shop shop) {
+        Location location = shop.getLocation();
+        return new ShopSummary(shop.getShopId(), shop.getOwnerId(), shop.getWorldName(),
+            location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    /**
+     * @return the loaded shop at the block, null while its chunk load has not brought it in yet,
+     *         see {@link #isShopAtLocation} and {@link #getShopAtLocation(Location, Consumer)}
+     */
     public Shop getShopAtLocation(Location location) {
         return shopsByLocation.get(location);
     }
 
+    /**
+     * Hands over the shop at the block, reading it from the database first if it is not loaded.
+     *
+     * @param callback runs on the server thread, with null if there is no shop or it could not be read
+     */
+    public void getShopAtLocation(Location location, Consumer<Shop> callback) {
+        Shop shop = shopsByLocation.get(location);
+        if (shop != null || location.getWorld() == null) {
+            callback.accept(shop);
+            return;
+        }
+
+        ShopSummary summary = index.getShopAt(location.getWorld().getName(),
+            location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        if (summary == null) {
+            callback.accept(null);
+            return;
+        }
+        load(Collections.singleton(summary.getShopId()), () -> callback.accept(shopsByLocation.get(location)));
+    }
+
     public boolean isShopAtLocation(Location location) {
-        return shopsByLocation.containsKey(location);
+        if (shopsByLocation.containsKey(location)) {
+            return true;
+        }
+        return location.getWorld() != null && index.getShopAt(location.getWorld().getName(),
+            location.getBlockX(), location.getBlockY(), location.getBlockZ()) != null;
     }
 
     public Shop getShopById(UUID shopId) {
         return shopsById.get(shopId);
     }
 
+    /**
+     * Hands over all of the owner's shops, reading those that are not loaded yet first,
+     * except those in worlds the server has not loaded.
+     *
+     * @param callback runs on the server thread
+     */
+    public void getShopsByOwner(UUID ownerId, Consumer<List<Shop>> callback) {
+        List<UUID> unloaded = new ArrayList<>();
+        for (UUID shopId : index.getShopIdsByOwner(ownerId)) {
+            ShopSummary summary = index.get(shopId);
+            if (!shopsById.containsKey(shopId) && plugin.getServer().getWorld(summary.getWorldName()) != null) {
+                unloaded.add(shopId);
+            }
+        }
+        if (unloaded.isEmpty()) {
+            callback.accept(getShopsByOwner(ownerId));
+            return;
+        }
+        load(unloaded, () -> callback.accept(getShopsByOwner(ownerId)));
+    }
+
+    /**
+     * @return the owner's loaded shops, see {@link #getShopsByOwner(UUID, Consumer)}
+     */
     public List<Shop> getShopsByOwner(UUID ownerId) {
         Set<UUID> shopIds = shopsByOwner.get(ownerId);
         if (shopIds == null) {
@@ -194,10 +318,240 @@ public class ShopManager {
         return shops;
     }
 
+    /**
+     * @return number of active shops the player owns, loaded or not
+     */
+    public int getShopCount(UUID ownerId) {
+        return index.getShopIdsByOwner(ownerId).size();
+    }
+
+    /**
+     * @return the loaded shops, shops in chunks nobody uses are not included
+     */
     public Collection<Shop> getAllShops() {
         return shopsById.values();
     }
 
+    public ShopIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Queues the shops of a chunk that just loaded, they are read together on the next tick.
+     */
+    public void requestChunk(String worldName, int chunkX, int chunkZ) {
+        for (ShopSummary summary : index.getShopsInChunk(worldName, chunkX, chunkZ)) {
+            if (!shopsById.containsKey(summary.getShopId()) && !loadingShops.contains(summary.getShopId())) {
+                pendingLoads.add(summary.getShopId());
+            }
+        }
+
+        if (!pendingLoads.isEmpty() && !loadScheduled) {
+            loadScheduled = true;
+            plugin.getServer().getScheduler().runTask(plugin, this::loadPendingShops);
+        }
+    }
+
+    /**
+     * Queues the shops in every loaded chunk of the world. Chunks that stayed loaded while
+     * the world was dropped to its index entries fire no new load event.
+     */
+    public void requestWorld(World world) {
+        for (ShopSummary summary : index.getShopsInWorld(world.getName())) {
+            if (world.isChunkLoaded(summary.getChunkX(), summary.getChunkZ())) {
+                requestChunk(world.getName(), summary.getChunkX(), summary.getChunkZ());
+            }
+        }
+    }
+
+    private void loadPendingShops() {
+        loadScheduled = false;
+        if (pendingLoads.isEmpty()) {
+            return;
+        }
+
+        List<UUID> shopIds = new ArrayList<>(pendingLoads);
+        pendingLoads.clear();
+        loadingShops.addAll(shopIds);
+
+        CompletableFuture<List<Shop>> loaded = plugin.getDatabaseManager().loadShops(shopIds);
+        loaded.whenComplete((shops, error) -> {
+            if (plugin.isEnabled()) {
+                plugin.getServer().getScheduler().runTask(plugin, () -> {
+                    loadingShops.removeAll(shopIds);
+                    if (shops != null) {
+                        publishLoaded(shops);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Reads the shops ahead of the chunk loads, for a player who asked for them directly.
+     * The server thread does not wait, the callback runs once they are published.
+     */
+    private void load(Collection<UUID> shopIds, Runnable then) {
+        pendingLoads.removeAll(shopIds);
+        loadingShops.addAll(shopIds);
+        whenCompleteSync(plugin.getDatabaseManager().loadShops(shopIds), (shops, error) -> {
+            loadingShops.removeAll(shopIds);
+            // On an error the shops stay unloaded, it is already reported by the persistence executor
+            if (shops != null) {
+                publishLoaded(shops);
+            }
+            then.run();
+        });
+    }
+
+    private void publishLoaded(List<Shop> shops) {
+        for (Shop shop : shops) {
+            // Removed, or loaded by another request, while the rows were read
+            if (index.get(shop.getShopId()) != null && !shopsById.containsKey(shop.getShopId())) {
+                publish(shop);
+            }
+        }
+    }
+
+    /**
+     * Applies shops another server changed in the shared database, see {@link ChangeFeed}.
+     * The index follows new, moved and removed shops. Loaded shops are read again and
+     * updated in place, so open menus keep working on the same objects.
+     *
+     * @param changes current summary by shop id, null for shops that were removed
+     */
+    public void applyRemoteChanges(Map<UUID, ShopSummary> changes) {
+        List<UUID> reload = new ArrayList<>();
+        for (Map.Entry<UUID, ShopSummary> change : changes.entrySet()) {
+            UUID shopId = change.getKey();
+            ShopSummary summary = change.getValue();
+            Shop shop = shopsById.get(shopId);
+            index.remove(shopId);
+
+            if (summary == null) {
+                pendingLoads.remove(shopId);
+                if (shop != null) {
+                    writeBehind.forget(shop);
+                    evict(shop);
+                }
+                continue;
+            }
+
+            index.add(summary);
+            World world = plugin.getServer().getWorld(summary.getWorldName());
+            if (shop != null) {
+                reload.add(shopId);
+            } else if (world != null && world.isChunkLoaded(summary.getChunkX(), summary.getChunkZ())) {
+                requestChunk(summary.getWorldName(), summary.getChunkX(), summary.getChunkZ());
+            }
+        }
+
+        if (reload.isEmpty()) {
+            return;
+        }
+
+        // Local changes reach the database before the shops are read back
+        writeBehind.flush();
+        plugin.getDatabaseManager().getPersistence().thenSync(plugin.getDatabaseManager().loadShops(reload), shops -> {
+            for (Shop loaded : shops) {
+                Shop shop = shopsById.get(loaded.getShopId());
+                if (shop != null && index.get(loaded.getShopId()) != null) {
+                    refresh(shop, loaded);
+                }
+            }
+        });
+    }
+
+    /**
+     * Copies what another server may have changed from a freshly read shop. The item of a
+     * listing never changes, only its stock, description, price and availability.
+     */
+    private void refresh(Shop shop, Shop loaded) {
+        if (!shop.getLocation().equals(loaded.getLocation()) || !shop.getOwnerId().equals(loaded.getOwnerId())) {
+            evict(shop);
+            shop.setLocation(loaded.getLocation());
+            shop.setOwnerId(loaded.getOwnerId());
+            publish(shop);
+        }
+        shop.setOwnerName(loaded.getOwnerName());
+        shop.setActive(loaded.isActive());
+        shop.setRevenue(loaded.getRevenue());
+        shop.setRevenueEntries(loaded.getRevenueEntries());
+
+        Map<UUID, ShopItem> loadedItems = new LinkedHashMap<>();
+        for (ShopItem item : loaded.getItems()) {
+            loadedItems.put(item.getItemId(), item);
+        }
+        for (ShopItem item : new ArrayList<>(shop.getItems())) {
+            ShopItem current = loadedItems.remove(item.getItemId());
+            if (current == null) {
+                delist(shop, item);
+                continue;
+            }
+            item.setQuantity(current.getQuantity());
+            item.setDescription(current.getDescription());
+            item.setPriceItems(current.getPriceItems());
+            item.setAvailable(current.isAvailable());
+            item.setVersion(current.getVersion());
+        }
+        // Once per item, for the copied fields and the shop being opened or closed
+        listings.updateAll(shop);
+        for (ShopItem item : loadedItems.values()) {
+            shop.addItem(item);
+            listings.add(shop, item);
+        }
+        shop.setLastUpdated(loaded.getLastUpdated());
+        shop.setVersion(loaded.getVersion());
+    }
+
+    /**
+     * Drops the loaded shops of a world back to their index entries.
+     *
+     * @return number of shops unloaded
+     */
+    public int unloadWorld(World world) {
+        List<Shop> shops = new ArrayList<>();
+        for (Shop shop : shopsById.values()) {
+            if (world.equals(shop.getLocation().getWorld())) {
+                shops.add(shop);
+            }
+        }
+        for (ShopSummary summary : index.getShopsInWorld(world.getName())) {
+            pendingLoads.remove(summary.getShopId());
+        }
+        if (shops.isEmpty()) {
+            return 0;
+        }
+
+        // Queued ahead of any later load of these shops, which then reads what is written here
+        writeBehind.flush();
+        for (Shop shop : shops) {
+            evict(shop);
+        }
+        return shops.size();
+    }
+
+    /**
+     * Unloads the world's shops after the configured delay if nobody is in it by then.
+     */
+    public void scheduleUnload(World world) {
+        if (!plugin.getConfigManager().isUnloadEmptyWorlds()) {
+            return;
+        }
+
+        String worldName = world.getName();
+        long delayTicks = Math.max(0, plugin.getConfigManager().getWorldUnloadDelaySeconds()) * 20L;
+        plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
+            World current = plugin.getServer().getWorld(worldName);
+            if (current != null && current.getPlayers().isEmpty()) {
+                int unloaded = unloadWorld(current);
+                if (unloaded > 0) {
+                    plugin.getMessageUtils().sendConsoleMessage("&aUnloaded " + unloaded + " shops in empty world " + worldName + ".");
+                }
+            }
+        }, delayTicks);
+    }
+
     public boolean addItemToShop(UUID shopId, ShopItem item, Player player) {
         Shop shop = shopsById.get(shopId);
         if (shop == null) {
@@ -211,6 +565,7 @@ public class ShopManager {
         }
 
         shop.addItem(item);
+        listings.add(shop, item);
         plugin.getDatabaseManager().saveShopItem(shopId, item);
 
         plugin.getMessageUtils().sendMessage(player, "shop.item.added-success");
@@ -239,22 +594,40 @@ public class ShopManager {
             return false;
         }
 
-        shop.removeItem(itemToRemove);
+        delist(shop, itemToRemove);
         plugin.getDatabaseManager().deleteShopItem(shopId, itemId);
 
         plugin.getMessageUtils().sendMessage(player, "shop.item.removed-success");
         return true;
     }
 
-    public boolean processPurchase(Player buyer, Shop shop, ShopItem item, int quantity) {
+    /**
+     * Sells the item to the buyer. On a single server this completes right away and the new stock
+     * is written behind. Servers sharing a database can sell the same stock, there the payment is
+     * held until the database took the new quantity with a version check. When another server sold
+     * or changed the item first, the payment goes back, the item is read back and the purchase is
+     * tried once more against its current stock.
+     *
+     * @param onSuccess runs on the server thread once the purchase went through
+     */
+    public void processPurchase(Player buyer, Shop shop, ShopItem item, int quantity, Runnable onSuccess) {
+        processPurchase(buyer, shop, item, quantity, onSuccess, true);
+    }
+
+    private void processPurchase(Player buyer, Shop shop, ShopItem item, int quantity, Runnable onSuccess, boolean retryOnConflict) {
         if (!item.isAvailable() || item.getQuantity() < quantity) {
             plugin.getMessageUtils().sendMessage(buyer, "shop.purchase.item-unavailable");
-            return false;
+            return;
         }
 
         if (!hasRequiredItems(buyer, item.getPriceItems(), quantity)) {
             plugin.getMessageUtils().sendMessage(buyer, "shop.purchase.insufficient-items");
-            return false;
+            return;
+        }
+
+        if (isSharedDatabase() && !versionedWrites.add(item.getItemId())) {
+            plugin.getMessageUtils().sendMessage(buyer, "shop.busy");
+            return;
         }
 
         // Calculate total payment
@@ -268,35 +641,78 @@ public class ShopManager {
         // Remove payment items from buyer
         removeRequiredItems(buyer, item.getPriceItems(), quantity);
 
-        // Add payment to shop revenue
+        // Reduce shop item quantity
+        item.reduceQuantity(quantity);
+        boolean soldOut = item.getQuantity() <= 0;
+
+        if (!isSharedDatabase()) {
+            // If item quantity reaches 0, remove it completely from the shop
+            if (soldOut) {
+                delist(shop, item);
+                plugin.getDatabaseManager().deleteShopItem(shop.getShopId(), item.getItemId());
+            } else {
+                // Updated quantity is written by the next write-behind flush, the journal covers a crash until then
+                plugin.getDatabaseManager().journalShopItem(shop.getShopId(), item);
+                writeBehind.markDirty(shop, item);
+                listings.update(item);
+            }
+            completePurchase(buyer, shop, item, quantity, totalPayment, soldOut);
+            onSuccess.run();
+            return;
+        }
+
+        // A sold out item is delisted by the same write
+        CompletableFuture<Boolean> saved = plugin.getDatabaseManager().saveShopItemIfVersion(shop.getShopId(), item);
+        whenCompleteSync(saved, (result, error) -> {
+            versionedWrites.remove(item.getItemId());
+            if (error == null && result) {
+                if (soldOut) {
+                    delist(shop, item);
+                } else {
+                    listings.update(item);
+                }
+                completePurchase(buyer, shop, item, quantity, totalPayment, soldOut);
+                onSuccess.run();
+                return;
+            }
+
+            giveItems(buyer, totalPayment);
+            if (error != null) {
+                // The version was already bumped, the next read brings back what the database kept
+                discard(shop);
+                plugin.getMessageUtils().sendMessage(buyer, "shop.purchase.failed");
+                return;
+            }
+
+            // Another server got there first, buy from the stock it left if there is enough
+            reload(shop, loaded -> {
+                if (retryOnConflict && loaded && shop.getItems().contains(item)) {
+                    processPurchase(buyer, shop, item, quantity, onSuccess, false);
+                } else {
+                    plugin.getMessageUtils().sendMessage(buyer, "shop.purchase.stock-changed");
+                }
+            });
+        });
+    }
+
+    private void completePurchase(Player buyer, Shop shop, ShopItem item, int quantity, List<ItemStack> totalPayment, boolean soldOut) {
+        // Add payment to shop revenue, stored as one small ledger insert instead of rewriting the shop row
         shop.addRevenue(totalPayment);
+        plugin.getDatabaseManager().appendRevenue(shop, totalPayment);
 
         // Give purchased item to buyer
         ItemStack purchasedItem = item.getItemStack();
         purchasedItem.setAmount(quantity);
         buyer.getInventory().addItem(purchasedItem);
 
-        // Reduce shop item quantity
-        item.reduceQuantity(quantity);
-
-        // If item quantity reaches 0, remove it completely from the shop
-        if (item.getQuantity() <= 0) {
-            shop.removeItem(item);
-            plugin.getDatabaseManager().deleteShopItem(shop.getShopId(), item.getItemId());
-
+        if (soldOut) {
             // Notify owner that item sold out
             Player owner = plugin.getServer().getPlayer(shop.getOwnerId());
             if (owner != null && owner.isOnline()) {
                 plugin.getMessageUtils().sendMessage(owner, "shop.item.sold-out", item.getFormattedItemName());
             }
-        } else {
-            // Save updated quantity
-            plugin.getDatabaseManager().saveShopItem(shop.getShopId(), item);
         }
 
-        // Save shop (for revenue)
-        plugin.getDatabaseManager().saveShop(shop);
-
         plugin.getMessageUtils().sendMessage(buyer, "shop.purchase.success", String.valueOf(quantity), item.getFormattedItemName());
 
         // Notify shop owner
@@ -305,25 +721,231 @@ public class ShopManager {
             plugin.getMessageUtils().sendMessage(owner, "shop.owner.purchase-notification", buyer.getName(), String.valueOf(quantity), item.getFormattedItemName());
             plugin.getMessageUtils().sendMessage(owner, "shop.owner.revenue-waiting");
         }
+    }
 
-        return true;
+    /**
+     * Applies an owner's change to a listing and saves it. On a shared database the change is
+     * written with a version check. When another server changed the item first, the item is read
+     * back and the change applied once more on top of what the other server wrote.
+     *
+     * @param edit the change, it may run twice so it must not depend on the old values
+     * @param done runs on the server thread with true once the change is saved, false if it was given up
+     */
+    public void editItem(Player player, Shop shop, ShopItem item, Consumer<ShopItem> edit, Consumer<Boolean> done) {
+        editItem(player, shop, item, edit, done, true);
     }
 
-    public boolean collectRevenue(UUID shopId, Player player) {
+    private void editItem(Player player, Shop shop, ShopItem item, Consumer<ShopItem> edit, Consumer<Boolean> done, boolean retryOnConflict) {
+        if (!isSharedDatabase()) {
+            edit.accept(item);
+            listings.update(item);
+            saveEditedItem(shop, item);
+            done.accept(true);
+            return;
+        }
+
+        if (!versionedWrites.add(item.getItemId())) {
+            plugin.getMessageUtils().sendMessage(player, "shop.busy");
+            done.accept(false);
+            return;
+        }
+
+        edit.accept(item);
+        listings.update(item);
+        whenCompleteSync(plugin.getDatabaseManager().saveShopItemIfVersion(shop.getShopId(), item), (saved, error) -> {
+            versionedWrites.remove(item.getItemId());
+            if (error == null && saved) {
+                if (item.getQuantity() <= 0) {
+                    delist(shop, item);
+                }
+                done.accept(true);
+                return;
+            }
+
+            if (error != null) {
+                discard(shop);
+                plugin.getMessageUtils().sendMessage(player, "shop.save-failed");
+                done.accept(false);
+                return;
+            }
+
+            // The read back drops the change, it is applied again to what the other server wrote
+            reload(shop, loaded -> {
+                if (retryOnConflict && loaded && shop.getItems().contains(item)) {
+                    editItem(player, shop, item, edit, done, false);
+                } else {
+                    plugin.getMessageUtils().sendMessage(player, "shop.changed-elsewhere");
+                    done.accept(false);
+                }
+            });
+        });
+    }
+
+    private void saveEditedItem(Shop shop, ShopItem item) {
+        // Stock taken back while buyers emptied the item, it is sold out now
+        if (item.getQuantity() <= 0) {
+            delist(shop, item);
+            plugin.getDatabaseManager().deleteShopItem(shop.getShopId(), item.getItemId());
+        } else {
+            plugin.getDatabaseManager().saveShopItem(shop.getShopId(), item);
+        }
+    }
+
+    /**
+     * Applies an owner's change to a shop and saves it, see {@link #editItem}.
+     */
+    public void editShop(Player player, Shop shop, Consumer<Shop> edit, Consumer<Boolean> done) {
+        editShop(player, shop, edit, done, true);
+    }
+
+    private void editShop(Player player, Shop shop, Consumer<Shop> edit, Consumer<Boolean> done, boolean retryOnConflict) {
+        if (!isSharedDatabase()) {
+            edit.accept(shop);
+            listings.updateAll(shop);
+            plugin.getDatabaseManager().saveShop(shop);
+            done.accept(true);
+            return;
+        }
+
+        if (!versionedWrites.add(shop.getShopId())) {
+            plugin.getMessageUtils().sendMessage(player, "shop.busy");
+            done.accept(false);
+            return;
+        }
+
+        edit.accept(shop);
+        listings.updateAll(shop);
+        whenCompleteSync(plugin.getDatabaseManager().saveShopIfVersion(shop), (saved, error) -> {
+            versionedWrites.remove(shop.getShopId());
+            if (error == null && saved) {
+                done.accept(true);
+                return;
+            }
+
+            if (error != null) {
+                discard(shop);
+                plugin.getMessageUtils().sendMessage(player, "shop.save-failed");
+                done.accept(false);
+                return;
+            }
+
+            reload(shop, loaded -> {
+                if (retryOnConflict && loaded) {
+                    editShop(player, shop, edit, done, false);
+                } else {
+                    plugin.getMessageUtils().sendMessage(player, "shop.changed-elsewhere");
+                    done.accept(false);
+                }
+            });
+        });
+    }
+
+    /**
+     * Servers sharing one database check row versions on purchases and edits,
+     * a single server owns its rows and writes them behind.
+     */
+    private boolean isSharedDatabase() {
+        return plugin.getConfigManager().isChangeFeedEnabled();
+    }
+
+    /**
+     * Runs the callback on the server thread with the result, or with the cause if the future failed.
+     */
+    private <T> void whenCompleteSync(CompletableFuture<T> future, BiConsumer<T, Throwable> callback) {
+        plugin.getDatabaseManager().getPersistence().thenSync(future,
+            result -> callback.accept(result, null),
+            error -> callback.accept(null, error));
+    }
+
+    /**
+     * Reads the shop back after a lost version check and copies what the other server wrote.
+     *
+     * @param then runs on the server thread with false if the shop is gone or could not be read
+     */
+    private void reload(Shop shop, Consumer<Boolean> then) {
+        whenCompleteSync(plugin.getDatabaseManager().loadShops(Collections.singleton(shop.getShopId())), (shops, error) -> {
+            if (error != null) {
+                discard(shop);
+                then.accept(false);
+                return;
+            }
+            if (shopsById.get(shop.getShopId()) != shop) {
+                then.accept(false);
+                return;
+            }
+            if (shops.isEmpty()) {
+                // Removed on another server
+                index.remove(shop.getShopId());
+                writeBehind.forget(shop);
+                evict(shop);
+                then.accept(false);
+                return;
+            }
+            refresh(shop, shops.get(0));
+            then.accept(true);
+        });
+    }
+
+    /**
+     * Drops a loaded shop whose state can no longer be trusted, it is read again on the next access.
+     */
+    private void discard(Shop shop) {
+        if (shopsById.get(shop.getShopId()) == shop) {
+            writeBehind.forget(shop);
+            evict(shop);
+        }
+    }
+
+    private void giveItems(Player player, List<ItemStack> items) {
+        // Drop leftovers on the ground if inventory is full
+        for (ItemStack leftover : player.getInventory().addItem(items.toArray(new ItemStack[0])).values()) {
+            player.getWorld().dropItemNaturally(player.getLocation(), leftover);
+        }
+    }
+
+    /**
+     * Hands the shop's revenue to its owner. On a shared database the emptied revenue is
+     * written with a version check first and the items are only handed out once it is saved,
+     * so two servers never hand out the same revenue.
+     *
+     * @param done runs on the server thread with true once the revenue was collected
+     */
+    public void collectRevenue(UUID shopId, Player player, Consumer<Boolean> done) {
         Shop shop = shopsById.get(shopId);
         if (shop == null) {
             plugin.getMessageUtils().sendMessage(player, "shop.not-found");
-            return false;
+            done.accept(false);
+            return;
         }
 
         if (!shop.getOwnerId().equals(player.getUniqueId())) {
             plugin.getMessageUtils().sendMessage(player, "shop.not-owner");
-            return false;
+            done.accept(false);
+            return;
         }
 
         if (!shop.hasRevenue()) {
             plugin.getMessageUtils().sendMessage(player, "shop.revenue.no-revenue");
-            return false;
+            done.accept(false);
+            return;
+        }
+
+        if (isSharedDatabase()) {
+            // Taken again if the shop is read back after a conflict
+            List<ItemStack> collected = new ArrayList<>();
+            editShop(player, shop, edited -> {
+                collected.clear();
+                collected.addAll(edited.getRevenue());
+                edited.clearRevenue();
+            }, saved -> {
+                if (saved && !collected.isEmpty()) {
+                    giveItems(player, collected);
+                    plugin.getMessageUtils().sendMessage(player, "shop.revenue.collected",
+                        String.valueOf(collected.stream().mapToInt(ItemStack::getAmount).sum()));
+                }
+                done.accept(saved && !collected.isEmpty());
+            });
+            return;
         }
 
         // Add all revenue items to player's inventory
@@ -333,12 +955,12 @@ public class ShopManager {
             itemsCollected += revenueItem.getAmount();
         }
 
-        // Clear shop revenue
+        // Clear shop revenue, saved right away so a crash cannot hand out the same revenue twice
         shop.clearRevenue();
-        plugin.getDatabaseManager().saveShop(shop);
+        writeBehind.saveNow(shop);
 
         plugin.getMessageUtils().sendMessage(player, "shop.revenue.collected", String.valueOf(itemsCollected));
-        return true;
+        done.accept(true);
     }
 
     private boolean hasRequiredItems(Player player, List<ItemStack> requiredItems, int multiplier) {
@@ -387,28 +1009,73 @@ public class ShopManager {
         }
     }
 
-    public void loadAllShops() {
-        List<Shop> shops = plugin.getDatabaseManager().loadAllShops();
-        for (Shop shop : shops) {
-            shopsByLocation.put(shop.getLocation(), shop);
-            shopsById.put(shop.getShopId(), shop);
-            shopsByOwner.computeIfAbsent(shop.getOwnerId(), k -> new HashSet<>()).add(shop.getShopId());
+    /**
+     * Startup: indexes every active shop and loads the ones in chunks that are already loaded.
+     * Everything else loads with its chunk, see {@link #requestChunk}.
+     */
+    public void loadShopIndex() {
+        long indexStart = System.nanoTime();
+        for (ShopSummary summary : plugin.getDatabaseManager().loadShopSummaries()) {
+            index.add(summary);
         }
+        plugin.getMessageUtils().sendConsoleMessage(String.format("&aIndexed %d shops in %d worlds in %d ms.",
+            index.size(), index.getWorldCount(), (System.nanoTime() - indexStart) / 1_000_000L));
+
+        List<UUID> inLoadedChunks = new ArrayList<>();
+        for (World world : plugin.getServer().getWorlds()) {
+            for (ShopSummary summary : index.getShopsInWorld(world.getName())) {
+                if (world.isChunkLoaded(summary.getChunkX(), summary.getChunkZ())) {
+                    inLoadedChunks.add(summary.getShopId());
+                }
+            }
+        }
+
+        ShopLoadPipeline.Result result = plugin.getDatabaseManager().preloadShops(inLoadedChunks);
+        List<Shop> shops = result.getShops();
 
+        // Publish stage
+        long publishStart = System.nanoTime();
+        publishLoaded(shops);
+        long publishNanos = System.nanoTime() - publishStart;
+
+        plugin.getMessageUtils().sendConsoleMessage(result.formatReport(publishNanos));
         plugin.getMessageUtils().sendConsoleMessage(plugin.getLocaleManager().getMessage("shop.loaded-from-database", String.valueOf(shops.size())));
+
+        // Worlds nobody joins drop back to their index entries
+        for (World world : plugin.getServer().getWorlds()) {
+            scheduleUnload(world);
+        }
     }
 
     public void saveAllShops() {
-        for (Shop shop : shopsById.values()) {
-            plugin.getDatabaseManager().saveShop(shop);
+        // On a shared database every change was already written with a version check, rewriting
+        // the loaded copies would overwrite what other servers committed since, only checkpoint
+        Collection<Shop> shops = isSharedDatabase() ? Collections.emptyList() : shopsById.values();
+        Map<UUID, List<ShopItem>> itemsByShop = new HashMap<>();
+        for (Shop shop : shops) {
+            itemsByShop.put(shop.getShopId(), shop.getItems());
+        }
+
+        // Called from onDisable, wait so the report reflects what actually reached the database
+        try {
+            BatchResult result = plugin.getDatabaseManager().saveBatch(shops, itemsByShop).join();
+            plugin.getMessageUtils().sendConsoleMessage(String.format("&aSaved %d shops and %d items in %d ms (%.0f rows/s).",
+                result.getShopRows(), result.getItemRows(), result.getElapsedMillis(), result.getRowsPerSecond()));
+        } catch (CompletionException e) {
+            // Already reported by the persistence executor
+            return;
         }
 
-        plugin.getMessageUtils().sendConsoleMessage(plugin.getLocaleManager().getMessage("shop.saved-to-database", String.valueOf(shopsById.size())));
+        plugin.getMessageUtils().sendConsoleMessage(plugin.getLocaleManager().getMessage("shop.saved-to-database", String.valueOf(shops.size())));
     }
 
+    /**
+     * Total shops come from the index, everything else only covers the loaded shops.
+     */
     public Map<String, Integer> getShopStatistics() {
         Map<String, Integer> stats = new HashMap<>();
-        stats.put("total_shops", shopsById.size());
+        stats.put("total_shops", index.size());
+        stats.put("loaded_shops", shopsById.size());
         stats.put("active_shops", (int) shopsById.values().stream().filter(Shop::isActive).count());
         stats.put("total_items", shopsById.values().stream().mapToInt(shop -> shop.getItems().size()).sum());
         stats.put("total_revenue_items", shopsById.values().stream().mapToInt(Shop::getTotalRevenueItems).sum());
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.nouridin.supershop.managers;
+
+import me.nouridin.supershop.models.Shop;
+import org.bukkit.Location;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * The loaded shops of each world in a grid of {@value #CELL_SIZE} by {@value #CELL_SIZE} block
+ * cells keyed by X and Z. Radius and nearest-shop queries only visit the cells around the
+ * searcher and only take the square root for shops that are close enough. Shops in other worlds
+ * are never looked at.
+ * <p>
+ * Kept up to date by the {@link ShopManager} when shops are loaded, moved or unloaded.
+ * Only used from the server thread.
+ */
+public class SpatialIndex {
+
+    private static final int CELL_SHIFT = 6;
+    private static final int CELL_SIZE = 1 << CELL_SHIFT;
+
+    private final Map<String, Grid> worlds = new HashMap<>();
+
+    public static final class Neighbor {
+
+        private final Shop shop;
+        private final double distance;
+
+        private Neighbor(Shop shop, double distance) {
+            this.shop = shop;
+            this.distance = distance;
+        }
+
+        public Shop getShop() { return shop; }
+        public double getDistance() { return distance; }
+    }
+
+    private static final class Grid {
+
+        private final Map<Long, List<Shop>> cells = new HashMap<>();
+        // Cells that ever held a shop lie within these bounds, they only grow
+        private int minX = Integer.MAX_VALUE;
+        private int maxX = Integer.MIN_VALUE;
+        private int minZ = Integer.MAX_VALUE;
+        private int maxZ = Integer.MIN_VALUE;
+        private int size;
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    private static int cell(double coordinate) {
+        return (int) Math.floor(coordinate) >> CELL_SHIFT;
+    }
+
+    public void add(Shop shop) {
+        Location location = shop.getLocation();
+        Grid grid = worlds.computeIfAbsent(shop.getWorldName(), k -> new Grid());
+        int cellX = location.getBlockX() >> CELL_SHIFT;
+        int cellZ = location.getBlockZ() >> CELL_SHIFT;
+        grid.cells.computeIfAbsent(cellKey(cellX, cellZ), k -> new ArrayList<>()).add(shop);
+        grid.minX = Math.min(grid.minX, cellX);
+        grid.maxX = Math.max(grid.maxX, cellX);
+        grid.minZ = Math.min(grid.minZ, cellZ);
+        grid.maxZ = Math.max(grid.maxZ, cellZ);
+        grid.size++;
+    }
+
+    public void remove(Shop shop) {
+        Grid grid = worlds.get(shop.getWorldName());
+        if (grid == null) {
+            return;
+        }
+
+        Location location = shop.getLocation();
+        long key = cellKey(location.getBlockX() >> CELL_SHIFT, location.getBlockZ() >> CELL_SHIFT);
+        List<Shop> shops = grid.cells.get(key);
+        if (shops != null && shops.remove(shop)) {
+            if (shops.isEmpty()) {
+                grid.cells.remove(key);
+            }
+            if (--grid.size == 0) {
+                worlds.remove(shop.getWorldName());
+            }
+        }
+    }
+
+    /**
+     * Shops in the same world as the center and at most {@code radius} blocks away, in no particular order.
+     */
+    public List<Neighbor> withinRadius(Location center, double radius) {
+        List<Neighbor> neighbors = new ArrayList<>();
+        Grid grid = center.getWorld() != null ? worlds.get(center.getWorld().getName()) : null;
+        if (grid == null) {
+            return neighbors;
+        }
+
+        int fromX = Math.max(grid.minX, cell(center.getX() - radius));
+        int toX = Math.min(grid.maxX, cell(center.getX() + radius));
+        int fromZ = Math.max(grid.minZ, cell(center.getZ() - radius));
+        int toZ = Math.min(grid.maxZ, cell(center.getZ() + radius));
+        double radiusSquared = radius * radius;
+
+        // A radius wider than the occupied cells is cheaper to answer from the cells themselves
+        if ((long) (toX - fromX + 1) * (toZ - fromZ + 1) > grid.cells.size()) {
+            for (List<Shop> shops : grid.cells.values()) {
+                collect(shops, center, radiusSquared, neighbors);
+            }
+            return neighbors;
+        }
+
+        for (int x = fromX; x <= toX; x++) {
+            for (int z = fromZ; z <= toZ; z++) {
+                List<Shop> shops = grid.cells.get(cellKey(x, z));
+                if (shops != null) {
+                    collect(shops, center, radiusSquared, neighbors);
+                }
+            }
+        }
+        return neighbors;
+    }
+
+    /**
+     * Up to {@code count} shops in the same world as the center, nearest first.
+     */
+    public List<Neighbor> nearest(Location center, int count) {
+        List<Neighbor> nearest = new ArrayList<>();
+        Iterator<Neighbor> neighbors = nearestFirst(center);
+        while (nearest.size() < count && neighbors.hasNext()) {
+            nearest.add(neighbors.next());
+        }
+        return nearest;
+    }
+
+    /**
+     * Shops in the same world as the center, nearest first. Cells are visited in rings around
+     * the center as the iteration goes on, a shop is handed out once no unvisited cell can hold
+     * anything closer. Callers that stop early never look at the far cells.
+     */
+    public Iterator<Neighbor> nearestFirst(Location center) {
+        Grid grid = center.getWorld() != null ? worlds.get(center.getWorld().getName()) : null;
+        if (grid == null) {
+            return Collections.emptyIterator();
+        }
+        return new RingIterator(grid, center);
+    }
+
+    private static final class RingIterator implements Iterator<Neighbor> {
+
+        private final Grid grid;
+        private final Location center;
+        private final int centerX;
+        private final int centerZ;
+        private final int lastRing;
+        private final PriorityQueue<Neighbor> pending = new PriorityQueue<>(Comparator.comparingDouble(Neighbor::getDistance));
+        private int ring;
+
+        private RingIterator(Grid grid, Location center) {
+            this.grid = grid;
+            this.center = center;
+            this.centerX = cell(center.getX());
+            this.centerZ = cell(center.getZ());
+            // Rings that miss every occupied cell are skipped
+            this.ring = Math.max(0, Math.max(
+                Math.max(grid.minX - centerX, centerX - grid.maxX),
+                Math.max(grid.minZ - centerZ, centerZ - grid.maxZ)));
+            this.lastRing = Math.max(
+                Math.max(Math.abs(centerX - grid.minX), Math.abs(grid.maxX - centerX)),
+                Math.max(Math.abs(centerZ - grid.minZ), Math.abs(grid.maxZ - centerZ)));
+        }
+
+        @Override
+        public boolean hasNext() {
+            // Everything in the next ring is at least ring - 1 cells away from the center
+            while (ring <= lastRing && (pending.isEmpty() || pending.peek().getDistance() > (ring - 1) * (double) CELL_SIZE)) {
+                visitRing(grid, centerX, centerZ, ring++, shops -> {
+                    for (Shop shop : shops) {
+                        pending.add(new Neighbor(shop, shop.getLocation().distance(center)));
+                    }
+                });
+            }
+            return !pending.isEmpty();
+        }
+
+        @Override
+        public Neighbor next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return pending.poll();
+        }
+    }
+
+    private static void visitRing(Grid grid, int centerX, int centerZ, int ring, Consumer<List<Shop>> visitor) {
+        int fromX = Math.max(grid.minX, centerX - ring);
+        int toX = Math.min(grid.maxX, centerX + ring);
+        int fromZ = Math.max(grid.minZ, centerZ - ring);
+        int toZ = Math.min(grid.maxZ, centerZ + ring);
+
+        for (int x = fromX; x <= toX; x++) {
+            boolean edgeColumn = x == centerX - ring || x == centerX + ring;
+            for (int z = fromZ; z <= toZ; z++) {
+                // Only the outline of the square, the inside was visited by the smaller rings
+                if (!edgeColumn && z != centerZ - ring && z != centerZ + ring) {
+                    z = centerZ + ring - 1;
+                    continue;
+                }
+                List<Shop> shops = grid.cells.get(cellKey(x, z));
+                if (shops != null) {
+                    visitor.accept(shops);
+                }
+            }
+        }
+    }
+
+    private static void collect(List<Shop> shops, Location center, double radiusSquared, List<Neighbor> neighbors) {
+        for (Shop shop : shops) {
+            double distanceSquared = shop.getLocation().distanceSquared(center);
+            if (distanceSquared <= radiusSquared) {
+                neighbors.add(new Neighbor(shop, Math.sqrt(distanceSquared)));
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Grid grid : worlds.values()) {
+            size += grid.size;
+        }
+        return size;
+    }
+}
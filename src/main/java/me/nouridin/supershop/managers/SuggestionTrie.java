@@ -0,0 +1,216 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.nouridin.supershop.managers;
+
+import java.util.*;
+
+/**
+ * Search suggestions in a prefix tree, weighted by how many active listings carry them.
+ * Every node knows the heaviest suggestion below it, so the best completions of a prefix
+ * are found by walking down the heaviest branches first and never touch the rest of the tree.
+ * A suggestion is also reachable from the start of each of its words, so "sword" completes
+ * to "diamond sword".
+ * <p>
+ * Kept up to date by the {@link ListingIndex}. Only used from the server thread.
+ */
+public class SuggestionTrie {
+
+    private final Node root = new Node(null, '\0');
+
+    private static final class Node {
+
+        private final Node parent;
+        private final char key;
+        private final Map<Character, Node> children = new HashMap<>(4);
+        // Suggestions that end here, with their weights
+        private final Map<String, Integer> suggestions = new HashMap<>(2);
+        // Heaviest suggestion in this subtree
+        private int best;
+
+        private Node(Node parent, char key) {
+            this.parent = parent;
+            this.key = key;
+        }
+    }
+
+    /**
+     * A node to expand or a suggestion to hand out, heaviest first and alphabetical among
+     * equals. A node sorts before everything below it, so ties come out in alphabetical order.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+
+        private final int weight;
+        private final String key;
+        private final Node node;
+        private final String suggestion;
+
+        private Candidate(int weight, String key, Node node, String suggestion) {
+            this.weight = weight;
+            this.key = key;
+            this.node = node;
+            this.suggestion = suggestion;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            if (weight != other.weight) {
+                return Integer.compare(other.weight, weight);
+            }
+            int compared = key.compareTo(other.key);
+            if (compared != 0) {
+                return compared;
+            }
+            // A suggestion ending at a node comes before the longer ones below it
+            if ((suggestion == null) != (other.suggestion == null)) {
+                return suggestion != null ? -1 : 1;
+            }
+            return suggestion != null ? suggestion.compareTo(other.suggestion) : 0;
+        }
+    }
+
+    public void add(String suggestion) {
+        change(suggestion, 1);
+    }
+
+    public void remove(String suggestion) {
+        change(suggestion, -1);
+    }
+
+    private void change(String suggestion, int delta) {
+        for (String key : keysOf(suggestion)) {
+            Node node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                Node child = node.children.get(key.charAt(i));
+                if (child == null && delta > 0) {
+                    child = new Node(node, key.charAt(i));
+                    node.children.put(key.charAt(i), child);
+                }
+                node = child;
+            }
+            if (node == null) {
+                continue;
+            }
+
+            int weight = node.suggestions.getOrDefault(suggestion, 0) + delta;
+            if (weight > 0) {
+                node.suggestions.put(suggestion, weight);
+            } else {
+                node.suggestions.remove(suggestion);
+            }
+            rebalance(node);
+        }
+    }
+
+    /**
+     * Recomputes the heaviest suggestion on the path up from the node and drops branches
+     * that lost their last suggestion.
+     */
+    private void rebalance(Node node) {
+        while (node != null) {
+            int best = 0;
+            for (int weight : node.suggestions.values()) {
+                best = Math.max(best, weight);
+            }
+            for (Node child : node.children.values()) {
+                best = Math.max(best, child.best);
+            }
+            node.best = best;
+
+            Node parent = node.parent;
+            if (parent != null && best == 0) {
+                parent.children.remove(node.key);
+            }
+            node = parent;
+        }
+    }
+
+    /**
+     * Up to {@code limit} suggestions with a word starting with the prefix, heaviest first.
+     */
+    public List<String> complete(String prefix, int limit) {
+        List<String> completions = new ArrayList<>();
+        String key = keyOf(prefix);
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        if (node == null || node.best == 0 || limit <= 0) {
+            return completions;
+        }
+
+        // A suggestion reachable from several of its words comes out once
+        Set<String> seen = new HashSet<>();
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+        candidates.add(new Candidate(node.best, key, node, null));
+        while (!candidates.isEmpty() && completions.size() < limit) {
+            Candidate candidate = candidates.poll();
+            if (candidate.suggestion != null) {
+                if (seen.add(candidate.suggestion)) {
+                    completions.add(candidate.suggestion);
+                }
+                continue;
+            }
+
+            Node expanded = candidate.node;
+            for (Map.Entry<String, Integer> entry : expanded.suggestions.entrySet()) {
+                candidates.add(new Candidate(entry.getValue(), candidate.key, null, entry.getKey()));
+            }
+            for (Node child : expanded.children.values()) {
+                candidates.add(new Candidate(child.best, candidate.key + child.key, child, null));
+            }
+        }
+        return completions;
+    }
+
+    public int getSuggestionCount() {
+        return count(root);
+    }
+
+    private static int count(Node node) {
+        int count = node.suggestions.size();
+        for (Node child : node.children.values()) {
+            count += count(child);
+        }
+        return count;
+    }
+
+    /**
+     * The suggestion from the start of each of its words.
+     */
+    private static Set<String> keysOf(String suggestion) {
+        String key = ListingIndex.normalize(suggestion);
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(key);
+        for (int i = 1; i < key.length(); i++) {
+            if (key.charAt(i - 1) == ' ') {
+                keys.add(key.substring(i));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Compared the way the {@link ListingIndex} compares text, a trailing space still means the
+     * word is complete.
+     */
+    private static String keyOf(String text) {
+        String key = ListingIndex.normalize(text);
+        boolean wordEnded = !key.isEmpty() && !Character.isLetterOrDigit(text.charAt(text.length() - 1));
+        return wordEnded ? key + ' ' : key;
+    }
+}
@@ -20,7 +20,10 @@ import org.bukkit.Location;
 import org.bukkit.inventory.ItemStack;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public class Shop {
@@ -31,9 +34,11 @@ public class Shop {
     private Location location;
     private List<ShopItem> items;
     private List<ItemStack> revenue; // Store payment items here
+    private final Set<UUID> revenueEntries = new LinkedHashSet<>(); // Ledger entries in revenue, not folded into the stored row yet
     private boolean isActive;
     private long createdAt;
     private long lastUpdated;
+    private long version; // Version of the database row as this server last wrote or read it
     
     public Shop(UUID shopId, UUID ownerId, String ownerName, Location location) {
         this.shopId = shopId;
@@ -126,6 +131,29 @@ public class Shop {
         updateLastModified();
     }
     
+    /**
+     * Records revenue ledger entries whose items were added to the revenue.
+     */
+    public void addRevenueEntries(Collection<UUID> entryIds) {
+        revenueEntries.addAll(entryIds);
+    }
+
+    public void setRevenueEntries(Collection<UUID> entryIds) {
+        revenueEntries.clear();
+        revenueEntries.addAll(entryIds);
+    }
+
+    public Set<UUID> getRevenueEntries() { return revenueEntries; }
+
+    /**
+     * Hands the recorded ledger entries to a write of the shop row, which folds them.
+     */
+    public List<UUID> takeRevenueEntries() {
+        List<UUID> entryIds = new ArrayList<>(revenueEntries);
+        revenueEntries.clear();
+        return entryIds;
+    }
+    
     public boolean hasRevenue() {
         return !revenue.isEmpty();
     }
@@ -142,6 +170,17 @@ public class Shop {
         this.lastUpdated = System.currentTimeMillis();
     }
     
+    // Optimistic concurrency
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+    
+    /**
+     * Advances the version for a write that is about to be issued.
+     *
+     * @return the version the row has once the write is done
+     */
+    public long nextVersion() { return ++version; }
+    
     public String getWorldName() {
         return location.getWorld() != null ? location.getWorld().getName() : "unknown";
     }
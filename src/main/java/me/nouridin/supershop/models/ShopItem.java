@@ -16,22 +16,34 @@
 
 package me.nouridin.supershop.models;
 
+import me.nouridin.supershop.util.ItemCodec;
+import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.util.List;
 import java.util.UUID;
 
 public class ShopItem {
     
     private UUID itemId;
-    private ItemStack itemStack;
+    private ItemStack itemStack; // Null while the item is only held as encoded bytes
+    private byte[] encodedItem; // ItemCodec bytes as loaded from the database
+    private volatile SoftReference<ItemStack> decodedItem; // Decoded copy of encodedItem, dropped under memory pressure
+    private Material material;
+    private int itemAmount;
+    private String displayName; // Custom display name, null if the item has none
     private int quantity;
     private String description;
     private List<ItemStack> priceItems;
     private boolean isAvailable;
+    private boolean dirty; // Has unsaved changes waiting for the write-behind flush
+    private long version; // Version of the database row as this server last wrote or read it
     
     public ShopItem(UUID itemId, ItemStack itemStack, int quantity, List<ItemStack> priceItems) {
         this.itemId = itemId;
-        this.itemStack = itemStack.clone();
+        setItemStack(itemStack);
         this.quantity = quantity;
         this.priceItems = priceItems;
         this.description = "";
@@ -43,12 +55,77 @@ public class ShopItem {
         this.description = description;
     }
     
+    /**
+     * Creates an item backed by its encoded bytes. The ItemStack is only decoded on the
+     * first {@link #getItemStack()}, until then material, amount and display name come
+     * from the cheap columns stored next to the blob.
+     */
+    public ShopItem(UUID itemId, byte[] encodedItem, Material material, int itemAmount, String displayName,
+                    int quantity, String description, List<ItemStack> priceItems) {
+        this.itemId = itemId;
+        this.encodedItem = encodedItem;
+        this.material = material;
+        this.itemAmount = itemAmount;
+        this.displayName = displayName;
+        this.quantity = quantity;
+        this.priceItems = priceItems;
+        this.description = description;
+        this.isAvailable = true;
+    }
+    
     // Getters and Setters
     public UUID getItemId() { return itemId; }
     public void setItemId(UUID itemId) { this.itemId = itemId; }
     
-    public ItemStack getItemStack() { return itemStack.clone(); }
-    public void setItemStack(ItemStack itemStack) { this.itemStack = itemStack.clone(); }
+    public ItemStack getItemStack() { return resolveItemStack().clone(); }
+    
+    public void setItemStack(ItemStack itemStack) {
+        this.itemStack = itemStack.clone();
+        this.encodedItem = null;
+        this.decodedItem = null;
+        this.material = itemStack.getType();
+        this.itemAmount = itemStack.getAmount();
+        this.displayName = itemStack.hasItemMeta() && itemStack.getItemMeta().hasDisplayName() ?
+            itemStack.getItemMeta().getDisplayName() : null;
+    }
+    
+    private ItemStack resolveItemStack() {
+        if (itemStack != null) {
+            return itemStack;
+        }
+        
+        SoftReference<ItemStack> reference = decodedItem;
+        ItemStack decoded = reference == null ? null : reference.get();
+        if (decoded == null) {
+            try {
+                decoded = ItemCodec.decode(encodedItem);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to decode shop item " + itemId, e);
+            }
+            if (decoded == null) {
+                throw new IllegalStateException("Shop item " + itemId + " has no item data");
+            }
+            decodedItem = new SoftReference<>(decoded);
+        }
+        return decoded;
+    }
+    
+    /**
+     * @return the encoded item if it is still unchanged since loading, so it can be saved without decoding
+     */
+    public byte[] getEncodedItem() { return encodedItem; }
+    
+    public Material getMaterial() { return material; }
+    public int getItemAmount() { return itemAmount; }
+    public String getDisplayName() { return displayName; }
+    
+    /**
+     * @return true if the full ItemStack is currently held in memory
+     */
+    public boolean isMaterialized() {
+        SoftReference<ItemStack> reference = decodedItem;
+        return itemStack != null || (reference != null && reference.get() != null);
+    }
     
     public int getQuantity() { return quantity; }
     public void setQuantity(int quantity) { this.quantity = quantity; }
@@ -74,6 +151,30 @@ public class ShopItem {
         quantity += amount;
     }
     
+    // Write-behind tracking
+    public boolean isDirty() { return dirty; }
+    public void clearDirty() { dirty = false; }
+    
+    /**
+     * @return true if the item was clean before this call
+     */
+    public boolean markDirty() {
+        boolean wasClean = !dirty;
+        dirty = true;
+        return wasClean;
+    }
+    
+    // Optimistic concurrency
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+    
+    /**
+     * Advances the version for a write that is about to be issued.
+     *
+     * @return the version the row has once the write is done
+     */
+    public long nextVersion() { return ++version; }
+    
     public String getFormattedPrice() {
         if (priceItems.isEmpty()) {
             return "Free";
@@ -102,7 +203,10 @@ public class ShopItem {
     }
     
     public String getFormattedItemName() {
-        return getItemDisplayName(itemStack);
+        if (displayName != null) {
+            return displayName;
+        }
+        return material.name().toLowerCase().replace("_", " ");
     }
     
     public boolean hasDescription() {
@@ -110,7 +214,7 @@ public class ShopItem {
     }
 
     public ItemStack toItemStack() {
-        ItemStack clone = itemStack.clone();
+        ItemStack clone = resolveItemStack().clone();
         clone.setAmount(quantity); // make sure it respects the stored quantity
         return clone;
     }
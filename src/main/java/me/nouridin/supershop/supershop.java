@@ -21,6 +21,7 @@ import me.nouridin.supershop.commands.SearchBookCommand;
 import me.nouridin.supershop.listeners.ChestInteractListener;
 import me.nouridin.supershop.listeners.FirstLoginListener;
 import me.nouridin.supershop.listeners.SearchBookListener;
+import me.nouridin.supershop.listeners.WorldShopListener;
 import me.nouridin.supershop.managers.*;
 import me.nouridin.supershop.commands.ShopCommand;
 import me.nouridin.supershop.util.MessageUtils;
@@ -76,9 +77,13 @@ public final class supershop extends JavaPlugin {
         getServer().getPluginManager().registerEvents(new ChestInteractListener(this), this);
         getServer().getPluginManager().registerEvents(new SearchBookListener(this), this);
         getServer().getPluginManager().registerEvents(new FirstLoginListener(this), this);
+        getServer().getPluginManager().registerEvents(new WorldShopListener(this), this);
 
-        // Load shops from database
-        shopManager.loadAllShops();
+        // Index shops from database, only the ones in loaded chunks are loaded right away
+        shopManager.loadShopIndex();
+
+        // Convert rows written by older versions in the background
+        databaseManager.startBlobMigration();
 
         getLogger().info("Super Shop has been enabled!");
 
@@ -133,6 +138,8 @@ public final class supershop extends JavaPlugin {
     @Override
     public void onDisable() {
         if (shopManager != null) {
+            // Force out pending write-behind changes before the final save
+            shopManager.getWriteBehind().shutdown();
             shopManager.saveAllShops();
         }
         if (databaseManager != null) {
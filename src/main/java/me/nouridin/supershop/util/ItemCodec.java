@@ -0,0 +1,184 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.nouridin.supershop.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Binary item format stored in item_blobs and the *_blob columns. Replaces {@link ItemSerializer},
+ * which is only kept to read rows written by older versions.
+ * <p>
+ * Every value starts with a format version byte and the data version of the server that
+ * wrote it. A single item is followed by the bytes from {@link ItemStack#serializeAsBytes()},
+ * a list by its size and then each item prefixed with its length. An empty array means no
+ * item at all. Values from an older data version go through the server's upgrade path every
+ * time they are decoded, {@link #isOutdated(byte[])} tells which ones are worth rewriting.
+ */
+public class ItemCodec {
+
+    public static final byte FORMAT_VERSION = 2;
+
+    // Format 1 had no data version, its values count as written by an unknown old version
+    private static final byte UNVERSIONED_FORMAT = 1;
+    private static final int HEADER_SIZE = 5;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    public static byte[] encode(ItemStack item) throws IOException {
+        if (isEmpty(item)) {
+            return EMPTY;
+        }
+
+        byte[] payload = item.serializeAsBytes();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(payload.length + HEADER_SIZE);
+        DataOutputStream dataOutput = new DataOutputStream(outputStream);
+
+        dataOutput.writeByte(FORMAT_VERSION);
+        dataOutput.writeInt(currentDataVersion());
+        dataOutput.write(payload);
+        dataOutput.close();
+
+        return outputStream.toByteArray();
+    }
+
+    public static ItemStack decode(byte[] data) throws IOException {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+
+        int offset = headerSize(data[0]);
+        if (data.length < offset) {
+            throw new IOException("Truncated item data");
+        }
+        byte[] payload = new byte[data.length - offset];
+        System.arraycopy(data, offset, payload, 0, payload.length);
+        return ItemStack.deserializeBytes(payload);
+    }
+
+    public static byte[] encodeList(List<ItemStack> items) throws IOException {
+        if (items == null || items.isEmpty()) {
+            return EMPTY;
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        DataOutputStream dataOutput = new DataOutputStream(outputStream);
+
+        dataOutput.writeByte(FORMAT_VERSION);
+        dataOutput.writeInt(currentDataVersion());
+        dataOutput.writeInt(items.size());
+        for (ItemStack item : items) {
+            if (isEmpty(item)) {
+                dataOutput.writeInt(0);
+                continue;
+            }
+            byte[] payload = item.serializeAsBytes();
+            dataOutput.writeInt(payload.length);
+            dataOutput.write(payload);
+        }
+        dataOutput.close();
+
+        return outputStream.toByteArray();
+    }
+
+    public static List<ItemStack> decodeList(byte[] data) throws IOException {
+        if (data == null || data.length == 0) {
+            return new ArrayList<>();
+        }
+
+        DataInputStream dataInput = new DataInputStream(new ByteArrayInputStream(data));
+        if (headerSize(dataInput.readByte()) == HEADER_SIZE) {
+            dataInput.readInt();
+        }
+
+        int size = dataInput.readInt();
+        List<ItemStack> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int length = dataInput.readInt();
+            if (length == 0) {
+                continue;
+            }
+            byte[] payload = new byte[length];
+            dataInput.readFully(payload);
+            items.add(ItemStack.deserializeBytes(payload));
+        }
+
+        dataInput.close();
+        return items;
+    }
+
+    /**
+     * @return the data version the value was written with, 0 if unknown. Empty values hold no
+     * item and count as current.
+     */
+    public static int getDataVersion(byte[] data) {
+        if (data == null || data.length == 0) {
+            return currentDataVersion();
+        }
+        if (data[0] != FORMAT_VERSION || data.length < HEADER_SIZE) {
+            return 0;
+        }
+        return ((data[1] & 0xFF) << 24) | ((data[2] & 0xFF) << 16) | ((data[3] & 0xFF) << 8) | (data[4] & 0xFF);
+    }
+
+    /**
+     * @return true if decoding the value has to upgrade it to the running server version
+     */
+    public static boolean isOutdated(byte[] data) {
+        return getDataVersion(data) < currentDataVersion();
+    }
+
+    public static int currentDataVersion() {
+        return Bukkit.getUnsafe().getDataVersion();
+    }
+
+    /**
+     * Hex SHA-256 of encoded bytes, identical items and price lists get the same fingerprint.
+     */
+    public static String fingerprint(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static boolean isEmpty(ItemStack item) {
+        return item == null || item.getType().isAir() || item.getAmount() <= 0;
+    }
+
+    private static int headerSize(byte version) throws IOException {
+        if (version == FORMAT_VERSION) {
+            return HEADER_SIZE;
+        }
+        if (version == UNVERSIONED_FORMAT) {
+            return 1;
+        }
+        throw new IOException("Unsupported item format version " + version);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.nouridin.supershop.util;
+
+import java.util.*;
+
+/**
+ * Search results in the order of a sort key, ranked only as far as somebody reads them.
+ * The first {@code get} selects the top page worth of results with a bounded heap, reading
+ * further than that selects again with a larger bound. Results that compare equal keep the
+ * order in which they were matched, as a stable sort would leave them.
+ */
+public class RankedResults extends AbstractList<SearchResult> {
+
+    public static final Comparator<SearchResult> BY_DISTANCE = Comparator.comparingDouble(SearchResult::getDistance);
+    public static final Comparator<SearchResult> BY_NAME = Comparator.comparing(SearchResult::getItemName);
+    public static final Comparator<SearchResult> BY_QUANTITY = Comparator.comparingInt(SearchResult::getQuantity);
+    public static final Comparator<SearchResult> BY_PRICE = Comparator.comparingInt(result -> result.getShopItem().getPriceItems().size());
+
+    private final List<SearchResult> candidates;
+    private final Comparator<SearchResult> order;
+    private final int pageSize;
+    private List<SearchResult> ranked = Collections.emptyList();
+
+    /**
+     * @param candidates the matched results in match order, not copied
+     * @param pageSize how many results to rank at least, the first page
+     */
+    public RankedResults(List<SearchResult> candidates, Comparator<SearchResult> order, int pageSize) {
+        this.candidates = candidates;
+        this.order = order;
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    @Override
+    public SearchResult get(int index) {
+        if (index < 0 || index >= candidates.size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + candidates.size());
+        }
+        if (index >= ranked.size()) {
+            // Double the ranked prefix so reading page by page costs about one sort in total
+            int limit = Math.max(index + 1, Math.max(pageSize, ranked.size() * 2));
+            ranked = top(candidates, order, limit);
+        }
+        return ranked.get(index);
+    }
+
+    @Override
+    public int size() {
+        return candidates.size();
+    }
+
+    public List<SearchResult> getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * The first {@code limit} of the results in the given order, sorted. Keeps a heap of at most
+     * {@code limit} results, so a short page out of many matches is never fully sorted.
+     */
+    public static List<SearchResult> top(List<SearchResult> results, Comparator<SearchResult> order, int limit) {
+        if (limit >= results.size()) {
+            List<SearchResult> sorted = new ArrayList<>(results);
+            sorted.sort(order);
+            return sorted;
+        }
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Worst kept result on top, ties broken by match order to stay stable
+        Comparator<Integer> byRank = (a, b) -> {
+            int compared = order.compare(results.get(a), results.get(b));
+            return compared != 0 ? compared : Integer.compare(a, b);
+        };
+        PriorityQueue<Integer> kept = new PriorityQueue<>(limit + 1, byRank.reversed());
+        for (int i = 0; i < results.size(); i++) {
+            if (kept.size() < limit) {
+                kept.add(i);
+            } else if (order.compare(results.get(i), results.get(kept.peek())) < 0) {
+                // Equal results never replace an earlier one
+                kept.poll();
+                kept.add(i);
+            }
+        }
+
+        List<Integer> indexes = new ArrayList<>(kept);
+        indexes.sort(byRank);
+        List<SearchResult> top = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            top.add(results.get(index));
+        }
+        return top;
+    }
+}
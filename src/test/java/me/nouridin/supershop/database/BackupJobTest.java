@@ -0,0 +1,98 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class BackupJobTest {
+
+    @TempDir
+    File dataFolder;
+
+    private supershop plugin;
+    private ShopRepository repository;
+    private File folder;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        plugin = mock(supershop.class, RETURNS_DEEP_STUBS);
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getConfigManager().getBackupKeep()).thenReturn(2);
+        when(plugin.getConfigManager().getBackupStepSize()).thenReturn(256);
+        repository = mock(ShopRepository.class);
+
+        folder = new File(dataFolder, "backups");
+        Files.createDirectories(folder.toPath());
+        for (String name : Arrays.asList("shops-20240101-000000.db", "shops-20240102-000000.db", "shops-20240103-000000.db", "notes.txt")) {
+            Files.write(new File(folder, name).toPath(), new byte[]{1});
+        }
+    }
+
+    @Test
+    void newSnapshotKeepsOnlyTheNewestOnes() throws Exception {
+        when(repository.backup(any(File.class), anyInt())).thenAnswer(invocation -> {
+            Files.write(invocation.getArgument(0, File.class).toPath(), new byte[]{2});
+            return true;
+        });
+
+        runOnce();
+
+        List<String> names = Arrays.asList(folder.list());
+        assertEquals(3, names.size());
+        assertTrue(names.contains("shops-20240103-000000.db"));
+        assertTrue(names.contains("notes.txt"));
+        // The new snapshot is kept under its final name, no partial file is left behind
+        assertTrue(names.stream().anyMatch(name -> name.startsWith("shops-") && !name.startsWith("shops-2024") && name.endsWith(".db")));
+    }
+
+    @Test
+    void failedSnapshotRemovesNothing() throws Exception {
+        when(repository.backup(any(File.class), anyInt())).thenAnswer(invocation -> {
+            Files.write(invocation.getArgument(0, File.class).toPath(), new byte[]{2});
+            throw new SQLException("disk full");
+        });
+
+        runOnce();
+
+        assertEquals(4, folder.list().length);
+        assertFalse(Arrays.stream(folder.list()).anyMatch(name -> name.endsWith(".partial")));
+    }
+
+    private void runOnce() {
+        BackupJob job = new BackupJob(plugin, repository, ".db");
+        assertTrue(job.run());
+        // Waits for the copy the way the plugin does on disable
+        job.shutdown(10);
+        assertFalse(job.isRunning());
+    }
+}
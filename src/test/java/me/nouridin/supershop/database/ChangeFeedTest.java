@@ -0,0 +1,167 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.managers.ConfigManager;
+import me.nouridin.supershop.supershop;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Two servers sharing one SQLite file, each with its own repository and feed.
+ */
+class ChangeFeedTest {
+
+    private static final UUID SHOP_ID = UUID.randomUUID();
+    private static final UUID OWNER_ID = new UUID(0, 1);
+
+    @TempDir
+    File dataFolder;
+
+    private final List<ShopRepository> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(ShopRepository::close);
+    }
+
+    @Test
+    void otherServerSeesTheWriteAndReadsItBack() throws SQLException {
+        ResilientShopRepository first = server("first");
+        supershop secondServer = plugin("second");
+        ResilientShopRepository second = open(secondServer);
+        ChangeFeed feed = new ChangeFeed(secondServer, mock(PersistenceExecutor.class), second);
+        long now = System.currentTimeMillis();
+
+        first.saveShop(shopRow(10, 1));
+        first.saveShopItem(itemRow(5, 1));
+
+        Map<UUID, ShopSummary> changes = feed.readChanges(now);
+        assertEquals(Collections.singleton(SHOP_ID), changes.keySet());
+        assertEquals(10, changes.get(SHOP_ID).getX());
+
+        // What ShopManager.applyRemoteChanges reads back for a loaded shop
+        List<ShopItemRow> items = new ArrayList<>();
+        second.readShops(Collections.singleton(SHOP_ID), row -> { }, items::add);
+        assertEquals(1, items.size());
+        assertEquals(5, items.get(0).getQuantity());
+
+        assertTrue(feed.readChanges(now).isEmpty());
+    }
+
+    @Test
+    void ownWritesAreSkipped() throws SQLException {
+        ResilientShopRepository first = server("first");
+        supershop secondServer = plugin("second");
+        ResilientShopRepository second = open(secondServer);
+        ChangeFeed feed = new ChangeFeed(secondServer, mock(PersistenceExecutor.class), second);
+        long now = System.currentTimeMillis();
+
+        second.saveShop(shopRow(10, 1));
+        assertTrue(feed.readChanges(now).isEmpty());
+
+        // The feed moved past the local entry, only the other server's write follows
+        first.saveShop(shopRow(20, 2));
+        assertEquals(20, feed.readChanges(now).get(SHOP_ID).getX());
+    }
+
+    @Test
+    void removedShopArrivesWithoutSummary() throws SQLException {
+        ResilientShopRepository first = server("first");
+        ChangeFeed feed = feed("second");
+
+        first.saveShop(shopRow(10, 1));
+        first.deleteShop(SHOP_ID);
+
+        Map<UUID, ShopSummary> changes = feed.readChanges(System.currentTimeMillis());
+        assertTrue(changes.containsKey(SHOP_ID));
+        assertNull(changes.get(SHOP_ID));
+    }
+
+    @Test
+    void gapHoldsTheFeedUntilItIsOldEnoughToBeARollback() throws SQLException {
+        ResilientShopRepository first = server("first");
+        ChangeFeed feed = feed("second");
+        long now = System.currentTimeMillis();
+
+        first.saveShop(shopRow(10, 1));
+        first.saveShop(shopRow(20, 2));
+        // The first entry stands for a transaction that has not committed yet
+        ((SqlShopRepository) first.getDelegate()).withConnection((connection, statements) -> {
+            try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM shop_changes WHERE seq = (SELECT MIN(seq) FROM shop_changes)")) {
+                return stmt.executeUpdate();
+            }
+        });
+
+        assertTrue(feed.readChanges(now).isEmpty());
+        assertTrue(feed.readChanges(now + 5_000L).isEmpty());
+        assertEquals(20, feed.readChanges(now + 15_000L).get(SHOP_ID).getX());
+    }
+
+    private static ShopRow shopRow(int x, long version) {
+        return new ShopRow(SHOP_ID, OWNER_ID, "Alex", "world", x, 64, 1, true, 0L, 0L, null, null, version);
+    }
+
+    private static ShopItemRow itemRow(int quantity, long version) {
+        return new ShopItemRow(UUID.randomUUID(), SHOP_ID, "", quantity, null, "", true,
+            new byte[]{9, 1}, new byte[]{9, 2}, "DIAMOND", 1, "Diamond", version);
+    }
+
+    private ResilientShopRepository server(String serverId) throws SQLException {
+        return open(plugin(serverId));
+    }
+
+    private supershop plugin(String serverId) {
+        supershop plugin = mock(supershop.class, RETURNS_DEEP_STUBS);
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        ConfigManager config = plugin.getConfigManager();
+        when(config.getDatabaseBatchSize()).thenReturn(100);
+        when(config.getDatabasePoolMaxSize()).thenReturn(1);
+        when(config.getDatabasePoolValidationTimeoutSeconds()).thenReturn(2);
+        when(config.getDatabasePoolIdleTimeoutSeconds()).thenReturn(600);
+        when(config.getDatabasePoolConnectionTimeoutMillis()).thenReturn(5000);
+        when(config.getDatabaseBreakerFailureThreshold()).thenReturn(3);
+        when(config.getDatabaseBreakerRetrySeconds()).thenReturn(10);
+        when(config.isChangeFeedEnabled()).thenReturn(true);
+        when(config.getChangeFeedServerId()).thenReturn(serverId);
+        when(config.getChangeFeedRetentionMinutes()).thenReturn(60);
+        return plugin;
+    }
+
+    private ResilientShopRepository open(supershop plugin) throws SQLException {
+        ResilientShopRepository repository = new ResilientShopRepository(plugin, new SqliteShopRepository(plugin));
+        repository.open();
+        opened.add(repository);
+        return repository;
+    }
+
+    private ChangeFeed feed(String serverId) throws SQLException {
+        supershop plugin = plugin(serverId);
+        // Polls are driven by the test, the feed's own executor and timer are never used
+        return new ChangeFeed(plugin, mock(PersistenceExecutor.class), open(plugin));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MutationJournalTest {
+
+    @TempDir
+    File directory;
+
+    private supershop plugin;
+
+    @BeforeEach
+    void setUp() {
+        plugin = mock(supershop.class, RETURNS_DEEP_STUBS);
+    }
+
+    @Test
+    void recoversEveryRecordAfterClose() throws IOException {
+        List<UUID> players = appendAndClose(3);
+
+        List<MutationJournal.Record> records = open().recover();
+
+        assertEquals(players, playersOf(records));
+        assertEquals(Arrays.asList(1L, 2L, 3L), sequencesOf(records));
+    }
+
+    @Test
+    void skipsRecordsCoveredByTheCheckpoint() throws IOException {
+        MutationJournal journal = open();
+        journal.recover();
+        journal.start();
+        List<UUID> players = append(journal, 3);
+        journal.checkpoint(2);
+        journal.close();
+
+        assertEquals(players.subList(2, 3), playersOf(open().recover()));
+    }
+
+    @Test
+    void ignoresTornRecordAtTheEndOfASegment() throws IOException {
+        List<UUID> players = appendAndClose(3);
+
+        // The crash cut the last record short
+        File segment = onlySegment();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 5);
+        }
+
+        assertEquals(players.subList(0, 2), playersOf(open().recover()));
+        verify(plugin.getMessageUtils()).sendConsoleMessage(contains("damaged record"));
+    }
+
+    @Test
+    void ignoresRecordWithDamagedChecksum() throws IOException {
+        List<UUID> players = appendAndClose(3);
+
+        // Flip a byte inside the payload of the last record
+        File segment = onlySegment();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long position = file.length() - 8;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+
+        assertEquals(players.subList(0, 2), playersOf(open().recover()));
+    }
+
+    @Test
+    void appendsAfterATornWriteAreRecoveredToo() throws IOException {
+        List<UUID> players = appendAndClose(2);
+        try (RandomAccessFile file = new RandomAccessFile(onlySegment(), "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        MutationJournal journal = open();
+        assertEquals(players.subList(0, 1), playersOf(journal.recover()));
+        journal.start();
+        List<UUID> later = append(journal, 1);
+        journal.close();
+
+        List<MutationJournal.Record> records = open().recover();
+        List<UUID> expected = new ArrayList<>(players.subList(0, 1));
+        expected.addAll(later);
+        assertEquals(expected, playersOf(records));
+        // Sequences continue after the last intact record
+        assertEquals(Arrays.asList(1L, 2L), sequencesOf(records));
+    }
+
+    private MutationJournal open() {
+        return new MutationJournal(plugin, directory, 10, 1024 * 1024);
+    }
+
+    private List<UUID> appendAndClose(int count) throws IOException {
+        MutationJournal journal = open();
+        assertTrue(journal.recover().isEmpty());
+        journal.start();
+        List<UUID> players = append(journal, count);
+        journal.close();
+        return players;
+    }
+
+    private static List<UUID> append(MutationJournal journal, int count) {
+        List<UUID> players = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            UUID playerId = UUID.randomUUID();
+            journal.append(WriteCodec.Type.RECORD_FIRST_LOGIN, WriteCodec.recordFirstLogin(playerId));
+            players.add(playerId);
+        }
+        return players;
+    }
+
+    private File onlySegment() {
+        File[] segments = directory.listFiles((dir, name) -> name.startsWith("segment-"));
+        assertNotNull(segments);
+        assertEquals(1, segments.length);
+        return segments[0];
+    }
+
+    private static List<UUID> playersOf(List<MutationJournal.Record> records) throws IOException {
+        List<UUID> players = new ArrayList<>();
+        for (MutationJournal.Record record : records) {
+            assertEquals(WriteCodec.Type.RECORD_FIRST_LOGIN, record.getType());
+            players.add(RowCodec.readUuid(record.open()));
+        }
+        return players;
+    }
+
+    private static List<Long> sequencesOf(List<MutationJournal.Record> records) {
+        List<Long> sequences = new ArrayList<>();
+        for (MutationJournal.Record record : records) {
+            sequences.add(record.getSequence());
+        }
+        return sequences;
+    }
+}
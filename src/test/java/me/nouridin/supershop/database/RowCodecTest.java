@@ -0,0 +1,165 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.nouridin.supershop.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RowCodecTest {
+
+    private static final UUID SHOP_ID = UUID.randomUUID();
+
+    @Test
+    void shopRowSurvivesRoundTrip() throws IOException {
+        UUID ownerId = UUID.randomUUID();
+        ShopRow row = new ShopRow(SHOP_ID, ownerId, "Steve", "world", -12, 64, 300_000,
+            true, 1_000L, 2_000L, null, new byte[]{1, 2, 3});
+
+        ShopRow read = roundTrip(out -> RowCodec.writeShopRow(out, row), RowCodec::readShopRow);
+
+        assertEquals(SHOP_ID, read.getShopId());
+        assertEquals(ownerId, read.getOwnerId());
+        assertEquals("Steve", read.getOwnerName());
+        assertEquals("world", read.getWorldName());
+        assertEquals(-12, read.getX());
+        assertEquals(64, read.getY());
+        assertEquals(300_000, read.getZ());
+        assertTrue(read.isActive());
+        assertEquals(1_000L, read.getCreatedAt());
+        assertEquals(2_000L, read.getLastUpdated());
+        assertNull(read.getRevenueData());
+        assertArrayEquals(new byte[]{1, 2, 3}, read.getRevenueBlob());
+    }
+
+    @Test
+    void foldedRevenueKeepsNullApartFromEmpty() throws IOException {
+        ShopRow row = shopRow();
+        List<UUID> folded = Arrays.asList(UUID.randomUUID(), UUID.randomUUID());
+
+        assertNull(roundTripFolded(row).getFoldedRevenue());
+        assertEquals(Collections.emptyList(), roundTripFolded(row.withFoldedRevenue(Collections.emptyList())).getFoldedRevenue());
+        assertEquals(folded, roundTripFolded(row.withFoldedRevenue(folded)).getFoldedRevenue());
+    }
+
+    @Test
+    void shopItemRowSurvivesRoundTrip() throws IOException {
+        UUID itemId = UUID.randomUUID();
+        // Longer than the 64 KB writeUTF allows
+        String description = String.join("", Collections.nCopies(70_000, "é"));
+        ShopItemRow row = new ShopItemRow(itemId, SHOP_ID, null, 42, description, null, true,
+            new byte[]{9, 8}, new byte[0], "DIAMOND", 3, "Shiny");
+
+        ShopItemRow read = roundTrip(out -> RowCodec.writeShopItemRow(out, row), RowCodec::readShopItemRow);
+
+        assertEquals(itemId, read.getItemId());
+        assertEquals(SHOP_ID, read.getShopId());
+        assertNull(read.getItemData());
+        assertEquals(42, read.getQuantity());
+        assertEquals(description, read.getDescription());
+        assertNull(read.getPriceData());
+        assertTrue(read.isAvailable());
+        assertArrayEquals(new byte[]{9, 8}, read.getItemBlob());
+        assertArrayEquals(new byte[0], read.getPriceBlob());
+        assertEquals("DIAMOND", read.getMaterial());
+        assertEquals(3, read.getItemAmount());
+        assertEquals("Shiny", read.getDisplayName());
+    }
+
+    @Test
+    void foldingRecordOnlyFoldsTheEntriesItCarries() throws Exception {
+        InMemoryShopRepository repository = new InMemoryShopRepository();
+        RevenueEntry merged = revenueEntry();
+        RevenueEntry appendedLater = revenueEntry();
+        repository.appendRevenue(SHOP_ID, Arrays.asList(merged, appendedLater), 0L);
+
+        ShopRow row = shopRow().withFoldedRevenue(Collections.singletonList(merged.getEntryId()));
+        apply(WriteCodec.Type.SAVE_SHOP_FOLDING, WriteCodec.saveShop(row), repository);
+
+        List<RevenueEntry> pending = repository.loadPendingRevenue(Collections.singleton(SHOP_ID)).get(SHOP_ID);
+        assertEquals(1, pending.size());
+        assertEquals(appendedLater.getEntryId(), pending.get(0).getEntryId());
+    }
+
+    @Test
+    void legacyRecordFoldsEveryPendingEntry() throws Exception {
+        InMemoryShopRepository repository = new InMemoryShopRepository();
+        repository.appendRevenue(SHOP_ID, Arrays.asList(revenueEntry(), revenueEntry()), 0L);
+
+        // Written before the folded entries were recorded, no list follows the row
+        apply(WriteCodec.Type.SAVE_SHOP, out -> RowCodec.writeShopRow(out, shopRow()), repository);
+
+        assertNull(repository.loadPendingRevenue(Collections.singleton(SHOP_ID)).get(SHOP_ID));
+    }
+
+    @Test
+    void batchRecordReplaysEveryRow() throws Exception {
+        InMemoryShopRepository repository = new InMemoryShopRepository();
+        ShopItemRow item = new ShopItemRow(UUID.randomUUID(), SHOP_ID, null, 5, null, null, true,
+            new byte[]{1}, new byte[]{2}, "STONE", 1, "Stone");
+
+        apply(WriteCodec.Type.SAVE_BATCH_FOLDING,
+            WriteCodec.saveBatch(Collections.singletonList(shopRow()), Collections.singletonList(item)), repository);
+
+        List<ShopRow> shops = new ArrayList<>();
+        List<ShopItemRow> items = new ArrayList<>();
+        repository.readShops(Collections.singleton(SHOP_ID), shops::add, items::add);
+        assertEquals(1, shops.size());
+        assertEquals(1, items.size());
+        assertEquals(5, items.get(0).getQuantity());
+    }
+
+    static ShopRow shopRow() {
+        return new ShopRow(SHOP_ID, UUID.randomUUID(), "Alex", "world", 1, 2, 3, true, 0L, 0L, null, null);
+    }
+
+    static RevenueEntry revenueEntry() {
+        return new RevenueEntry(UUID.randomUUID(), "fingerprint", new byte[]{7}, 1);
+    }
+
+    private static ShopRow roundTripFolded(ShopRow row) throws IOException {
+        return roundTrip(out -> {
+            RowCodec.writeShopRow(out, row);
+            RowCodec.writeFoldedRevenue(out, row);
+        }, in -> RowCodec.readFoldedRevenue(in, RowCodec.readShopRow(in)));
+    }
+
+    private static void apply(WriteCodec.Type type, WriteCodec.Payload payload, ShopRepository repository) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        payload.write(new DataOutputStream(bytes));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        WriteCodec.apply(type, in, repository);
+        assertEquals(0, in.available(), "record not fully read");
+    }
+
+    private interface Reader<T> {
+        T read(DataInput in) throws IOException;
+    }
+
+    private static <T> T roundTrip(WriteCodec.Payload writer, Reader<T> reader) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writer.write(new DataOutputStream(bytes));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        T value = reader.read(in);
+        assertEquals(0, in.available(), "value not fully read");
+        return value;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.supershop;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * A load that goes wrong must still return to the server thread.
+ */
+class ShopLoadPipelineTest {
+
+    private supershop plugin;
+    private PersistenceExecutor persistence;
+    private RowDecoder decoder;
+
+    @BeforeEach
+    void setUp() {
+        plugin = mock(supershop.class, RETURNS_DEEP_STUBS);
+        when(plugin.getServer().getWorlds()).thenReturn(Collections.emptyList());
+        persistence = mock(PersistenceExecutor.class);
+        decoder = mock(RowDecoder.class);
+    }
+
+    @Test
+    void rejectedReadEndsTheDecoders() {
+        CompletableFuture<Long> rejected = new CompletableFuture<>();
+        rejected.completeExceptionally(new RejectedExecutionException("closed"));
+        doReturn(rejected).when(persistence).submit(anyString(), any());
+
+        ShopLoadPipeline.Result result = assertTimeoutPreemptively(Duration.ofSeconds(10),
+            () -> new ShopLoadPipeline(plugin, persistence, decoder, 2).run((shops, items) -> { }));
+
+        assertTrue(result.getShops().isEmpty());
+    }
+
+    @Test
+    void errorWhileDecodingDoesNotStallTheReader() {
+        // Runs the read on its own thread like the database thread would
+        doAnswer(invocation -> {
+            PersistenceExecutor.DatabaseTask<?> task = invocation.getArgument(1);
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            new Thread(() -> {
+                try {
+                    future.complete(task.run());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            }).start();
+            return future;
+        }).when(persistence).submit(anyString(), any());
+        when(decoder.decodeShopItem(any())).thenThrow(new NoClassDefFoundError("org/bukkit/inventory/ItemStack"));
+
+        // More rows than the work queue holds
+        int rows = 10_000;
+        ShopLoadPipeline.Result result = assertTimeoutPreemptively(Duration.ofSeconds(10),
+            () -> new ShopLoadPipeline(plugin, persistence, decoder, 1).run((shops, items) -> {
+                for (int i = 0; i < rows; i++) {
+                    items.accept(new ShopItemRow(UUID.randomUUID(), UUID.randomUUID(), "", 1, null, "", true,
+                        null, null, "DIAMOND", 1, "Diamond", 1));
+                }
+            }));
+
+        assertEquals(0, result.getItemCount());
+        assertTrue(result.formatReport(0).contains("0/" + rows + " items"));
+    }
+}
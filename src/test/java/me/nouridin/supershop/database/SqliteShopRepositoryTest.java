@@ -0,0 +1,219 @@
+/*
+ * Copyright 2025 Nouridin Elhofy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.nouridin.supershop.database;
+
+import me.nouridin.supershop.managers.ConfigManager;
+import me.nouridin.supershop.supershop;
+import me.nouridin.supershop.util.ItemCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * The version checks servers sharing a database rely on, run against a real SQLite file.
+ */
+class SqliteShopRepositoryTest {
+
+    private static final UUID SHOP_ID = UUID.randomUUID();
+    private static final UUID ITEM_ID = UUID.randomUUID();
+
+    @TempDir
+    File dataFolder;
+
+    private SqliteShopRepository repository;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        supershop plugin = mock(supershop.class, RETURNS_DEEP_STUBS);
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        ConfigManager config = plugin.getConfigManager();
+        when(config.getDatabaseBatchSize()).thenReturn(100);
+        when(config.getDatabasePoolMaxSize()).thenReturn(1);
+        when(config.getDatabasePoolValidationTimeoutSeconds()).thenReturn(2);
+        when(config.getDatabasePoolIdleTimeoutSeconds()).thenReturn(600);
+        when(config.getDatabasePoolConnectionTimeoutMillis()).thenReturn(5000);
+
+        repository = new SqliteShopRepository(plugin);
+        repository.open();
+        repository.saveShop(shopRow(1));
+        repository.saveShopItem(itemRow(10, 1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    void itemWriteAtTheReadVersionWins() throws SQLException {
+        assertTrue(repository.saveShopItemIfVersion(itemRow(8, 2), 1));
+
+        assertEquals(8, readItem().getQuantity());
+        assertEquals(2, queryLong("SELECT version FROM shop_items"));
+    }
+
+    @Test
+    void itemWriteAtAnOlderVersionLosesAndLeavesTheRow() throws SQLException {
+        // Another server sold two first
+        assertTrue(repository.saveShopItemIfVersion(itemRow(8, 2), 1));
+
+        assertFalse(repository.saveShopItemIfVersion(itemRow(5, 2), 1));
+
+        assertEquals(8, readItem().getQuantity());
+        assertEquals(2, queryLong("SELECT version FROM shop_items"));
+    }
+
+    @Test
+    void soldOutItemIsDelistedLikeADelete() throws SQLException {
+        assertTrue(repository.saveShopItemIfVersion(itemRow(0, 2), 1));
+
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM shop_items WHERE is_available = TRUE"));
+        assertEquals(1, queryLong("SELECT COUNT(*) FROM shop_items WHERE removed_at IS NOT NULL"));
+        // Bumped past the written version so other servers see the delist
+        assertEquals(3, queryLong("SELECT version FROM shop_items"));
+        assertFalse(repository.saveShopItemIfVersion(itemRow(4, 3), 2));
+    }
+
+    @Test
+    void shopWriteAtAnOlderVersionLoses() throws SQLException {
+        assertTrue(repository.saveShopIfVersion(shopRow(2), 1));
+        assertFalse(repository.saveShopIfVersion(shopRow(2), 1));
+        assertTrue(repository.saveShopIfVersion(shopRow(3), 2));
+
+        assertEquals(3, queryLong("SELECT version FROM shops"));
+    }
+
+    @Test
+    void shopWriteOnlyFoldsTheLedgerEntriesItWasReadWith() throws SQLException {
+        RevenueEntry merged = revenueEntry();
+        repository.appendRevenue(SHOP_ID, Collections.singletonList(merged), 1L);
+        // Appended by another server after this one read the shop
+        RevenueEntry appendedLater = revenueEntry();
+        repository.appendRevenue(SHOP_ID, Collections.singletonList(appendedLater), 2L);
+
+        assertTrue(repository.saveShopIfVersion(shopRow(2).withFoldedRevenue(Collections.singletonList(merged.getEntryId())), 1));
+        repository.purgeFoldedRevenue(Long.MAX_VALUE);
+
+        List<RevenueEntry> pending = repository.loadPendingRevenue(Collections.singleton(SHOP_ID)).get(SHOP_ID);
+        assertEquals(1, pending.size());
+        assertEquals(appendedLater.getEntryId(), pending.get(0).getEntryId());
+    }
+
+    @Test
+    void purgeTakesARemovedShopWithItsItemsAndLeavesLiveShops() throws SQLException {
+        assertEquals(0, repository.purgeRemovedShops(Long.MAX_VALUE, 10));
+
+        repository.deleteShop(SHOP_ID);
+        assertEquals(2, repository.purgeRemovedShops(Long.MAX_VALUE, 10));
+
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM shops"));
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM shop_items"));
+    }
+
+    @Test
+    void backupOfALiveFileOpensWithEveryRow() throws Exception {
+        List<ShopItemRow> items = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            items.add(new ShopItemRow(UUID.randomUUID(), SHOP_ID, "", 1, "Listing number " + i, "", true,
+                new byte[]{9, (byte) i, (byte) (i >> 8)}, new byte[]{9, 2}, "DIAMOND", 1, "Diamond " + i, 1));
+        }
+        repository.saveBatch(Collections.emptyList(), items);
+
+        // Another shop is written every few milliseconds while the copy runs, one page per step
+        AtomicBoolean copying = new AtomicBoolean(true);
+        AtomicInteger writesDuringCopy = new AtomicInteger();
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        Future<?> writes = writer.submit(() -> {
+            for (int i = 0; i < 50 && copying.get(); i++) {
+                repository.saveShop(new ShopRow(UUID.randomUUID(), new UUID(0, 1), "Alex", "world", i, 64, 1, true, 0L, 0L, null, null, 1));
+                writesDuringCopy.incrementAndGet();
+                Thread.sleep(10);
+            }
+            return null;
+        });
+
+        File target = new File(dataFolder, "snapshot.db");
+        try {
+            assertTrue(repository.backup(target, 1));
+        } finally {
+            copying.set(false);
+            writes.get(10, TimeUnit.SECONDS);
+            writer.shutdown();
+        }
+        assertTrue(writesDuringCopy.get() > 0);
+
+        try (Connection snapshot = DriverManager.getConnection("jdbc:sqlite:" + target.getAbsolutePath());
+             PreparedStatement check = snapshot.prepareStatement("PRAGMA integrity_check");
+             PreparedStatement count = snapshot.prepareStatement("SELECT COUNT(*) FROM shop_items")) {
+            try (ResultSet rs = check.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals("ok", rs.getString(1));
+            }
+            try (ResultSet rs = count.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(items.size() + 1, rs.getInt(1));
+            }
+        }
+    }
+
+    private static ShopRow shopRow(long version) {
+        return new ShopRow(SHOP_ID, new UUID(0, 1), "Alex", "world", 1, 64, 1, true, 0L, 0L, null, null, version);
+    }
+
+    private static ShopItemRow itemRow(int quantity, long version) {
+        // Written like DatabaseManager does, blobs only need a stable fingerprint here, nothing decodes them
+        return new ShopItemRow(ITEM_ID, SHOP_ID, "", quantity, null, "", true,
+            new byte[]{9, 1}, new byte[]{9, 2}, "DIAMOND", 1, "Diamond", version);
+    }
+
+    private static RevenueEntry revenueEntry() {
+        byte[] prototype = {9, 3};
+        return new RevenueEntry(UUID.randomUUID(), ItemCodec.fingerprint(prototype), prototype, 1);
+    }
+
+    private ShopItemRow readItem() throws SQLException {
+        List<ShopItemRow> items = new ArrayList<>();
+        repository.readShops(Collections.singleton(SHOP_ID), row -> { }, items::add);
+        assertEquals(1, items.size());
+        return items.get(0);
+    }
+
+    private long queryLong(String sql) throws SQLException {
+        return repository.withConnection((connection, statements) -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sql); ResultSet rs = stmt.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getLong(1);
+            }
+        });
+    }
+}